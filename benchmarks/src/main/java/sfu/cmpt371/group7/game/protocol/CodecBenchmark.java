@@ -0,0 +1,125 @@
+package sfu.cmpt371.group7.game.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the text and binary protocols by what reading and writing one {@code movePlayer} message
+ * through a {@link MessageStream} costs, meant to be run with the GC profiler: {@code -prof gc},
+ * whose {@code gc.alloc.rate.norm} is the bytes allocated per message.
+ * <p>
+ * The stream reads from a socket that replays the same two moves forever and writes to one that
+ * discards everything, so only the encoding is measured. Binary frames name the player by a string id
+ * defined before the measurement starts, as on a connection that has been up for a while.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final String[] MOVES = {"movePlayer p3 16 18", "movePlayer p3 17 18"};
+
+    @Param({"text", "binary"})
+    public String protocol;
+
+    private MessageStream stream;
+    private int moves;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+        if (protocol.equals("binary")) {
+            BinaryCodec.Encoder encoder = new BinaryCodec.Encoder();
+            // The first frame defines the player's name; the replayed ones refer to it
+            first.writeBytes(encoder.encode(MOVES[1]));
+            replayed.writeBytes(encoder.encode(MOVES[0]));
+            replayed.writeBytes(encoder.encode(MOVES[1]));
+        } else {
+            first.writeBytes((MOVES[1] + "\n").getBytes(StandardCharsets.UTF_8));
+            replayed.writeBytes((MOVES[0] + "\n" + MOVES[1] + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        stream = new MessageStream(new ReplaySocket(first.toByteArray(), replayed.toByteArray()));
+        if (protocol.equals("binary")) {
+            stream.useBinaryProtocol();
+        }
+        stream.readMessage();
+        stream.write(MOVES[1]);
+    }
+
+    @Benchmark
+    public String read() throws IOException {
+        return stream.readMessage();
+    }
+
+    @Benchmark
+    public void write() {
+        stream.write(MOVES[moves++ & 1]);
+    }
+
+    /**
+     * A socket whose input is some bytes followed by other bytes repeated forever, and whose output is discarded.
+     */
+    private static final class ReplaySocket extends Socket {
+        private final InputStream input;
+        private final OutputStream output = OutputStream.nullOutputStream();
+
+        private ReplaySocket(byte[] first, byte[] replayed) {
+            input = new InputStream() {
+                private byte[] bytes = first;
+                private int position;
+
+                @Override
+                public int read() {
+                    if (position == bytes.length) {
+                        bytes = replayed;
+                        position = 0;
+                    }
+                    return bytes[position++] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (position == bytes.length) {
+                        bytes = replayed;
+                        position = 0;
+                    }
+                    int count = Math.min(len, bytes.length - position);
+                    System.arraycopy(bytes, position, b, off, count);
+                    position += count;
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return output;
+        }
+    }
+}
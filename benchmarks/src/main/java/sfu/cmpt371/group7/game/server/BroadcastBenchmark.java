@@ -0,0 +1,52 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many broadcasts per second a match sends to a given number of clients.
+ * Clients are added to the match directly, so the match can hold more than a game allows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({"4", "100", "1000", "10000"})
+    public int clients;
+
+    private Match match;
+    private CountingConnection connection;
+
+    @Setup
+    public void setUp() {
+        Server server = new Server(new ServerConfig(Map.<String, String>of()::get), Runnable::run);
+        match = new Match("bench", server, Runnable::run);
+        // Every client writes to the same connection, so one count covers all of them
+        connection = new CountingConnection();
+        for (int i = 0; i < clients; i++) {
+            match.addClient(server.register(connection));
+        }
+    }
+
+    @Benchmark
+    public long broadcast() {
+        match.broadcast("movePlayer p1 8 9");
+        return connection.characters();
+    }
+}
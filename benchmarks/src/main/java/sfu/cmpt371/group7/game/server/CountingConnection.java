@@ -0,0 +1,44 @@
+package sfu.cmpt371.group7.game.server;
+
+/**
+ * A connection that only counts what is sent to it, so benchmarks measure the server
+ * and not the network. The count is returned by the benchmarks so the sends cannot be optimised away.
+ */
+class CountingConnection implements ClientConnection {
+    private long characters;
+    private long messages;
+
+    @Override
+    public void send(String message) {
+        characters += message.length();
+        messages++;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void useBinaryProtocol() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Gets the number of characters sent so far.
+     * @return the total length of the messages sent
+     */
+    long characters() {
+        return characters;
+    }
+
+    /**
+     * Gets the number of messages sent so far.
+     * @return the number of messages
+     */
+    long messages() {
+        return messages;
+    }
+}
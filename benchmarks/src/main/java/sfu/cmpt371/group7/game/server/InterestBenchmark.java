@@ -0,0 +1,96 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the moves per second a match handles, and the messages it sends for them, with and without
+ * an interest radius. Every player has its own client, watching that player, and the players are scattered
+ * over the maze. Radius 0 sends every move to every client, as without interest management.
+ * <p>
+ * The {@code messages} counter is the number of messages sent, so divided by the score it gives
+ * the messages sent per move. Clients are added to the match directly, so the match can hold more than a game allows,
+ * and moves are not validated, so players can stand anywhere.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterestBenchmark {
+
+    @Param({"100", "1000"})
+    public int players;
+
+    @Param({"0", "2", "5"})
+    public int radius;
+
+    private Match match;
+    private ClientHandler mover;
+    private CountingConnection connection;
+    private String[] moveMessages;
+    private int moves;
+
+    /**
+     * The messages sent during an iteration, reported next to the score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sent {
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            messages = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Server server = new Server(new ServerConfig(Map.of(
+                "SERVER_VALIDATE_MOVES", "false",
+                "SERVER_INTEREST_RADIUS", String.valueOf(radius))::get), Runnable::run);
+        match = new Match("bench", server, Runnable::run);
+        // Every client writes to the same connection, so one count covers all of them
+        connection = new CountingConnection();
+        Random random = new Random(42);
+        for (int i = 0; i < players; i++) {
+            ClientHandler client = server.register(connection);
+            match.addClient(client);
+            match.handleTeamSelection(client, match.tokenize("teamSelection " + (i % 2 == 0 ? "red" : "blue") + " p" + i));
+            int x = random.nextInt(Match.MAZE_SIZE);
+            int y = random.nextInt(Match.MAZE_SIZE);
+            if (i == 0) {
+                mover = client;
+                x = 10;
+                y = 10;
+            }
+            match.handleMovePlayer(client, match.tokenize("movePlayer p" + i + " " + x + " " + y));
+        }
+        moveMessages = new String[] {"movePlayer p0 10 11", "movePlayer p0 10 10"};
+    }
+
+    @Benchmark
+    public long movePlayer(Sent sent) {
+        long before = connection.messages();
+        match.handleMovePlayer(mover, match.tokenize(moveMessages[moves++ & 1]));
+        sent.messages += connection.messages() - before;
+        return connection.characters();
+    }
+}
@@ -0,0 +1,100 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sfu.cmpt371.group7.game.model.Player;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many messages per second one match handles, with a given number of players in it.
+ * <p>
+ * The match runs its command loop on the benchmark thread, so each call handles the message
+ * completely: reading it, updating the match and writing the broadcasts to the connection.
+ * The player named in the messages is the last one to join, which a scan of the players would find last.
+ * It is a blue player spawned at 17,19, and steps back and forth between two open cells next to it, so
+ * every move passes the server's checks; moves are not rate limited, as the benchmark sends them far
+ * faster than any player could.
+ * With the players indexed, every benchmark should take about the same time for any number of players.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageHandlingBenchmark {
+
+    @Param({"4", "100", "1000", "10000"})
+    public int players;
+
+    private ClientHandler client;
+    private Match match;
+    private CountingConnection connection;
+    private String lastPlayer;
+    private String[] moveMessages;
+    private int moves;
+    private String captureMessage;
+    private int freeX;
+    private int freeY;
+
+    @Setup
+    public void setUp() {
+        Server server = new Server(new ServerConfig(Map.of("SERVER_MOVE_RATE", "0")::get), Runnable::run);
+        connection = new CountingConnection();
+        client = server.register(connection);
+        client.handleMessage("joinRoom bench");
+        client.handleMessage("flagCoordinates 5 5 5 10 5 15 10 5 10 15 15 5 15 10");
+        for (int i = 0; i < players; i++) {
+            client.handleMessage("teamSelection " + (i % 2 == 0 ? "red" : "blue") + " p" + i);
+        }
+        match = server.getMatch("bench");
+
+        lastPlayer = "p" + (players - 1);
+        client.handleMessage("movePlayer " + lastPlayer + " 17 18");
+        moveMessages = new String[] {"movePlayer " + lastPlayer + " 16 18", "movePlayer " + lastPlayer + " 17 18"};
+        // Gives up a capture that was never begun, so every message respawns the player and the flag stays free
+        captureMessage = "captureDuration " + lastPlayer + " flag7 1.0";
+        // Players only stand on the spawn points, so a scan would check this cell against every one of them
+        freeX = 10;
+        freeY = 10;
+    }
+
+    @Benchmark
+    public long movePlayer() {
+        client.handleMessage(moveMessages[moves++ & 1]);
+        return connection.characters();
+    }
+
+    @Benchmark
+    public long captureDuration() {
+        client.handleMessage(captureMessage);
+        return connection.characters();
+    }
+
+    @Benchmark
+    public long handleCaptureDuration() {
+        match.handleCaptureDuration(match.tokenize(captureMessage));
+        return connection.characters();
+    }
+
+    @Benchmark
+    public Player findPlayerByName() {
+        return match.findPlayerByName(lastPlayer);
+    }
+
+    @Benchmark
+    public boolean isNoPlayerAtPosition() {
+        return match.isNoPlayerAtPosition(freeX, freeY);
+    }
+}
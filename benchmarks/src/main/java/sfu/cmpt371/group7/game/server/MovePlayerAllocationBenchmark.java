@@ -0,0 +1,84 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sfu.cmpt371.group7.game.protocol.MessageTokenizer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what a {@code movePlayer} message allocates on its way through the server, meant to be run
+ * with the GC profiler: {@code -prof gc}, whose {@code gc.alloc.rate.norm} is the bytes allocated per message.
+ * <p>
+ * Each benchmark takes a longer part of the path, so the difference between two shows what that part allocates:
+ * <ul>
+ *     <li>{@link #tokenize()} reads the fields the way the server does, with a reused {@link MessageTokenizer}</li>
+ *     <li>{@link #handleMovePlayer()} also looks the player up, checks and applies the move and sends it to
+ *         the one client, as the match's command loop does</li>
+ *     <li>{@link #movePlayer()} is the whole path from the connection: the type is read on the receiving thread
+ *         and the message is submitted to the match as a command</li>
+ * </ul>
+ * The match runs its command loop on the benchmark thread, with four players. The mover is a blue player
+ * spawned at 17,19 that steps back and forth between two open cells.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MovePlayerAllocationBenchmark {
+
+    private static final int PLAYERS = 4;
+
+    private final MessageTokenizer tokens = new MessageTokenizer();
+    private ClientHandler client;
+    private Match match;
+    private CountingConnection connection;
+    private String[] moveMessages;
+    private int moves;
+
+    @Setup
+    public void setUp() {
+        Server server = new Server(new ServerConfig(Map.of("SERVER_MOVE_RATE", "0")::get), Runnable::run);
+        connection = new CountingConnection();
+        client = server.register(connection);
+        client.handleMessage("joinRoom bench");
+        for (int i = 0; i < PLAYERS; i++) {
+            client.handleMessage("teamSelection " + (i % 2 == 0 ? "red" : "blue") + " p" + i);
+        }
+        match = server.getMatch("bench");
+
+        String mover = "p" + (PLAYERS - 1);
+        client.handleMessage("movePlayer " + mover + " 17 18");
+        moveMessages = new String[] {"movePlayer " + mover + " 16 18", "movePlayer " + mover + " 17 18"};
+    }
+
+    @Benchmark
+    public int tokenize() {
+        tokens.reset(moveMessages[moves++ & 1]).nextType();
+        tokens.next();
+        return tokens.tokenHash() + tokens.nextInt() + tokens.nextInt();
+    }
+
+    @Benchmark
+    public long handleMovePlayer() {
+        match.handleMovePlayer(client, match.tokenize(moveMessages[moves++ & 1]));
+        return connection.characters();
+    }
+
+    @Benchmark
+    public long movePlayer() {
+        client.handleMessage(moveMessages[moves++ & 1]);
+        return connection.characters();
+    }
+}
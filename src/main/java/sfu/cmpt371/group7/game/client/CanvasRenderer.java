@@ -0,0 +1,240 @@
+package sfu.cmpt371.group7.game.client;
+
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+import sfu.cmpt371.group7.game.model.Flag;
+import sfu.cmpt371.group7.game.model.Player;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws the maze on two stacked {@link Canvas}es, so the scene graph holds the same few nodes
+ * whatever the size of the map.
+ * <p>
+ * The tiles are painted once on the lower canvas, and a flag cell is only repainted when the flag is
+ * locked or captured. Players are drawn on the upper canvas, and a move only clears and redraws the
+ * area the player left and the area it entered, so the cost of a move does not depend on the size of
+ * the map. Cells are made smaller on maps too big to fit the window at the normal size.
+ */
+class CanvasRenderer implements MazeRenderer {
+
+    /** Width and height the maze takes in the window, as with the 20 x 20 map in a grid pane */
+    private static final double VIEW_SIZE = 540;
+
+    /** Size of a cell on the 20 x 20 map, and the largest one used */
+    private static final double MAX_CELL = 25;
+
+    /** Space between cells, relative to the cell size, like the gaps of the grid pane */
+    private static final double GAP_RATIO = 2.0 / 25;
+
+    /** Cells smaller than this have no names written on the players */
+    private static final double MIN_NAME_CELL = 16;
+
+    private final Image flagImage = Images.tile(Images.FLAG);
+    private final Image redFlagImage = Images.tile(Images.RED_FLAG);
+    private final Image blueFlagImage = Images.tile(Images.BLUE_FLAG);
+    private final Image redHomeImage = Images.tile(Images.RED_HOME);
+    private final Image blueHomeImage = Images.tile(Images.BLUE_HOME);
+
+    /** The players shown, by name, in the order they appeared */
+    private final Map<String, Sprite> sprites = new LinkedHashMap<>();
+
+    private GraphicsContext tiles;
+    private GraphicsContext players;
+    private double cell;
+    private double pitch;
+    private double padding;
+
+    /**
+     * Where a player was last drawn, in cells, so the area can be cleared when it moves.
+     */
+    private static final class Sprite {
+        private final String name;
+        private final Color color;
+        private final boolean local;
+        private double x;
+        private double y;
+        private boolean drawn;
+
+        private Sprite(String name, Color color, boolean local) {
+            this.name = name;
+            this.color = color;
+            this.local = local;
+        }
+    }
+
+    @Override
+    public Node drawMaze(int[][] grid) {
+        int rows = grid.length;
+        int cols = grid[0].length;
+        cell = Math.min(MAX_CELL, VIEW_SIZE / (Math.max(rows, cols) * (1 + GAP_RATIO)));
+        pitch = cell * (1 + GAP_RATIO);
+        padding = cell / 5;
+        double width = cols * pitch + 2 * padding;
+        double height = rows * pitch + 2 * padding;
+
+        Canvas tileCanvas = new Canvas(width, height);
+        Canvas playerCanvas = new Canvas(width, height);
+        tiles = tileCanvas.getGraphicsContext2D();
+        players = playerCanvas.getGraphicsContext2D();
+        players.setTextAlign(TextAlignment.CENTER);
+        players.setTextBaseline(VPos.CENTER);
+        players.setFont(Font.font("System", FontWeight.BOLD, 10));
+
+        tiles.setFill(Color.LIGHTGRAY);
+        tiles.fillRect(0, 0, width, height);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                switch (grid[row][col]) {
+                    case 1 -> paintCell(row, col, Color.rgb(50, 50, 50), null);
+                    case 2 -> paintCell(row, col, Color.WHITE, flagImage);
+                    case 3 -> paintCell(row, col, Color.WHITE, redHomeImage);
+                    case 4 -> paintCell(row, col, Color.WHITE, blueHomeImage);
+                    default -> paintCell(row, col, Color.WHITE, null);
+                }
+            }
+        }
+        return new Pane(tileCanvas, playerCanvas);
+    }
+
+    /**
+     * Paints one cell of the tile canvas.
+     *
+     * @param row The row of the cell
+     * @param col The column of the cell
+     * @param fill The colour of the cell
+     * @param image The image drawn in the middle of the cell, or null
+     */
+    private void paintCell(int row, int col, Color fill, Image image) {
+        double left = padding + col * pitch;
+        double top = padding + row * pitch;
+        tiles.setFill(fill);
+        tiles.fillRect(left, top, cell, cell);
+        tiles.setStroke(Color.DARKGRAY);
+        tiles.setLineWidth(0.5);
+        tiles.strokeRect(left, top, cell, cell);
+        if (image != null) {
+            // Fit the image in 4/5 of the cell, keeping its proportions
+            double scale = cell * 0.8 / Math.max(image.getWidth(), image.getHeight());
+            double width = image.getWidth() * scale;
+            double height = image.getHeight() * scale;
+            tiles.drawImage(image, left + (cell - width) / 2, top + (cell - height) / 2, width, height);
+        }
+    }
+
+    @Override
+    public void showPlayer(Player player, boolean local) {
+        Sprite sprite = sprites.get(player.getName());
+        if (sprite == null) {
+            Color teamColor = player.getTeam().equals("red") ? Color.rgb(211, 47, 47) : Color.rgb(25, 118, 210);
+            sprite = new Sprite(player.getName(), teamColor, local);
+            sprites.put(sprite.name, sprite);
+        }
+        moveSprite(sprite, player.getX(), player.getY());
+    }
+
+    @Override
+    public void showPlayerAt(String name, double x, double y) {
+        Sprite sprite = sprites.get(name);
+        if (sprite != null) {
+            moveSprite(sprite, x, y);
+        }
+    }
+
+    @Override
+    public void removePlayer(String name) {
+        Sprite sprite = sprites.remove(name);
+        if (sprite != null && sprite.drawn) {
+            redrawArea(sprite.x, sprite.y);
+        }
+    }
+
+    /**
+     * Draws a player at a new position. Only the area it left and the area it entered change.
+     */
+    private void moveSprite(Sprite sprite, double x, double y) {
+        if (sprite.drawn && sprite.x == x && sprite.y == y) {
+            return;
+        }
+        double oldX = sprite.x;
+        double oldY = sprite.y;
+        boolean wasDrawn = sprite.drawn;
+        sprite.x = x;
+        sprite.y = y;
+        sprite.drawn = true;
+        if (wasDrawn) {
+            redrawArea(oldX, oldY);
+        }
+        redrawArea(x, y);
+    }
+
+    /**
+     * Clears the area of one cell at a position of the player canvas and draws the players
+     * overlapping it again, clipped to the area. Players seldom overlap, so an area seldom has more than one.
+     *
+     * @param x The x co-ordinate of the area, in cells
+     * @param y The y co-ordinate of the area, in cells
+     */
+    private void redrawArea(double x, double y) {
+        double margin = (pitch - cell) / 2;
+        double left = padding + y * pitch - margin;
+        double top = padding + x * pitch - margin;
+        players.clearRect(left, top, pitch, pitch);
+        players.save();
+        players.beginPath();
+        players.rect(left, top, pitch, pitch);
+        players.clip();
+        for (Sprite sprite : sprites.values()) {
+            if (sprite.drawn && Math.abs(sprite.x - x) < 1 && Math.abs(sprite.y - y) < 1) {
+                drawSprite(sprite, padding + sprite.y * pitch, padding + sprite.x * pitch);
+            }
+        }
+        players.restore();
+    }
+
+    private void drawSprite(Sprite sprite, double left, double top) {
+        double inset = cell * 1.5 / 25;
+        double size = cell - 2 * inset;
+        double arc = size * 10 / 22;
+        players.setFill(sprite.color);
+        players.fillRoundRect(left + inset, top + inset, size, size, arc, arc);
+        // The local player gets a ring in its team colour, as the glow would spill into the neighbouring cells
+        if (sprite.local) {
+            players.setStroke(sprite.color);
+            players.setLineWidth(inset);
+            players.strokeRoundRect(left + inset / 2, top + inset / 2, cell - inset, cell - inset, arc, arc);
+        }
+        players.setStroke(Color.WHITE);
+        players.setLineWidth(Math.max(0.5, cell * 1.5 / 25));
+        players.strokeRoundRect(left + inset, top + inset, size, size, arc, arc);
+        if (cell >= MIN_NAME_CELL) {
+            players.setFill(Color.WHITE);
+            players.fillText(sprite.name, left + cell / 2, top + cell / 2, size);
+        }
+    }
+
+    /**
+     * Repaints the flag's cell in grey.
+     */
+    @Override
+    public void lockFlag(Flag flag) {
+        paintCell(flag.getX(), flag.getY(), Color.GREY, flagImage);
+    }
+
+    /**
+     * Repaints the flag's cell with the team's flag.
+     */
+    @Override
+    public void captureFlag(Flag flag, String team) {
+        paintCell(flag.getX(), flag.getY(), Color.LIGHTGRAY, team.equals("red") ? redFlagImage : blueFlagImage);
+    }
+}
@@ -15,12 +15,9 @@ import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import sfu.cmpt371.group7.game.model.Player;
+import sfu.cmpt371.group7.game.protocol.MessageStream;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
 
 import static sfu.cmpt371.group7.game.client.Menu.*;
 
@@ -90,19 +87,19 @@ public class Console {
 
 
     /**
-     * Input stream for network communication
+     * Connection to the server for network communication
      */
-    private BufferedReader in;
+    private MessageStream connection;
 
     /**
-     * Output stream for network communication
+     * Player playing the game
      */
-    private PrintWriter out;
+    private Player player;
 
     /**
-     * Player playing the game
+     * Id of the match the server placed this player in
      */
-    private Player player;
+    private String roomId;
 
     /**
      * JavaFX Stage to display the GUI
@@ -352,9 +349,9 @@ public class Console {
      * @param message The message to send
      */
     private void sendToServer(String message) {
-        if (out != null) {
+        if (connection != null) {
             System.out.println("Sending to server: " + message);
-            out.println(message);
+            connection.send(message);
         }
     }
 
@@ -363,9 +360,7 @@ public class Console {
      */
     private void connectToServer() throws IOException {
         try {
-            Socket socket = new Socket(ip, PORT);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            connection = MessageStream.connect(ip, PORT, useBinaryProtocol());
             System.out.println("Connected to server at " + ip + ":" + PORT);
         } catch (IOException e) {
             System.err.println("Error connecting to server: " + e.getMessage());
@@ -380,7 +375,7 @@ public class Console {
         new Thread(() -> {
             try {
                 String message;
-                while ((message = in.readLine()) != null) {
+                while ((message = connection.readMessage()) != null) {
                     String[] parts = message.split(" ");
                     String messageType = parts[0];
                     System.out.println("Received from server: " + message);
@@ -391,6 +386,7 @@ public class Console {
                         case "startGame" -> handleStartGame();
                         case "sendingPlayer" -> handlePlayerData(parts);
                         case "showPlayerJoined" -> showPlayerJoined(parts);
+                        case "joinedRoom" -> handleJoinedRoom(parts);
                     }
                 }
             } catch (IOException e) {
@@ -425,6 +421,19 @@ public class Console {
         }
     }
 
+    /**
+     * Handles the joinedRoom message
+     *
+     * @param parts The complete message received from the server
+     */
+    private void handleJoinedRoom(String[] parts) {
+
+        // joinedRoom <match id>
+        if (parts.length >= 2) {
+            roomId = parts[1];
+        }
+    }
+
     /**
      * Handle startGame message
      */
@@ -434,7 +443,7 @@ public class Console {
             try {
                 System.out.println("Starting the game...");
                 Stage mazeStage = new Stage();
-                new Maze(ip, player).initiate(mazeStage);
+                new Maze(ip, player, roomId).initiate(mazeStage);
 
                 // Close the console window
                 if (primaryStage != null) {
@@ -0,0 +1,112 @@
+package sfu.cmpt371.group7.game.client;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * The UDP socket the game window receives its snapshots on, once the server offered its UDP port.
+ * <p>
+ * The socket binds itself to this window's connection by sending {@code udpBind <token>}, with the token
+ * from the server's {@code udpOffer}, until the server echoes it back; the bind is sent again after a while
+ * since either datagram may be lost. From then on every datagram from the server is a snapshot.
+ */
+class DatagramLink {
+
+    /** How long to wait for the bind to be echoed before sending it again */
+    private static final int BIND_INTERVAL_MILLIS = 200;
+
+    /** The largest datagram the server sends */
+    private static final int MAX_DATAGRAM = 1200;
+
+    private final DatagramSocket socket;
+
+    /** Whether the server answered the bind */
+    private volatile boolean bound;
+
+    /**
+     * Opens a UDP socket to the server's UDP port
+     *
+     * @param ip The IP Address of the server
+     * @param port The server's UDP port, from its udpOffer message
+     * @throws IOException if the socket cannot be opened
+     */
+    DatagramLink(String ip, int port) throws IOException {
+        socket = new DatagramSocket();
+        socket.connect(new InetSocketAddress(ip, port));
+    }
+
+    /**
+     * Binds the socket and then passes each datagram received to a handler, on a thread of its own
+     *
+     * @param token The token from the server's udpOffer message
+     * @param handler Handles each datagram, a message in the text protocol
+     */
+    void start(String token, Consumer<String> handler) {
+        String bind = "udpBind " + token;
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[MAX_DATAGRAM];
+            try {
+                socket.setSoTimeout(BIND_INTERVAL_MILLIS);
+                while (!socket.isClosed()) {
+                    if (!bound) {
+                        send(bind);
+                    }
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    try {
+                        socket.receive(packet);
+                    } catch (SocketTimeoutException e) {
+                        continue;
+                    }
+                    String message = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+                    if (!bound) {
+                        // The server only sends snapshots here once bound, even if the echo was lost
+                        bound = true;
+                        socket.setSoTimeout(0);
+                    }
+                    if (!message.equals(bind)) {
+                        handler.accept(message);
+                    }
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    System.err.println("Error in UDP link: " + e.getMessage());
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Checks whether the server answered the bind, so snapshots come over this socket
+     * @return true once bound
+     */
+    boolean isBound() {
+        return bound;
+    }
+
+    /**
+     * Sends a message to the server in one datagram, which may be lost
+     * @param message The message in the text protocol
+     */
+    void send(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        try {
+            socket.send(new DatagramPacket(bytes, bytes.length));
+        } catch (IOException e) {
+            System.err.println("Error sending over UDP: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the socket, stopping the thread receiving on it
+     */
+    void close() {
+        socket.close();
+    }
+}
@@ -0,0 +1,202 @@
+package sfu.cmpt371.group7.game.client;
+
+import javafx.animation.FadeTransition;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.effect.InnerShadow;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.CornerRadii;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.Text;
+import javafx.util.Duration;
+import sfu.cmpt371.group7.game.model.Flag;
+import sfu.cmpt371.group7.game.model.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws the maze as a {@link GridPane} with one node per cell and one per player.
+ * This is the default renderer; it suits the 20 x 20 map, but the number of nodes grows with the map.
+ */
+class GridPaneRenderer implements MazeRenderer {
+
+    /** Distance between the corners of neighbouring cells: a cell and the gap after it */
+    private static final double CELL_PITCH = 25 + 2;
+
+    /** The main game grid UI component */
+    private final GridPane gridPane = new GridPane();
+
+    /**
+     * The node drawing each player on the grid, by player name. A node is created once when its player
+     * is shown and only relocated when the player moves
+     */
+    private final Map<String, StackPane> playerNodes = new HashMap<>();
+
+    @Override
+    public Node drawMaze(int[][] grid) {
+        gridPane.setHgap(2);
+        gridPane.setVgap(2);
+        gridPane.setPadding(new Insets(5));
+        gridPane.setBackground(new Background(new BackgroundFill(Color.LIGHTGRAY, CornerRadii.EMPTY, Insets.EMPTY)));
+
+        for (int i = 0; i < grid.length; i++) {
+            for (int j = 0; j < grid[i].length; j++) {
+                if (grid[i][j] == 1) {
+                    // Wall cell: Set color to black
+                    Rectangle rect = new Rectangle(25, 25);
+                    rect.setFill(Color.rgb(50, 50, 50));
+                    rect.setArcHeight(5);
+                    rect.setArcWidth(5);
+                    rect.setStroke(Color.DARKGRAY);
+                    rect.setStrokeWidth(0.5);
+                    gridPane.add(rect, j, i);
+                } else if (grid[i][j] == 2) {
+                    // Flag cell: Load the flag image
+                    Rectangle baseRect = new Rectangle(25, 25);
+                    baseRect.setFill(Color.WHITE);
+                    baseRect.setStroke(Color.DARKGRAY);
+                    baseRect.setStrokeWidth(0.5);
+                    StackPane flagCell = new StackPane(baseRect, render(Images.FLAG));
+                    gridPane.add(flagCell, j, i);
+                } else if (grid[i][j] == 3) {
+                    Rectangle baseRect = new Rectangle(25, 25);
+                    baseRect.setFill(Color.WHITE);
+                    baseRect.setStroke(Color.DARKGRAY);
+                    baseRect.setStrokeWidth(0.5);
+                    StackPane flagCell = new StackPane(baseRect, render(Images.RED_HOME));
+                    gridPane.add(flagCell, j, i);
+                } else if (grid[i][j] == 4) {
+                    Rectangle baseRect = new Rectangle(25, 25);
+                    baseRect.setFill(Color.WHITE);
+                    baseRect.setStroke(Color.DARKGRAY);
+                    baseRect.setStrokeWidth(0.5);
+                    StackPane flagCell = new StackPane(baseRect, render(Images.BLUE_HOME));
+                    gridPane.add(flagCell, j, i);
+                } else {
+                    // Empty cell
+                    Rectangle rect = new Rectangle(25, 25);
+                    rect.setFill(Color.WHITE);
+                    rect.setEffect(new InnerShadow(2, Color.LIGHTGRAY));
+                    rect.setStroke(Color.DARKGRAY);
+                    rect.setStrokeWidth(0.5);
+                    gridPane.add(rect, j, i);
+                }
+            }
+        }
+        return gridPane;
+    }
+
+    /**
+     * Creates a view of one of the shared tile images, which are already scaled to fit a cell.
+     */
+    private ImageView render(String file) {
+        return new ImageView(Images.tile(file));
+    }
+
+    @Override
+    public void showPlayer(Player player, boolean local) {
+        // Relocate the player's node, creating it the first time the player is shown
+        StackPane pane = playerNodes.get(player.getName());
+        if (pane != null) {
+            GridPane.setConstraints(pane, player.getY(), player.getX());
+            pane.setTranslateX(0);
+            pane.setTranslateY(0);
+            return;
+        }
+
+        Rectangle rect = new Rectangle(22, 22);
+        Color teamColor = player.getTeam().equals("red") ? Color.rgb(211, 47, 47) : Color.rgb(25, 118, 210);
+        rect.setFill(teamColor);
+        rect.setStroke(Color.WHITE);
+        rect.setStrokeWidth(1.5);
+        rect.setArcHeight(10);
+        rect.setArcWidth(10);
+
+        // Add glow effect for the local player
+        if (local) {
+            DropShadow glow = new DropShadow();
+            glow.setColor(teamColor);
+            glow.setRadius(10);
+            rect.setEffect(glow);
+        }
+
+        Text textNode = new Text(player.getName());
+        textNode.setFill(Color.WHITE);
+        textNode.setFont(Font.font("System", FontWeight.BOLD, 10));
+        textNode.setEffect(new DropShadow(2, Color.BLACK));
+
+        // Stack them together
+        pane = new StackPane(rect, textNode);
+
+        // Add a subtle animation effect when the player appears
+        FadeTransition fadeIn = new FadeTransition(Duration.millis(200), pane);
+        fadeIn.setFromValue(0.3);
+        fadeIn.setToValue(1.0);
+        fadeIn.play();
+
+        // Add to grid
+        gridPane.add(pane, player.getY(), player.getX());
+        playerNodes.put(player.getName(), pane);
+    }
+
+    /**
+     * Shifts the player's node away from the cell it is placed in.
+     */
+    @Override
+    public void showPlayerAt(String name, double x, double y) {
+        StackPane pane = playerNodes.get(name);
+        if (pane != null) {
+            pane.setTranslateX((y - GridPane.getColumnIndex(pane)) * CELL_PITCH);
+            pane.setTranslateY((x - GridPane.getRowIndex(pane)) * CELL_PITCH);
+        }
+    }
+
+    @Override
+    public void removePlayer(String name) {
+        StackPane node = playerNodes.remove(name);
+        if (node != null) {
+            gridPane.getChildren().remove(node);
+        }
+    }
+
+    /**
+     * Changes the color of the flag's cell to grey.
+     */
+    @Override
+    public void lockFlag(Flag flag) {
+        for (Node node : gridPane.getChildren()) {
+            if (GridPane.getRowIndex(node) == flag.getX() && GridPane.getColumnIndex(node) == flag.getY() &&
+                    node instanceof Rectangle) {
+                ((Rectangle) node).setFill(Color.GREY);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds a cell with the team's flag on top of the flag's cell.
+     */
+    @Override
+    public void captureFlag(Flag flag, String team) {
+        Rectangle baseRect = new Rectangle(25, 25);
+        baseRect.setFill(Color.LIGHTGRAY);
+        baseRect.setStroke(Color.DARKGRAY);
+        baseRect.setStrokeWidth(0.5);
+        StackPane flagCell = new StackPane(baseRect, render(team.equals("red") ? Images.RED_FLAG : Images.BLUE_FLAG));
+        gridPane.add(flagCell, flag.getY(), flag.getX());
+
+        // The new cell was added last, so it would hide the players standing on the flag
+        for (StackPane node : playerNodes.values()) {
+            node.toFront();
+        }
+    }
+}
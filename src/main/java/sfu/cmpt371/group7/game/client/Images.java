@@ -0,0 +1,89 @@
+package sfu.cmpt371.group7.game.client;
+
+import javafx.scene.image.Image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The images of the game, decoded once and shared by every window.
+ * <p>
+ * An {@link Image} can be shown by any number of image views and canvases at once, so there is no
+ * reason to read and decode a PNG more than once. The flag and home images are also kept scaled
+ * down to the size they are drawn at in the maze, so drawing them does not scale the full picture
+ * every time. {@link #preload()} decodes them all when the menu opens, before the game needs them.
+ */
+final class Images {
+
+    /** Flag that has not been captured */
+    static final String FLAG = "flag.png";
+    /** Flag captured by the red team */
+    static final String RED_FLAG = "redFlag.png";
+    /** Flag captured by the blue team */
+    static final String BLUE_FLAG = "blueFlag.png";
+    /** Home cell of the red team */
+    static final String RED_HOME = "redHome.png";
+    /** Home cell of the blue team */
+    static final String BLUE_HOME = "blueHome.png";
+    /** Icon of every window */
+    static final String ICON = "gameIcon.png";
+    /** Background of the menu */
+    static final String BACKGROUND = "BackgroundImage.png";
+
+    /** Width and height the tile images are scaled to fit in, as drawn in a maze cell */
+    static final double TILE_SIZE = 20;
+
+    private static final String[] TILES = {FLAG, RED_FLAG, BLUE_FLAG, RED_HOME, BLUE_HOME};
+
+    /** Full size images by file name */
+    private static final Map<String, Image> images = new ConcurrentHashMap<>();
+
+    /** Images scaled to {@link #TILE_SIZE} by file name */
+    private static final Map<String, Image> tiles = new ConcurrentHashMap<>();
+
+    private Images() {
+    }
+
+    /**
+     * Decodes every image the game shows, so none is decoded while playing.
+     */
+    static void preload() {
+        get(ICON);
+        get(BACKGROUND);
+        for (String file : TILES) {
+            tile(file);
+        }
+    }
+
+    /**
+     * Gets an image at its full size.
+     *
+     * @param file The file name of the image in the game's resources
+     * @return the image, decoded the first time it is asked for
+     */
+    static Image get(String file) {
+        return images.computeIfAbsent(file, name -> decode(name, 0));
+    }
+
+    /**
+     * Gets an image scaled to fit in a maze cell, keeping its proportions.
+     *
+     * @param file The file name of the image in the game's resources
+     * @return the image, decoded and scaled the first time it is asked for
+     */
+    static Image tile(String file) {
+        return tiles.computeIfAbsent(file, name -> decode(name, TILE_SIZE));
+    }
+
+    private static Image decode(String file, double size) {
+        try (InputStream in = Objects.requireNonNull(Images.class.getResourceAsStream("/sfu/cmpt371/group7/game/" + file))) {
+            return new Image(in, size, size, true, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
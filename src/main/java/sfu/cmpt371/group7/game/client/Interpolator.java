@@ -0,0 +1,150 @@
+package sfu.cmpt371.group7.game.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Slides the other players smoothly from cell to cell instead of letting them jump whenever a
+ * move arrives.
+ * <p>
+ * Every position received for a player is kept as a snapshot with the time it was applied, and
+ * players are drawn where they were a fixed delay in the past, between the two snapshots around that
+ * time. Moves then look the same however unevenly the server's messages arrive, as long as they are
+ * not late by more than the delay. A player that stood still for longer than the delay takes the delay
+ * to reach its next cell, and a player that jumps more than one cell, as on a respawn, is not slid.
+ * <p>
+ * The players keep their cells for the game: only where they are drawn lags behind. Only used on the
+ * JavaFX thread, once per frame, and nothing is allocated per move.
+ */
+class Interpolator {
+
+    /** Snapshots kept per player. Only those still ahead of the drawn time are needed, so a few are enough */
+    private static final int SNAPSHOTS = 16;
+
+    /** How far in the past players are drawn, in nanoseconds */
+    private final long delay;
+
+    private final MazeRenderer renderer;
+
+    /** The snapshots of each player, by name */
+    private final Map<String, Track> tracks = new HashMap<>();
+
+    /**
+     * The snapshots of one player in a ring, oldest first, and where the player was last drawn.
+     */
+    private static final class Track {
+        private final long[] times = new long[SNAPSHOTS];
+        private final int[] xs = new int[SNAPSHOTS];
+        private final int[] ys = new int[SNAPSHOTS];
+        private int first;
+        private int count;
+        private double shownX;
+        private double shownY;
+
+        private int index(int i) {
+            return (first + i) % SNAPSHOTS;
+        }
+
+        private void add(long time, int x, int y) {
+            if (count == SNAPSHOTS) {
+                dropOldest();
+            }
+            int last = index(count++);
+            times[last] = time;
+            xs[last] = x;
+            ys[last] = y;
+        }
+
+        private void dropOldest() {
+            first = (first + 1) % SNAPSHOTS;
+            count--;
+        }
+    }
+
+    /**
+     * Constructs an interpolator drawing the players through a renderer.
+     *
+     * @param delayMillis How far in the past players are drawn, in milliseconds
+     * @param renderer The renderer showing the players
+     */
+    Interpolator(int delayMillis, MazeRenderer renderer) {
+        this.delay = delayMillis * 1_000_000L;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Records the position a player was given, right after the renderer showed the player there.
+     *
+     * @param name The name of the player
+     * @param now The time of the frame the position was applied in, in nanoseconds
+     * @param x The x co-ordinate
+     * @param y The y co-ordinate
+     */
+    void record(String name, long now, int x, int y) {
+        Track track = tracks.get(name);
+        if (track == null) {
+            track = new Track();
+            tracks.put(name, track);
+            track.add(now, x, y);
+        }
+        // The renderer has just drawn the player on its cell; the next update draws it where it should be
+        track.shownX = x;
+        track.shownY = y;
+
+        int last = track.index(track.count - 1);
+        int lastX = track.xs[last];
+        int lastY = track.ys[last];
+        if (lastX == x && lastY == y) {
+            return;
+        }
+        if (Math.abs(x - lastX) + Math.abs(y - lastY) > 1) {
+            // Teleported: draw the player at its new cell from now on
+            track.count = 0;
+        } else if (track.times[last] < now - delay) {
+            // Stood still: hold the old cell until the slide to the new one starts
+            track.add(now - delay, lastX, lastY);
+        }
+        track.add(now, x, y);
+    }
+
+    /**
+     * Forgets a player that left.
+     *
+     * @param name The name of the player
+     */
+    void remove(String name) {
+        tracks.remove(name);
+    }
+
+    /**
+     * Draws every player where it was the delay before a frame.
+     *
+     * @param now The time of the frame, in nanoseconds
+     */
+    void update(long now) {
+        long drawnTime = now - delay;
+        for (Map.Entry<String, Track> entry : tracks.entrySet()) {
+            Track track = entry.getValue();
+            // Drop the snapshots that the drawn time has gone past
+            while (track.count >= 2 && track.times[track.index(1)] <= drawnTime) {
+                track.dropOldest();
+            }
+
+            int from = track.index(0);
+            double x = track.xs[from];
+            double y = track.ys[from];
+            if (track.count >= 2 && drawnTime > track.times[from]) {
+                int to = track.index(1);
+                double progress = (double) (drawnTime - track.times[from]) / (track.times[to] - track.times[from]);
+                x += (track.xs[to] - x) * progress;
+                y += (track.ys[to] - y) * progress;
+            }
+
+            if (x != track.shownX || y != track.shownY) {
+                track.shownX = x;
+                track.shownY = y;
+                renderer.showPlayerAt(entry.getKey(), x, y);
+            }
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package sfu.cmpt371.group7.game.client;
 
-import javafx.animation.FadeTransition;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -9,30 +9,25 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
-import javafx.scene.effect.DropShadow;
-import javafx.scene.effect.InnerShadow;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
-import javafx.scene.text.Font;
-import javafx.scene.text.FontWeight;
-import javafx.scene.text.Text;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 import sfu.cmpt371.group7.game.model.Flag;
 import sfu.cmpt371.group7.game.model.Player;
+import sfu.cmpt371.group7.game.protocol.MessageStream;
+import sfu.cmpt371.group7.game.protocol.MessageTokenizer;
+import sfu.cmpt371.group7.game.protocol.MessageType;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * The maze class represents the main gameplay area in the Capture the Flag game.
@@ -55,28 +50,78 @@ public class Maze {
     /** Number of columns in the maze*/
     private final int COLS = 20;
 
+    /** Bits of a tile holding the map value of the cell: 0 empty, 1 wall, 2 flag, 3 red home, 4 blue home */
+    private static final int TERRAIN_MASK = 0xF;
+
+    /** Position of the bits of a tile holding the number of the flag on it, counting from 1, or 0 for no flag */
+    private static final int FLAG_SHIFT = 4;
+
+    /** Bits of a tile holding the number of the flag on it */
+    private static final int FLAG_MASK = 0xFF << FLAG_SHIFT;
+
+    /** Bit of a tile set once the flag on it is captured */
+    private static final int FLAG_CAPTURED = 1 << 12;
+
+    /** Added to a tile for every player standing on it, in the bits above the flag */
+    private static final int ONE_PLAYER = 1 << 16;
+
+    /** Local moves remembered while waiting for the server; older ones are forgotten if it stops answering */
+    private static final int MAX_UNACKNOWLEDGED_MOVES = 64;
+
     /** The IP Address of the sever hosting the game. */
     private final String ip;
 
+    /** The id of the match on the server this game belongs to, or null to let the server choose. */
+    private final String roomId;
+
     /** The game grid representing the maze */
     private final int[][] grid;
 
-    /** List of all players in the game */
+    /**
+     * The state of every cell packed into one int, indexed by x * COLS + y: the map value,
+     * the flag on the cell and whether it is captured, and how many players stand on the cell.
+     * Kept up to date as players move and flags are captured, so checking a move is a single read.
+     * Only used on the JavaFX thread
+     */
+    private final int[] tiles;
+
+    /** List of all players in the game, only used on the JavaFX thread */
     private final List<Player> players;
 
+    /** Names of the players the server stopped sending moves of, which are in the players list but not shown */
+    private final Set<String> hiddenPlayers = new HashSet<>();
+
     /** List of all flags in the game */
     private final ArrayList<Flag> flags;
 
 
-    /** Input stream for network communication */
-    private BufferedReader in;
+    /** Connection to the server for network communication */
+    private MessageStream connection;
+
+
+    /** Draws the maze, the flags and the players */
+    private final MazeRenderer renderer;
+
+    /** Slides the other players between cells, or null if they are drawn as soon as they move */
+    private final Interpolator interpolator;
 
-    /** Output stream for network communication */
-    private PrintWriter out;
+    /** Changes received from the server since the last frame, written by the thread reading the connection */
+    private final PendingUpdates incoming = new PendingUpdates();
 
+    /** The changes being applied in the current frame, only used on the JavaFX thread */
+    private final PendingUpdates applying = new PendingUpdates();
 
-    /** The main game grid UI component */
-    private GridPane gridPane;
+    /** Rebuilds the snapshots sent by the server, or null when the server sends moves */
+    private final SnapshotReceiver snapshots;
+
+    /** The UDP socket snapshots come over, or null while they come over the connection */
+    private volatile DatagramLink datagrams;
+
+    /** Sequence number of the latest move of the local player */
+    private int moveSequence;
+
+    /** Moves of the local player shown before the server answered them, oldest first */
+    private final ArrayDeque<PredictedMove> unacknowledgedMoves = new ArrayDeque<>();
 
     /** The root layout container */
     private BorderPane root;
@@ -108,24 +153,55 @@ public class Maze {
     private int blueFlagCount;
 
 
+    /**
+     * A move of the local player that was shown before the server answered it.
+     * Kept until the server acknowledges it, so it can be replayed if the server puts the player elsewhere
+     */
+    private static final class PredictedMove {
+        private final int sequence;
+        private final int dx;
+        private final int dy;
+
+        /** Where the move was predicted to take the player */
+        private int x;
+        private int y;
+
+        private PredictedMove(int sequence, int dx, int dy, int x, int y) {
+            this.sequence = sequence;
+            this.dx = dx;
+            this.dy = dy;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
     /**
      * Constructs a new Maze game instance for the specified player.
      *
+     * @param ip The IP Address of the server hosting the game
      * @param player The local player who will be playing the game
+     * @param roomId The id of the match the player joined in the console, or null
      */
-    public Maze(String ip, Player player) {
+    public Maze(String ip, Player player, String roomId) {
         this.ip = ip;
+        this.roomId = roomId;
         localPlayer = player;
         grid = new int[ROWS][COLS];
+        tiles = new int[ROWS * COLS];
         players = new ArrayList<>();
         flags = new ArrayList<>();
-        players.add(localPlayer);
+        renderer = Menu.useCanvasRenderer() ? new CanvasRenderer() : new GridPaneRenderer();
+        int interpolationDelay = Menu.getInterpolationDelay();
+        interpolator = interpolationDelay > 0 ? new Interpolator(interpolationDelay, renderer) : null;
+        snapshots = Menu.useSnapshots() || Menu.useUdp() ? new SnapshotReceiver(player.getName()) : null;
         blueFlagCount = 0;
         redFlagCount = 0;
         captureStartTime = -1;
         cPressed = false;
 
         loadMap();
+        players.add(localPlayer);
+        occupy(localPlayer.getX(), localPlayer.getY(), 1);
         System.out.println("player name is " + player.getName());
     }
 
@@ -145,6 +221,11 @@ public class Maze {
                 for(int col = 0; col < COLS; ++col){
                     if(tileValues[col] >= '1' && tileValues[col] <= '9') {
                         grid[row][col] = tileValues[col] - '0';
+                        tiles[row * COLS + col] = grid[row][col] & TERRAIN_MASK;
+                    }
+                    if (grid[row][col] == 2) {
+                        flags.add(new Flag(row, col, "flag" + (flags.size() + 1)));
+                        tiles[row * COLS + col] |= flags.size() << FLAG_SHIFT;
                     }
                 }
             }
@@ -161,9 +242,21 @@ public class Maze {
      */
     public void initiate(Stage stage) throws IOException {
 
-        // Establishes a TCP Connection with the game server
+        // Establishes a TCP Connection with the game server and joins the player's match
         connectToServer();
-        out.println("resendPlayers");
+        if (roomId != null) {
+            connection.write("joinRoom " + roomId);
+        }
+        // Naming the player lets the server only send the players near it
+        connection.send("resendPlayers " + localPlayer.getName());
+        if (snapshots != null) {
+            // Acknowledging no snapshot asks for a full one, and for snapshots instead of moves from then on
+            connection.send("snapshotAck 0");
+            if (Menu.useUdp()) {
+                // Answered with the server's UDP port, if it has one
+                connection.send("udpRequest");
+            }
+        }
 
         // Request players' info from the server
         getNumberOfPlayers();
@@ -173,7 +266,8 @@ public class Maze {
         createUI();
         sendFlagCoordinates();
 
-        // Handles messages coming from the server
+        // Handles messages coming from the server, showing what changed once per frame
+        startApplyingUpdates();
         listenForServerMessages();
 
         // Create scene with keyboard controls
@@ -183,7 +277,7 @@ public class Maze {
         // Configure and show the stage
         stage.setTitle("Capture the Flag");
         stage.setScene(scene);
-        stage.getIcons().add(new Image(Objects.requireNonNull(Menu.class.getResourceAsStream("/sfu/cmpt371/group7/game/gameIcon.png"))));
+        stage.getIcons().add(Images.get(Images.ICON));
         stage.setResizable(false);
         stage.centerOnScreen();
         stage.setOnCloseRequest(e -> {
@@ -205,60 +299,8 @@ public class Maze {
      */
     private void createUI() {
 
-        // Draw the maze in a grid pane
-        gridPane = new GridPane();
-        gridPane.setHgap(2);
-        gridPane.setVgap(2);
-        gridPane.setPadding(new Insets(5));
-        gridPane.setBackground(new Background(new BackgroundFill(Color.LIGHTGRAY, CornerRadii.EMPTY, Insets.EMPTY)));
-
-        int numFlags = 1;
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLS; j++) {
-                if (grid[i][j] == 1) {
-                    // Wall cell: Set color to black
-                    Rectangle rect = new Rectangle(25, 25);
-                    rect.setFill(Color.rgb(50, 50, 50));
-                    rect.setArcHeight(5);
-                    rect.setArcWidth(5);
-                    rect.setStroke(Color.DARKGRAY);
-                    rect.setStrokeWidth(0.5);
-                    gridPane.add(rect, j, i);
-                } else if (grid[i][j] == 2) {
-                    // Flag cell: Load the flag image
-                    flags.add(new Flag(i, j, "flag" + numFlags));
-                    Rectangle baseRect = new Rectangle(25, 25);
-                    baseRect.setFill(Color.WHITE);
-                    baseRect.setStroke(Color.DARKGRAY);
-                    baseRect.setStrokeWidth(0.5);
-                    StackPane flagCell = new StackPane(baseRect, render("flag"));
-                    gridPane.add(flagCell, j, i);
-                    numFlags++;
-                } else if (grid[i][j] == 3) {
-                    Rectangle baseRect = new Rectangle(25, 25);
-                    baseRect.setFill(Color.WHITE);
-                    baseRect.setStroke(Color.DARKGRAY);
-                    baseRect.setStrokeWidth(0.5);
-                    StackPane flagCell = new StackPane(baseRect, render("redHome"));
-                    gridPane.add(flagCell, j, i);
-                } else if (grid[i][j] == 4) {
-                    Rectangle baseRect = new Rectangle(25, 25);
-                    baseRect.setFill(Color.WHITE);
-                    baseRect.setStroke(Color.DARKGRAY);
-                    baseRect.setStrokeWidth(0.5);
-                    StackPane flagCell = new StackPane(baseRect, render("blueHome"));
-                    gridPane.add(flagCell, j, i);
-                } else {
-                    // Empty cell
-                    Rectangle rect = new Rectangle(25, 25);
-                    rect.setFill(Color.WHITE);
-                    rect.setEffect(new InnerShadow(2, Color.LIGHTGRAY));
-                    rect.setStroke(Color.DARKGRAY);
-                    rect.setStrokeWidth(0.5);
-                    gridPane.add(rect, j, i);
-                }
-            }
-        }
+        // Draw the maze
+        Node maze = renderer.drawMaze(grid);
 
         // Add the local player to the grid
         if (localPlayer != null) {
@@ -332,74 +374,32 @@ public class Maze {
         root.setStyle("-fx-background-color: #f5f5f5;");
         root.setTop(topPane);
         root.setRight(sidePanel);
-        root.setCenter(gridPane);
-    }
-
-    private ImageView render (String type) {
-
-        Image image = null;
-        switch (type) {
-            case "redHome" -> image = new Image(
-                    Objects.requireNonNull(getClass().getResourceAsStream("/sfu/cmpt371/group7/game/redHome.png")));
-            case "blueHome" -> image = new Image(
-                    Objects.requireNonNull(getClass().getResourceAsStream("/sfu/cmpt371/group7/game/blueHome.png")));
-            case "flag" -> image = new Image(
-                    Objects.requireNonNull(getClass().getResourceAsStream("/sfu/cmpt371/group7/game/flag.png")));
-            case "blueFlag" -> image = new Image(
-                    Objects.requireNonNull(getClass().getResourceAsStream("/sfu/cmpt371/group7/game/blueFlag.png")));
-            case "redFlag" -> image = new Image(
-                    Objects.requireNonNull(getClass().getResourceAsStream("/sfu/cmpt371/group7/game/redFlag.png")));
-        }
-
-        ImageView imageView = new ImageView(image);
-        imageView.setFitWidth(20);
-        imageView.setFitHeight(20);
-        imageView.setPreserveRatio(true);
-
-        return imageView;
+        root.setCenter(maze);
     }
 
     /**
      * Add a player to the UI
      */
     private void addPlayerToUI(String playerName, String team, int x, int y) {
-        // Create new player object if it doesn't exist
-        Player player = findPlayerByName(playerName);
-        if (player == null) {
-            player = new Player(team, x, y, playerName);
-            players.add(player);
-        } else {
-            // Update existing player's position
-            player.setX(x);
-            player.setY(y);
+        // Only move the player if it already exists
+        Player existing = findPlayerByName(playerName);
+        if (existing != null && hiddenPlayers.remove(playerName)) {
+            // Back in view: it no longer takes up the cell it was hidden at
+            existing.setX(x);
+            existing.setY(y);
+            occupy(x, y, 1);
+            renderer.showPlayer(existing, false);
+            return;
         }
-
-        Rectangle rect = new Rectangle(22, 22);
-        Color teamColor = player.getTeam().equals("red") ? Color.rgb(211, 47, 47) : Color.rgb(25, 118, 210);
-        rect.setFill(teamColor);
-        rect.setStroke(Color.WHITE);
-        rect.setStrokeWidth(1.5);
-        rect.setArcHeight(10);
-        rect.setArcWidth(10);
-
-        // Add glow effect for the local player
-        if (player.getName().equals(localPlayer.getName())) {
-            DropShadow glow = new DropShadow();
-            glow.setColor(teamColor);
-            glow.setRadius(10);
-            rect.setEffect(glow);
+        if (existing != null) {
+            movePlayer(existing, x, y);
+            return;
         }
 
-        Text textNode = new Text(player.getName());
-        textNode.setFill(Color.WHITE);
-        textNode.setFont(Font.font("System", FontWeight.BOLD, 10));
-        textNode.setEffect(new DropShadow(2, Color.BLACK));
-
-        // Stack them together
-        StackPane pane = new StackPane(rect, textNode);
-
-        // Add to grid
-        gridPane.add(pane, y, x);
+        Player player = new Player(team, x, y, playerName);
+        players.add(player);
+        occupy(x, y, 1);
+        renderer.showPlayer(player, player == localPlayer);
     }
 
     /**
@@ -418,9 +418,12 @@ public class Maze {
                 int newY = localPlayer.getY();
                 boolean hasMoved = false;
 
-                // Respawn player if they press any button while holding C
+                // Respawn player if they press any button while holding C, unless the server already captured the flag
                 if (cPressed && event.getCode() != KeyCode.C) {
-                    out.println("captureDuration " + localPlayer.getName() + " flag1 " + 0.0);
+                    Flag heldFlag = getUncapturedFlagAtPosition(newX, newY);
+                    if (captureStartTime != -1 && heldFlag != null) {
+                        connection.send("captureDuration " + localPlayer.getName() + " " + heldFlag.getName() + " " + 0.0);
+                    }
                     cPressed=false;
                     capturePromptLabel.setVisible(false);
                     captureStartTime = -1;
@@ -454,26 +457,19 @@ public class Maze {
                     }
                 }
 
-                // Start capturing when C is pressed and player is on a flag
+                // Start capturing when C is pressed and player is on a flag; the server times the hold
                 else if (event.getCode() == KeyCode.C && getUncapturedFlagAtPosition(newX, newY) != null) {
                     cPressed = true;
                     if (captureStartTime == -1) {
                         captureStartTime = System.currentTimeMillis();
                         capturePromptLabel.setText("Capturing ...");
+                        connection.send("captureBegin " + localPlayer.getName() + " " + getUncapturedFlagAtPosition(newX, newY).getName());
                     }
                 }
 
-                // Update the players x and y co-ordinates according to the moves and inform the server
+                // Show the move right away and inform the server, which answers with where the player ended up
                 if (hasMoved) {
-                    localPlayer.setX(newX);
-                    localPlayer.setY(newY);
-                    if (getUncapturedFlagAtPosition(newX, newY) != null) {
-                        capturePromptLabel.setVisible(true);
-                        capturePromptLabel.setText("Hold C to capture the flag!");
-                    } else {
-                        captureStartTime = -1;
-                    }
-                    out.println("movePlayer " + localPlayer.getName() + " " + newX + " " + newY);
+                    predictMove(newX, newY);
                 }
             }
         });
@@ -487,7 +483,8 @@ public class Maze {
                     double durationInSeconds = captureDuration/1000.0;
                     System.out.println("C pressed for " + durationInSeconds + " seconds");
                     assert flagAtPosition != null;
-                    out.println("captureDuration " + localPlayer.getName() + " " + flagAtPosition.getName() + " " + durationInSeconds);
+                    // Letting go before the server captured the flag gives the capture up
+                    connection.send("captureDuration " + localPlayer.getName() + " " + flagAtPosition.getName() + " " + durationInSeconds);
                     capturePromptLabel.setVisible(false);
                     captureStartTime = -1;
                 }
@@ -495,6 +492,79 @@ public class Maze {
         });
     }
 
+    /**
+     * Moves the local player without waiting for the server, and sends the move numbered
+     * so the server's answer can be matched to it
+     *
+     * @param newX The new x coordinate after moving
+     * @param newY The new y coordinate after moving
+     */
+    private void predictMove(int newX, int newY) {
+        int sequence = ++moveSequence;
+        if (unacknowledgedMoves.size() == MAX_UNACKNOWLEDGED_MOVES) {
+            unacknowledgedMoves.pollFirst();
+        }
+        unacknowledgedMoves.addLast(new PredictedMove(sequence, newX - localPlayer.getX(), newY - localPlayer.getY(), newX, newY));
+
+        placePlayer(localPlayer, newX, newY);
+        renderer.showPlayer(localPlayer, true);
+        updateCapturePrompt();
+        connection.send("movePlayer " + localPlayer.getName() + " " + newX + " " + newY + " " + sequence);
+    }
+
+    /**
+     * Reconciles the predicted position of the local player with the position the server has for it.
+     * Moves the server has handled are forgotten. If the server put the player somewhere else than
+     * predicted, because it refused a move or respawned the player, the player is put back where the
+     * server has it and the moves the server has not handled yet are predicted again from there
+     *
+     * @param sequence The local move the server's position answers, or {@link PendingUpdates#NO_SEQUENCE} for a respawn
+     * @param x The x coordinate the server has
+     * @param y The y coordinate the server has
+     */
+    private void reconcile(int sequence, int x, int y) {
+        PredictedMove answered = null;
+        while (!unacknowledgedMoves.isEmpty() && (sequence == PendingUpdates.NO_SEQUENCE
+                || unacknowledgedMoves.peekFirst().sequence <= sequence)) {
+            answered = unacknowledgedMoves.pollFirst();
+        }
+        if (answered != null && answered.sequence == sequence && answered.x == x && answered.y == y) {
+            // The prediction was right
+            return;
+        }
+
+        // Roll back to the server's position and replay the moves still on their way
+        int shownX = localPlayer.getX();
+        int shownY = localPlayer.getY();
+        placePlayer(localPlayer, x, y);
+        for (PredictedMove move : unacknowledgedMoves) {
+            int replayX = localPlayer.getX() + move.dx;
+            int replayY = localPlayer.getY() + move.dy;
+            if (checkValidMove(replayX, replayY)) {
+                placePlayer(localPlayer, replayX, replayY);
+            }
+            move.x = localPlayer.getX();
+            move.y = localPlayer.getY();
+        }
+        if (localPlayer.getX() != shownX || localPlayer.getY() != shownY) {
+            renderer.showPlayer(localPlayer, true);
+            updateCapturePrompt();
+        }
+    }
+
+    /**
+     * Prompts the local player to capture the flag it stands on, or hides the prompt and
+     * abandons a capture when it stands on none
+     */
+    private void updateCapturePrompt() {
+        if (getUncapturedFlagAtPosition(localPlayer.getX(), localPlayer.getY()) != null) {
+            capturePromptLabel.setVisible(true);
+            capturePromptLabel.setText("Hold C to capture the flag!");
+        } else {
+            captureStartTime = -1;
+        }
+    }
+
     /**
      * Checks if a move is valid or invalid. <br>
      * <br>
@@ -513,71 +583,60 @@ public class Maze {
         if (newX < 0 || newX >= ROWS || newY < 0 || newY >= COLS) {
             return false;
         }
+        int tile = tiles[newX * COLS + newY];
 
         // Check if cell is a barrier or home
-        if (grid[newX][newY] == 1 || grid[newX][newY] == 3 || grid[newX][newY] == 4) {
+        int terrain = tile & TERRAIN_MASK;
+        if (terrain == 1 || terrain == 3 || terrain == 4) {
             return false;
         }
 
-        for (Flag flag : flags) {
-            if (flag.getX() == newX && flag.getY() == newY && flag.isCaptured()) {
-                return false;
-            }
-        }
-
-        // Check if the move is to a flag position - allow this even if other players are there
-        if (isFlagPosition(newX, newY)) {
-            return true;
+        // Check if the move is to a flag position - allow this even if other players are there, unless it is captured
+        if ((tile & FLAG_MASK) != 0) {
+            return (tile & FLAG_CAPTURED) == 0;
         }
 
-        // Check if cell is occupied by another player
-        for (Player p : players) {
-            if (p != localPlayer && p.getX() == newX && p.getY() == newY) {
-                return false;
-            }
-        }
-
-        return true;
+        // Check if cell is occupied by another player; the local player is never on the cell it moves to
+        return tile < ONE_PLAYER;
     }
 
     /**
-     * Helper method to check if a position contains a flag
+     * Changes the number of players standing on a cell of the tile layer.
+     * Positions outside the maze are not counted
      *
      * @param x The x coordinate
      * @param y The y coordinate
-     * @return true if a flag is at this position, false otherwise
+     * @param players The number of players that arrived, or negative for players that left
      */
-    private boolean isFlagPosition(int x, int y) {
-        for (Flag flag : flags) {
-            if (flag.getX() == x && flag.getY() == y) {
-                return true;
-            }
+    private void occupy(int x, int y, int players) {
+        if (x >= 0 && x < ROWS && y >= 0 && y < COLS) {
+            tiles[x * COLS + y] += players * ONE_PLAYER;
         }
-        return false;
     }
 
     /**
-     * Updates the visual representation of a flag when it's captured
-     * by changing its color to grey.
+     * Sets the position of a player in the game, keeping the tile layer up to date
      *
-     * @param flagName The name of the captured flag
+     * @param player The player to place
+     * @param x The new x coordinate
+     * @param y The new y coordinate
      */
-    private void updateFlagColor(String flagName) {
-        Flag capturedFlag = findFlagByName(flagName);
-        if (capturedFlag == null) return;
-
-        int flagX = capturedFlag.getX();
-        int flagY = capturedFlag.getY();
+    private void placePlayer(Player player, int x, int y) {
+        occupy(player.getX(), player.getY(), -1);
+        player.setX(x);
+        player.setY(y);
+        occupy(x, y, 1);
+    }
 
-        Platform.runLater(() -> {
-            for (Node node : gridPane.getChildren()) {
-                if (GridPane.getRowIndex(node) == flagX && GridPane.getColumnIndex(node) == flagY &&
-                        node instanceof Rectangle) {
-                    ((Rectangle) node).setFill(Color.GREY);
-                    break;
-                }
-            }
-        });
+    /**
+     * Marks a flag as captured, both on the flag and in the tile layer, and greys it out
+     *
+     * @param flag The captured flag
+     */
+    private void markFlagCaptured(Flag flag) {
+        flag.setCaptured(true);
+        tiles[flag.getX() * COLS + flag.getY()] |= FLAG_CAPTURED;
+        renderer.lockFlag(flag);
     }
 
     /**
@@ -588,64 +647,18 @@ public class Maze {
      * @param newY The new y co-ordinate after the move
      */
     private void movePlayer(Player player, int newX, int newY) {
-        Platform.runLater(() -> {
-            // Remove all instances of this player from the grid first
-            gridPane.getChildren().removeIf(node ->
-                    node instanceof StackPane &&
-                            ((StackPane)node).getChildren().stream()
-                                    .anyMatch(child ->
-                                            child instanceof Text &&
-                                                    ((Text)child).getText().equals(player.getName())));
-
-            // Update player position
-            player.setX(newX);
-            player.setY(newY);
-
-            // Create a new player representation
-            Rectangle rect = new Rectangle(22, 22);
-            Color teamColor = player.getTeam().equals("red") ? Color.rgb(211, 47, 47) : Color.rgb(25, 118, 210);
-            rect.setFill(teamColor);
-            rect.setStroke(Color.WHITE);
-            rect.setStrokeWidth(1.5);
-            rect.setArcHeight(10);
-            rect.setArcWidth(10);
-
-            // Add glow effect for the local player
-            if (player.getName().equals(localPlayer.getName())) {
-                DropShadow glow = new DropShadow();
-                glow.setColor(teamColor);
-                glow.setRadius(10);
-                rect.setEffect(glow);
-            }
-
-            Text textNode = new Text(player.getName());
-            textNode.setFill(Color.WHITE);
-            textNode.setFont(Font.font("System", FontWeight.BOLD, 10));
-            textNode.setEffect(new DropShadow(2, Color.BLACK));
-
-            // Stack them together
-            StackPane pane = new StackPane(rect, textNode);
+        // Update player position
+        placePlayer(player, newX, newY);
 
-            // Add a subtle animation effect
-            FadeTransition fadeIn = new FadeTransition(Duration.millis(200), pane);
-            fadeIn.setFromValue(0.3);
-            fadeIn.setToValue(1.0);
-            fadeIn.play();
-
-            // Add new representation to the grid
-            gridPane.add(pane, newY, newX);
-
-            System.out.println("Player " + player.getName() + " moved to " + newX + "," + newY);
-        });
+        // Relocate the player, showing it the first time
+        renderer.showPlayer(player, player == localPlayer);
     }
 
     /**
      * Connect to the server
      */
     private void connectToServer() throws IOException {
-        Socket socket = new Socket(ip, PORT);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(socket.getOutputStream(), true);
+        connection = MessageStream.connect(ip, PORT, Menu.useBinaryProtocol());
     }
 
     /**
@@ -656,31 +669,42 @@ public class Maze {
         for (Flag f : flags) {
             message.append(f.getX()).append(" ").append(f.getY()).append(" ");
         }
-        out.println(message);
+        connection.send(message.toString());
     }
 
     /**
-     * Listen for server messages and appropriately handle them
+     * Listen for server messages and appropriately handle them.
+     * Each handler receives the tokenizer positioned after the message type
      */
     private void listenForServerMessages() {
         new Thread(() -> {
+            MessageTokenizer tokens = new MessageTokenizer();
             try {
                 String message;
-                while ((message = in.readLine()) != null) {
-                    String[] parts = message.split(" ");
-                    String messageType = parts[0];
+                while ((message = connection.readMessage()) != null) {
+                    MessageType messageType = tokens.reset(message).nextType();
 
                     System.out.println("Received: " + message);
 
+                    if (messageType == null) {
+                        continue;
+                    }
                     switch (messageType) {
-                        case "movePlayer" -> handleMovePlayerMessage(parts);
-                        case "newPlayer" -> handleNewPlayerMessage(parts);
-                        case "sizeOfPlayersIs" -> handlePlayerCountMessage(parts);
-                        case "gameOver" -> handleGameOverMessage(parts);
-                        case "flagCaptured" -> handleFlagCapturedMessage(parts);
-                        case "lockFlag" -> handleLockFlagMessage(parts);
-                        case "sendingPlayer" -> handlePlayerUpdateMessage(parts);
-                        case "playerLeft" -> handlePlayerLeftMessage(parts);
+                        case MOVE_PLAYER -> handleMovePlayerMessage(tokens);
+                        case MOVE_PLAYERS -> handleMovePlayersMessage(tokens);
+                        case NEW_PLAYER -> handleNewPlayerMessage(tokens);
+                        case SIZE_OF_PLAYERS_IS -> handlePlayerCountMessage(tokens);
+                        case GAME_OVER -> handleGameOverMessage(tokens);
+                        case FLAG_CAPTURED -> handleFlagCapturedMessage(tokens);
+                        case LOCK_FLAG -> handleLockFlagMessage(tokens);
+                        case SENDING_PLAYER -> handlePlayerUpdateMessage(tokens);
+                        case PLAYER_LEFT -> handlePlayerLeftMessage(tokens);
+                        case HIDE_PLAYER -> handleHidePlayerMessage(tokens);
+                        case SNAPSHOT -> handleSnapshotMessage(tokens);
+                        case UDP_OFFER -> handleUdpOfferMessage(tokens);
+                        case JOIN_REFUSED -> handleJoinRefusedMessage(tokens);
+                        case MOVE_ACK -> handleMoveAckMessage(tokens);
+                        case RESPAWN_PLAYER -> handleRespawnMessage(tokens);
                     }
                 }
             } catch (IOException e) {
@@ -691,228 +715,395 @@ public class Maze {
 
     /**
      * Handles movePlayer message from server
-     * @param parts The complete message received from the server
+     * @param tokens The message received from the server
      */
-    private void handleMovePlayerMessage(String[] parts) {
+    private void handleMovePlayerMessage(MessageTokenizer tokens) {
 
         // movePlayer <player name> <newX> <newY>
-        if (parts.length >= 4) {
-            String playerName = parts[1];
-            int newX = Integer.parseInt(parts[2]);
-            int newY = Integer.parseInt(parts[3]);
-
-            System.out.println("Processing move for player: " + playerName);
-            Player playerToMove = findPlayerByName(playerName);
-
-            if (playerToMove == null) {
-                System.out.println("Creating new player: " + playerName);
-                // Use opposite team as a fallback
-                String team = localPlayer.getTeam().equals("red") ? "blue" : "red";
-                playerToMove = new Player(team, newX, newY, playerName);
-                players.add(playerToMove);
-
-                Platform.runLater(() -> addPlayerToUI(playerName, team, newX, newY));
-            }
+        if (tokens.remaining() >= 3) {
+            handleMove(tokens);
+        }
+    }
 
-            else if(parts[1].equals(localPlayer.getName())){
-                System.out.println("--------------------------");
-                System.out.println("Moving existing player: " + playerName);
-                Player finalPlayerToMove = playerToMove;
-                Platform.runLater(() -> movePlayer(finalPlayerToMove, newX, newY));
-            }else {
-                // Move existing player
-                System.out.println("Moving existing player: " + playerName);
-                Player finalPlayerToMove = playerToMove;
-                Platform.runLater(() -> movePlayer(finalPlayerToMove, newX, newY));
-            }
+    /**
+     * Handles movePlayers message from server, which carries the latest position
+     * of every player that moved during one server tick
+     * @param tokens The message received from the server
+     */
+    private void handleMovePlayersMessage(MessageTokenizer tokens) {
+
+        // movePlayers <player name> <newX> <newY> [<player name> <newX> <newY> ...]
+        int moves = tokens.remaining() / 3;
+        for (int i = 0; i < moves; i++) {
+            handleMove(tokens);
         }
     }
+
     /**
-     * Handle newPlayer message from server
-     * @param parts The complete message received from the server
+     * Records the position sent by the server for a player, to be shown in the next frame.
+     * Moves of the local player are skipped: it is shown where it was predicted, and the server's
+     * position for it comes in moveAck and respawnPlayer messages
+     * @param tokens The message, positioned before the player name, x and y co-ordinates
      */
-    private void handleNewPlayerMessage(String[] parts) {
-        // newPlayer <team> <x> <y> <name>
-        if (parts.length >= 5) {
-            String team = parts[1];
-            int x = Integer.parseInt(parts[2]);
-            int y = Integer.parseInt(parts[3]);
-            String playerName = parts[4];
+    private void handleMove(MessageTokenizer tokens) {
+        tokens.next();
+        boolean local = tokens.tokenEquals(localPlayer.getName());
+        String playerName = local ? null : tokens.tokenString();
+        int newX = tokens.nextInt();
+        int newY = tokens.nextInt();
+        if (!local) {
+            incoming.move(playerName, null, newX, newY);
+        }
+    }
 
-            // Don't add if it's the local player or already exists
-            if (!playerName.equals(localPlayer.getName()) &&
-                    !playerExists(playerName)) {
+    /**
+     * Handles moveAck message from server, the answer to a numbered move of the local player
+     * @param tokens The message received from the server
+     */
+    private void handleMoveAckMessage(MessageTokenizer tokens) {
+
+        // moveAck <sequence> <x> <y>
+        if (tokens.remaining() >= 3) {
+            int sequence = tokens.nextInt();
+            int x = tokens.nextInt();
+            int y = tokens.nextInt();
+            incoming.correctLocalPlayer(sequence, x, y);
+        }
+    }
+
+    /**
+     * Handles respawnPlayer message from server. A respawn of the local player overrides its predicted moves;
+     * other players are moved by the movePlayer message that follows
+     * @param tokens The message received from the server
+     */
+    private void handleRespawnMessage(MessageTokenizer tokens) {
+
+        // respawnPlayer <player name> <x> <y>
+        if (tokens.remaining() >= 3 && tokens.next() && tokens.tokenEquals(localPlayer.getName())) {
+            int x = tokens.nextInt();
+            int y = tokens.nextInt();
+            incoming.correctLocalPlayer(PendingUpdates.NO_SEQUENCE, x, y);
+        }
+    }
 
-                Platform.runLater(() -> addPlayerToUI(playerName, team, x, y));
+    /**
+     * Handle newPlayer message from server
+     * @param tokens The message received from the server
+     */
+    private void handleNewPlayerMessage(MessageTokenizer tokens) {
+        // newPlayer <team> <x> <y> <name>
+        if (tokens.remaining() >= 4) {
+            String team = tokens.nextString();
+            int x = tokens.nextInt();
+            int y = tokens.nextInt();
+            String playerName = tokens.nextString();
+
+            // Don't add if it's the local player
+            if (!playerName.equals(localPlayer.getName())) {
+                incoming.move(playerName, team, x, y);
             }
         }
     }
 
     /**
      * Handle sizeOfPlayerIs message from server
-     * @param parts The complete message received from the server
+     * @param tokens The message received from the server
      */
-    private void handlePlayerCountMessage(String[] parts) {
+    private void handlePlayerCountMessage(MessageTokenizer tokens) {
 
         // sizeOfPlayerIs <number of players connected>
-        if (parts.length >= 2) {
-            int count = Integer.parseInt(parts[1]);
-            Platform.runLater(() -> statusLabel.setText("Players: " + count));
+        if (tokens.remaining() >= 1) {
+            incoming.playerCount(tokens.nextInt());
         }
     }
 
 
     /**
      * Handle gameOver message from server
-     * @param parts The complete message received from the server
+     * @param tokens The message received from the server
      */
-    private void handleGameOverMessage(String[] parts) {
+    private void handleGameOverMessage(MessageTokenizer tokens) {
 
         // gameOver <winner name>
-        String winner = parts.length > 1 ? parts[1] : "unknown";
+        DatagramLink link = datagrams;
+        if (link != null) {
+            link.close();
+        }
+        String winner = tokens.next() ? tokens.tokenString() : "unknown";
         endGame(winner);
     }
 
     /**
      * Handle flagCaptured message from server
-     * @param parts The complete message received from the server
-     * Also changes the color of the flag to grey to mark it as captured
+     * @param tokens The message received from the server
      */
-    private void handleFlagCapturedMessage(String[] parts) {
+    private void handleFlagCapturedMessage(MessageTokenizer tokens) {
 
         // flagCaptured <capturing player> <captured flag>
-        if (parts.length >= 3) {
-            String playerName = parts[1];
-            String flagName = parts[2];
-
-            // Display the flag captured information
-            Platform.runLater(() -> {
-                flagCaptureLabel.setText(playerName + " captured " + flagName);
-                Flag capturedFlag = findFlagByName(flagName);
-                if (capturedFlag != null) {
-                    capturedFlag.setCaptured(true);
-                    updateFlagColor(flagName);
-                }
-
-                // Update flag counts
-                Player capturingPlayer = findPlayerByName(playerName);
-                if (capturingPlayer != null) {
-                    Rectangle baseRect = new Rectangle(25, 25);
-                    baseRect.setFill(Color.LIGHTGRAY);
-                    baseRect.setStroke(Color.DARKGRAY);
-                    baseRect.setStrokeWidth(0.5);
-                    if (capturingPlayer.getTeam().equals("red")) {
-                        redFlagCount++;
-                        StackPane flagCell = new StackPane(baseRect, render("redFlag"));
-                        assert capturedFlag != null;
-                        gridPane.add(flagCell, capturedFlag.getY(), capturedFlag.getX());
-                    } else {
-                        blueFlagCount++;
-                        StackPane flagCell = new StackPane(baseRect, render("blueFlag"));
-                        assert capturedFlag != null;
-                        gridPane.add(flagCell, capturedFlag.getY(), capturedFlag.getX());
-                    }
-                    flagCountLabel.setText("Red: " + redFlagCount + " Blue: " + blueFlagCount);
-                    capturePromptLabel.setVisible(true);
-                    capturePromptLabel.setText(parts[2].toUpperCase() + " CAPTURED !");
-                }
-            });
+        if (tokens.remaining() >= 2) {
+            String playerName = tokens.nextString();
+            String flagName = tokens.nextString();
+            incoming.captureFlag(playerName, flagName);
         }
     }
 
     /**
      * Handle lockFlag message from server
-     * @param parts The complete message received from the server
+     * @param tokens The message received from the server
      */
-    private void handleLockFlagMessage(String[] parts) {
+    private void handleLockFlagMessage(MessageTokenizer tokens) {
         // lockFlag <flag name>
-        if (parts.length >= 2) {
-            String flagName = parts[1];
-            Flag flag = findFlagByName(flagName);
-            if (flag != null) {
-                flag.setCaptured(true);
-                updateFlagColor(flagName);
-            }
+        if (tokens.next()) {
+            incoming.lockFlag(tokens.tokenString());
         }
     }
 
     /**
      * Handle sendingPlayer message from server
-     * @param parts The complete message received from the server
+     * @param tokens The message received from the server
      */
-    private void handlePlayerUpdateMessage(String[] parts) {
+    private void handlePlayerUpdateMessage(MessageTokenizer tokens) {
         // sendingPlayer <name> <team> <x> <y>
-        if (parts.length >= 5) {
-            String playerName = parts[1];
-            String team = parts[2];
-            int x = Integer.parseInt(parts[3]);
-            int y = Integer.parseInt(parts[4]);
+        if (tokens.remaining() >= 4) {
+            String playerName = tokens.nextString();
+            String team = tokens.nextString();
+            int x = tokens.nextInt();
+            int y = tokens.nextInt();
 
             // Skip if it's our own player (we already show ourselves)
-            if (playerName.equals(localPlayer.getName())) {
-                return;
+            if (!playerName.equals(localPlayer.getName())) {
+                incoming.move(playerName, team, x, y);
             }
+        }
+    }
+
+    /**
+     * Handle joinRefused message from server, sent when the match the player joined in the console is full or has ended.
+     * The server then places the game window in the match filling up
+     * @param tokens The message received from the server
+     */
+    private void handleJoinRefusedMessage(MessageTokenizer tokens) {
+
+        // joinRefused <match id>
+        String refusedRoom = tokens.next() ? tokens.tokenString() : roomId;
+        System.err.println("Could not join match " + refusedRoom);
+    }
+
+    /**
+     * Handle player left message from server
+     * @param tokens The message received from the server
+     */
+    private void handlePlayerLeftMessage(MessageTokenizer tokens) {
+
+        // playerLeft <player name>
+        if (tokens.next()) {
+            incoming.leave(tokens.tokenString());
+        }
+    }
 
-            // Find or create player
-            Player existingPlayer = findPlayerByName(playerName);
+    /**
+     * Handle hidePlayer message from server, sent when a player goes out of the area the server sends moves of
+     * @param tokens The message received from the server
+     */
+    private void handleHidePlayerMessage(MessageTokenizer tokens) {
 
-            if (existingPlayer != null) {
-                // Update existing player
-                System.out.println("Updating existing player: " + playerName);
-                Platform.runLater(() -> movePlayer(existingPlayer, x, y));
+        // hidePlayer <player name>
+        if (tokens.next() && !tokens.tokenEquals(localPlayer.getName())) {
+            incoming.hide(tokens.tokenString());
+        }
+    }
+
+    /**
+     * Handles snapshot message from server, the changes since a snapshot this window acknowledged,
+     * and acknowledges it once applied
+     * @param tokens The message received from the server
+     */
+    private void handleSnapshotMessage(MessageTokenizer tokens) {
+        if (snapshots == null) {
+            return;
+        }
+        int sequence = snapshots.apply(tokens, incoming);
+        if (sequence > 0) {
+            DatagramLink link = datagrams;
+            if (link != null && link.isBound()) {
+                link.send("snapshotAck " + sequence);
             } else {
-                // Add new player
-                System.out.println("Adding new player: " + playerName);
-                Platform.runLater(() -> addPlayerToUI(playerName, team, x, y));
+                connection.send("snapshotAck " + sequence);
             }
         }
     }
 
     /**
-     * Handle player left message from server
-     * @param parts The complete message received from the server
+     * Handles udpOffer message from server, opening a UDP socket for the snapshots if the server has a UDP port.
+     * Snapshots keep coming over the connection until the socket is bound, and also whenever one is too large for a datagram
+     * @param tokens The message received from the server
      */
-    private void handlePlayerLeftMessage(String[] parts) {
+    private void handleUdpOfferMessage(MessageTokenizer tokens) {
 
-        // playerLeft <player name>
-        if (parts.length >= 2) {
-            String playerName = parts[1];
-
-            Platform.runLater(() -> {
-                // Remove player from UI
-                gridPane.getChildren().removeIf(node ->
-                        node instanceof StackPane &&
-                                ((StackPane)node).getChildren().stream()
-                                        .anyMatch(child ->
-                                                child instanceof Text &&
-                                                        ((Text)child).getText().equals(playerName)));
-
-                // Remove from players list
-                players.removeIf(p -> p.getName().equals(playerName));
+        // udpOffer <port> <token>
+        if (tokens.remaining() < 2 || datagrams != null) {
+            return;
+        }
+        int port = tokens.nextInt();
+        String token = tokens.nextString();
+        if (port <= 0) {
+            return;
+        }
+        try {
+            DatagramLink link = new DatagramLink(ip, port);
+            datagrams = link;
+            MessageTokenizer datagramTokens = new MessageTokenizer();
+            link.start(token, datagram -> {
+                if (datagramTokens.reset(datagram).nextType() == MessageType.SNAPSHOT) {
+                    handleSnapshotMessage(datagramTokens);
+                }
             });
+        } catch (IOException e) {
+            System.err.println("Error opening UDP link, staying on TCP: " + e.getMessage());
         }
     }
 
+    /**
+     * Starts applying the changes received from the server once per frame, just before the frame is drawn,
+     * and sliding the other players towards their cells
+     */
+    private void startApplyingUpdates() {
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                incoming.moveTo(applying);
+                if (!applying.isEmpty()) {
+                    applyUpdates(now);
+                    applying.clear();
+                }
+                if (interpolator != null) {
+                    interpolator.update(now);
+                }
+            }
+        }.start();
+    }
 
     /**
-     * Request current player count from server
+     * Shows the changes received since the last frame. Players that left are removed first,
+     * so a player that left and joined again in the same frame is shown
+     * @param now The time of the frame, in nanoseconds
      */
-    private void getNumberOfPlayers() {
-        out.println("tellMeTheCurrentPlayers");
+    private void applyUpdates(long now) {
+        for (String playerName : applying.getLeft()) {
+            removePlayer(playerName);
+        }
+        for (String playerName : applying.getHidden()) {
+            hidePlayer(playerName);
+        }
+
+        for (Map.Entry<String, PendingUpdates.Position> entry : applying.getPositions().entrySet()) {
+            PendingUpdates.Position position = entry.getValue();
+            // Use opposite team as a fallback for a player only known from its moves
+            String team = position.getTeam() != null ? position.getTeam()
+                    : localPlayer.getTeam().equals("red") ? "blue" : "red";
+            addPlayerToUI(entry.getKey(), team, position.getX(), position.getY());
+            if (interpolator != null) {
+                interpolator.record(entry.getKey(), now, position.getX(), position.getY());
+            }
+        }
+
+        for (Map.Entry<String, String> entry : applying.getFlags().entrySet()) {
+            Flag flag = findFlagByName(entry.getKey());
+            if (entry.getValue() == null) {
+                if (flag != null) {
+                    markFlagCaptured(flag);
+                }
+            } else {
+                showFlagCaptured(entry.getValue(), entry.getKey(), flag);
+            }
+        }
+
+        if (applying.getPlayerCount() >= 0) {
+            statusLabel.setText("Players: " + applying.getPlayerCount());
+        }
+
+        // After the other players have moved, so replayed moves see where they are
+        if (applying.isCorrected()) {
+            reconcile(applying.getCorrectionSequence(), applying.getCorrectionX(), applying.getCorrectionY());
+        }
     }
 
     /**
-     * Helper method to check if a player exists in the game.
-     * @param name The name of the player to lookup
-     * @return true if the player already exist, false otherwise
+     * Displays the flag captured information and updates the flag counts.
+     * Also changes the color of the flag to grey to mark it as captured
+     * @param playerName The name of the capturing player
+     * @param flagName The name of the captured flag
+     * @param capturedFlag The captured flag, or null if there is no such flag
      */
-    private boolean playerExists(String name) {
-        for (Player p : players) {
-            if (p.getName().equals(name)) {
-                return true;
+    private void showFlagCaptured(String playerName, String flagName, Flag capturedFlag) {
+        flagCaptureLabel.setText(playerName + " captured " + flagName);
+        if (capturedFlag != null) {
+            markFlagCaptured(capturedFlag);
+        }
+
+        // Update flag counts
+        Player capturingPlayer = findPlayerByName(playerName);
+        if (capturingPlayer != null) {
+            if (capturingPlayer.getTeam().equals("red")) {
+                redFlagCount++;
+            } else {
+                blueFlagCount++;
+            }
+            assert capturedFlag != null;
+            renderer.captureFlag(capturedFlag, capturingPlayer.getTeam());
+            flagCountLabel.setText("Red: " + redFlagCount + " Blue: " + blueFlagCount);
+            capturePromptLabel.setVisible(true);
+            capturePromptLabel.setText(flagName.toUpperCase() + " CAPTURED !");
+            if (capturingPlayer == localPlayer) {
+                // The hold is over, so letting go of C no longer gives it up
+                captureStartTime = -1;
+                cPressed = false;
+            }
+        }
+    }
+
+    /**
+     * Removes a player from the UI, from the players list and from the tile layer
+     * @param playerName The name of the player who left
+     */
+    private void removePlayer(String playerName) {
+        renderer.removePlayer(playerName);
+        if (interpolator != null) {
+            interpolator.remove(playerName);
+        }
+
+        Player leaving = findPlayerByName(playerName);
+        if (leaving != null) {
+            players.remove(leaving);
+            if (!hiddenPlayers.remove(playerName)) {
+                occupy(leaving.getX(), leaving.getY(), -1);
             }
         }
-        return false;
+    }
+
+
+    /**
+     * Takes a player out of the UI and the tile layer while it is out of view, keeping it in the players list
+     * so its captures still count for its team
+     * @param playerName The name of the player out of view
+     */
+    private void hidePlayer(String playerName) {
+        Player hiding = findPlayerByName(playerName);
+        if (hiding == null || !hiddenPlayers.add(playerName)) {
+            return;
+        }
+        renderer.removePlayer(playerName);
+        if (interpolator != null) {
+            interpolator.remove(playerName);
+        }
+        occupy(hiding.getX(), hiding.getY(), -1);
+    }
+
+    /**
+     * Request current player count from server
+     */
+    private void getNumberOfPlayers() {
+        connection.send("tellMeTheCurrentPlayers");
     }
 
     /**
@@ -952,10 +1143,11 @@ public class Maze {
      * @return the Flag object if an uncaptured flag is present at the given position, null otherwise.
      */
     private Flag getUncapturedFlagAtPosition(int x, int y) {
-        for (Flag flag : flags) {
-            if (flag.getX() == x && flag.getY() == y && !flag.isCaptured()) {
+        if (x >= 0 && x < ROWS && y >= 0 && y < COLS) {
+            int tile = tiles[x * COLS + y];
+            if ((tile & FLAG_MASK) != 0 && (tile & FLAG_CAPTURED) == 0) {
                 capturePromptLabel.setVisible(true);
-                return flag;
+                return flags.get(((tile & FLAG_MASK) >> FLAG_SHIFT) - 1);
             }
         }
         capturePromptLabel.setVisible(false);
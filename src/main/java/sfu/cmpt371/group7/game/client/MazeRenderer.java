@@ -0,0 +1,67 @@
+package sfu.cmpt371.group7.game.client;
+
+import javafx.scene.Node;
+import sfu.cmpt371.group7.game.model.Flag;
+import sfu.cmpt371.group7.game.model.Player;
+
+/**
+ * Draws the maze of a {@link Maze} game: the tiles of the map, the flags and the players.
+ * <p>
+ * The game decides what happens and tells the renderer what changed; the renderer only decides
+ * how it looks. The renderer is picked with {@code CLIENT_RENDERER} in a {@code .env} file or the
+ * environment, see {@link Menu#useCanvasRenderer()}. Every method is called on the JavaFX thread.
+ *
+ * @see GridPaneRenderer
+ * @see CanvasRenderer
+ */
+interface MazeRenderer {
+
+    /**
+     * Draws the tiles of the map.
+     *
+     * @param grid The map values by row and column: 0 empty, 1 wall, 2 flag, 3 red home, 4 blue home
+     * @return the node showing the maze, placed in the centre of the game window
+     */
+    Node drawMaze(int[][] grid);
+
+    /**
+     * Shows a player at its position, or moves it there if it is already shown.
+     *
+     * @param player The player to show
+     * @param local Whether the player is the one playing in this window, which is highlighted
+     */
+    void showPlayer(Player player, boolean local);
+
+    /**
+     * Draws a player that is shown somewhere between cells, while it is animated from one cell to another.
+     * The position counts in cells like the player's co-ordinates, but the player still stands on the
+     * cell last given to {@link #showPlayer(Player, boolean)}.
+     *
+     * @param name The name of the player
+     * @param x The x co-ordinate to draw the player at
+     * @param y The y co-ordinate to draw the player at
+     */
+    void showPlayerAt(String name, double x, double y);
+
+    /**
+     * Stops showing a player.
+     *
+     * @param name The name of the player
+     */
+    void removePlayer(String name);
+
+    /**
+     * Shows that a flag can no longer be captured.
+     *
+     * @param flag The locked flag
+     */
+    void lockFlag(Flag flag);
+
+    /**
+     * Shows a flag in the colour of the team that captured it.
+     *
+     * @param flag The captured flag
+     * @param team The team of the capturing player
+     */
+    void captureFlag(Flag flag, String team);
+}
@@ -6,14 +6,13 @@ import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.effect.GaussianBlur;
-import javafx.scene.image.Image;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
+import io.github.cdimascio.dotenv.Dotenv;
 import sfu.cmpt371.group7.game.server.Server;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.Objects;
 
 /**
  * The {@code Menu} class provides the GUI for the main menu of the
@@ -30,6 +29,8 @@ public class Menu extends Application {
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("CAPTURE THE FLAG");
+        // Decode every image now rather than when a window or the maze first needs it
+        Images.preload();
 
         VBox root = setupRoot();
 
@@ -77,11 +78,73 @@ public class Menu extends Application {
             });
         });
         primaryStage.setTitle("Capture the Flag");
-        primaryStage.getIcons().add(new Image(Objects.requireNonNull(Menu.class.getResourceAsStream("/sfu/cmpt371/group7/game/gameIcon.png"))));
+        primaryStage.getIcons().add(Images.get(Images.ICON));
         primaryStage.show();
     }
 
 
+    /**
+     * Checks whether the client should ask the server for the compact binary protocol,
+     * set with {@code CLIENT_PROTOCOL=binary} in a {@code .env} file or the environment.
+     *
+     * @return true if the binary protocol should be used.
+     */
+    public static boolean useBinaryProtocol() {
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        return "binary".equalsIgnoreCase(dotenv.get("CLIENT_PROTOCOL", "text"));
+    }
+
+    /**
+     * Checks whether the game window should draw the maze on a canvas rather than with a node per cell,
+     * set with {@code CLIENT_RENDERER=canvas} in a {@code .env} file or the environment.
+     *
+     * @return true if the canvas renderer should be used.
+     */
+    public static boolean useCanvasRenderer() {
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        return "canvas".equalsIgnoreCase(dotenv.get("CLIENT_RENDERER", "grid"));
+    }
+
+    /**
+     * Checks whether the game window should ask the server for snapshots of the changes since the last one
+     * it acknowledged, instead of every move, set with {@code CLIENT_SNAPSHOTS=true} in a {@code .env} file
+     * or the environment.
+     *
+     * @return true if snapshots should be used.
+     */
+    public static boolean useSnapshots() {
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        return Boolean.parseBoolean(dotenv.get("CLIENT_SNAPSHOTS", "false").trim());
+    }
+
+    /**
+     * Checks whether the game window should receive its snapshots over UDP, so a lost or late position does not
+     * hold up the ones after it, set with {@code CLIENT_UDP=true} in a {@code .env} file or the environment.
+     * Implies {@link #useSnapshots()}. The window stays on TCP if the server has no UDP port.
+     *
+     * @return true if snapshots should be received over UDP.
+     */
+    public static boolean useUdp() {
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        return Boolean.parseBoolean(dotenv.get("CLIENT_UDP", "false").trim());
+    }
+
+    /**
+     * Gets how far in the past the other players are drawn, so they slide between cells instead of jumping,
+     * set with {@code CLIENT_INTERPOLATION_DELAY} in milliseconds in a {@code .env} file or the environment.
+     *
+     * @return the delay in milliseconds, 100 unless set; 0 draws players as soon as they move.
+     */
+    public static int getInterpolationDelay() {
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        try {
+            return Math.max(0, Integer.parseInt(dotenv.get("CLIENT_INTERPOLATION_DELAY", "100").trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("CLIENT_INTERPOLATION_DELAY is not a number, using 100");
+            return 100;
+        }
+    }
+
     /**
      * Creates and returns the Vbox with background image and styles.
      *
@@ -92,7 +155,7 @@ public class Menu extends Application {
         root.setPadding(new Insets(30));
         //root.setStyle("-fx-background-color: linear-gradient(to bottom, #2c3e50, #34495e); -fx-background-radius: 8;");
         root.setBackground(new Background(new BackgroundImage(
-                new Image(Objects.requireNonNull(Menu.class.getResourceAsStream("/sfu/cmpt371/group7/game/BackgroundImage.png"))),
+                Images.get(Images.BACKGROUND),
                 null,
                 null,
                 BackgroundPosition.CENTER,
@@ -112,7 +175,7 @@ public class Menu extends Application {
     private void showNewGameDialog(Stage stage) {
         Stage dialogStage = new Stage();
         dialogStage.setTitle("Create New Game");
-        dialogStage.getIcons().add(new Image(Objects.requireNonNull(Menu.class.getResourceAsStream("/sfu/cmpt371/group7/game/gameIcon.png"))));
+        dialogStage.getIcons().add(Images.get(Images.ICON));
 
         VBox dialogVBox = new VBox(15);
         dialogVBox.setPadding(new Insets(30));
@@ -163,7 +226,7 @@ public class Menu extends Application {
     private void showJoinGameDialog(Stage stage) {
         Stage joinStage = new Stage();
         joinStage.setTitle("Join Game");
-        joinStage.getIcons().add(new Image(Objects.requireNonNull(Menu.class.getResourceAsStream("/sfu/cmpt371/group7/game/gameIcon.png"))));
+        joinStage.getIcons().add(Images.get(Images.ICON));
         VBox joinBox = new VBox(15);
         joinBox.setPadding(new Insets(30));
         joinBox.setStyle("-fx-background-color: #ecf0f1; -fx-background-radius: 10;");
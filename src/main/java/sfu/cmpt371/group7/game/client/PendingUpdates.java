@@ -0,0 +1,281 @@
+package sfu.cmpt371.group7.game.client;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes sent by the server that the game window has not shown yet.
+ * <p>
+ * The thread reading the connection records every message here instead of queueing a task on the
+ * JavaFX thread, and the game window applies what was recorded once per frame. Changes to the same
+ * thing are merged as they arrive: only the latest position of a player is kept, a flag is changed
+ * once however many messages name it, and only the latest player count is kept. So the work done on
+ * the JavaFX thread in a frame depends on how many players and flags changed, not on how many
+ * messages came in.
+ * <p>
+ * Two instances are used in turn: the reading thread writes into one while the JavaFX thread applies
+ * the other, and {@link #moveTo(PendingUpdates)} swaps their contents without copying.
+ */
+class PendingUpdates {
+
+    /** Sequence number of a correction of the local player that is not the answer to one of its moves, such as a respawn */
+    static final int NO_SEQUENCE = -1;
+
+    /**
+     * The latest position of a player, updated in place when the player moves again before it is shown.
+     */
+    static final class Position {
+        /** The player's team, or null if the message did not say */
+        private String team;
+        private int x;
+        private int y;
+
+        String getTeam() {
+            return team;
+        }
+
+        int getX() {
+            return x;
+        }
+
+        int getY() {
+            return y;
+        }
+    }
+
+    /** Players that left, in the order they left. Applied before the positions, so a player can rejoin */
+    private Set<String> left = new LinkedHashSet<>();
+
+    /** Players that went out of the server's interest radius. Applied before the positions, so a player can come back */
+    private Set<String> hidden = new LinkedHashSet<>();
+
+    /** The latest position of each player that moved or joined, by name */
+    private Map<String, Position> positions = new LinkedHashMap<>();
+
+    /** The flags that changed, by name, mapped to the player who captured them, or to null if they were only locked */
+    private Map<String, String> flags = new LinkedHashMap<>();
+
+    /** The latest number of players, or -1 if it did not change */
+    private int playerCount = -1;
+
+    /** Whether the server sent a position for the local player */
+    private boolean corrected;
+
+    /** The move the latest position of the local player answers, or {@link #NO_SEQUENCE} */
+    private int correctionSequence;
+
+    private int correctionX;
+    private int correctionY;
+
+    /**
+     * Records the position of a player, replacing any position recorded earlier.
+     *
+     * @param name The name of the player
+     * @param team The team of the player, or null if it is not known
+     * @param x The x co-ordinate
+     * @param y The y co-ordinate
+     */
+    synchronized void move(String name, String team, int x, int y) {
+        Position position = positions.get(name);
+        if (position == null) {
+            position = new Position();
+            positions.put(name, position);
+        }
+        // A position sent after the player was hidden shows it again
+        hidden.remove(name);
+        // Keep a team sent earlier, in case the player is not shown yet
+        if (team != null) {
+            position.team = team;
+        }
+        position.x = x;
+        position.y = y;
+    }
+
+    /**
+     * Records that a player left, dropping any position recorded for it.
+     *
+     * @param name The name of the player
+     */
+    synchronized void leave(String name) {
+        positions.remove(name);
+        left.add(name);
+    }
+
+    /**
+     * Records that a player went out of the area the server sends moves of, dropping any position recorded for it.
+     * The player is still in the game, so its captures still count for its team.
+     *
+     * @param name The name of the player
+     */
+    synchronized void hide(String name) {
+        positions.remove(name);
+        hidden.add(name);
+    }
+
+    /**
+     * Records that a flag can no longer be captured.
+     *
+     * @param flag The name of the flag
+     */
+    synchronized void lockFlag(String flag) {
+        if (!flags.containsKey(flag)) {
+            flags.put(flag, null);
+        }
+    }
+
+    /**
+     * Records that a player captured a flag.
+     *
+     * @param player The name of the capturing player
+     * @param flag The name of the flag
+     */
+    synchronized void captureFlag(String player, String flag) {
+        flags.put(flag, player);
+    }
+
+    /**
+     * Records the number of players connected.
+     *
+     * @param count The number of players
+     */
+    synchronized void playerCount(int count) {
+        playerCount = count;
+    }
+
+    /**
+     * Records the position the server has for the local player, replacing any recorded earlier.
+     * Only the latest matters: it already includes every earlier move the server handled.
+     *
+     * @param sequence The number of the local move the position answers, or {@link #NO_SEQUENCE}
+     * @param x The x co-ordinate
+     * @param y The y co-ordinate
+     */
+    synchronized void correctLocalPlayer(int sequence, int x, int y) {
+        corrected = true;
+        correctionSequence = sequence;
+        correctionX = x;
+        correctionY = y;
+    }
+
+    /**
+     * Moves everything recorded into another, empty, instance and leaves this one empty,
+     * by swapping their contents.
+     *
+     * @param target The instance to move the changes to, which was cleared after it was last applied
+     */
+    synchronized void moveTo(PendingUpdates target) {
+        Set<String> emptyLeft = target.left;
+        Set<String> emptyHidden = target.hidden;
+        Map<String, Position> emptyPositions = target.positions;
+        Map<String, String> emptyFlags = target.flags;
+        target.left = left;
+        target.hidden = hidden;
+        target.positions = positions;
+        target.flags = flags;
+        target.playerCount = playerCount;
+        target.corrected = corrected;
+        target.correctionSequence = correctionSequence;
+        target.correctionX = correctionX;
+        target.correctionY = correctionY;
+        left = emptyLeft;
+        hidden = emptyHidden;
+        positions = emptyPositions;
+        flags = emptyFlags;
+        playerCount = -1;
+        corrected = false;
+    }
+
+    /**
+     * Checks whether anything was recorded.
+     * @return true if there is nothing to apply
+     */
+    boolean isEmpty() {
+        return left.isEmpty() && hidden.isEmpty() && positions.isEmpty() && flags.isEmpty() && playerCount < 0 && !corrected;
+    }
+
+    /**
+     * Gets the players that left.
+     * @return the names of the players, in the order they left
+     */
+    Set<String> getLeft() {
+        return left;
+    }
+
+    /**
+     * Gets the players that went out of view.
+     * @return the names of the players
+     */
+    Set<String> getHidden() {
+        return hidden;
+    }
+
+    /**
+     * Gets the latest positions of the players that moved.
+     * @return the positions by player name
+     */
+    Map<String, Position> getPositions() {
+        return positions;
+    }
+
+    /**
+     * Gets the flags that changed.
+     * @return the capturing player by flag name, or null for a flag that was only locked
+     */
+    Map<String, String> getFlags() {
+        return flags;
+    }
+
+    /**
+     * Gets the latest number of players.
+     * @return the number of players, or -1 if it did not change
+     */
+    int getPlayerCount() {
+        return playerCount;
+    }
+
+    /**
+     * Checks whether the server sent a position for the local player.
+     * @return true if there is a correction to apply
+     */
+    boolean isCorrected() {
+        return corrected;
+    }
+
+    /**
+     * Gets the move the position of the local player answers.
+     * @return the sequence number of the move, or {@link #NO_SEQUENCE}
+     */
+    int getCorrectionSequence() {
+        return correctionSequence;
+    }
+
+    /**
+     * Gets the x co-ordinate the server has for the local player.
+     * @return the x co-ordinate
+     */
+    int getCorrectionX() {
+        return correctionX;
+    }
+
+    /**
+     * Gets the y co-ordinate the server has for the local player.
+     * @return the y co-ordinate
+     */
+    int getCorrectionY() {
+        return correctionY;
+    }
+
+    /**
+     * Empties this instance once it has been applied, keeping its collections for the next frame.
+     */
+    void clear() {
+        left.clear();
+        hidden.clear();
+        positions.clear();
+        flags.clear();
+        playerCount = -1;
+        corrected = false;
+    }
+}
@@ -58,6 +58,7 @@ public class Results {
         Scene scene = new Scene(layout, 300, 200);
         stage.initModality(Modality.APPLICATION_MODAL);
         stage.setTitle("Game Results");
+        stage.getIcons().add(Images.get(Images.ICON));
         stage.setScene(scene);
         stage.setResizable(false);
         stage.centerOnScreen();
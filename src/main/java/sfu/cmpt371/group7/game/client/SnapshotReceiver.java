@@ -0,0 +1,143 @@
+package sfu.cmpt371.group7.game.client;
+
+import sfu.cmpt371.group7.game.protocol.MessageTokenizer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rebuilds the snapshots the server sends instead of moves, once the game window asked for them.
+ * <p>
+ * Each snapshot is sent as the changes since a snapshot the window acknowledged earlier, its base, so the
+ * window keeps the snapshots it applied recently. A snapshot is rebuilt from its base, then compared with
+ * the snapshot shown last, and only what differs is recorded for the next frame: a new position, a player
+ * that is no longer seen, or a flag that was captured. Snapshots older than the one shown are ignored.
+ * <p>
+ * Used by the thread reading the connection, and by the thread reading the UDP socket when snapshots come over UDP.
+ */
+class SnapshotReceiver {
+
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int JOINED = 4;
+    private static final int LEFT = 8;
+
+    /** Snapshots kept as bases, as many as the server keeps */
+    private static final int HISTORY = 32;
+
+    private final String localPlayer;
+    private final Snapshot[] ring = new Snapshot[HISTORY];
+    /** The snapshot shown last */
+    private Snapshot shown = new Snapshot(0, 0);
+
+    /**
+     * A player as a snapshot has it
+     */
+    private static final class Entry {
+        private final String name;
+        private final String team;
+        private final int x;
+        private final int y;
+
+        private Entry(String name, String team, int x, int y) {
+            this.name = name;
+            this.team = team;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * The players seen in one snapshot, by the id the server gave them, and the captured flags
+     */
+    private static final class Snapshot {
+        private final int sequence;
+        private final int flags;
+        private final Map<Integer, Entry> players = new TreeMap<>();
+
+        private Snapshot(int sequence, int flags) {
+            this.sequence = sequence;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * Constructs a receiver that has no snapshot yet
+     * @param localPlayer The name of the player of this game window, whose position comes in moveAck messages instead
+     */
+    SnapshotReceiver(String localPlayer) {
+        this.localPlayer = localPlayer;
+    }
+
+    /**
+     * Applies a snapshot message, recording what changed since the snapshot shown last
+     *
+     * @param tokens The message, positioned after the message type
+     * @param updates Where to record the changes
+     * @return the number of the snapshot to acknowledge, or -1 if it was old or its base is no longer kept
+     */
+    synchronized int apply(MessageTokenizer tokens, PendingUpdates updates) {
+
+        // snapshot <sequence> <base> <captured flags> [<id> <mask> [<name> <team>] [<x>] [<y>] ...]
+        if (tokens.remaining() < 3) {
+            return -1;
+        }
+        int sequence = tokens.nextInt();
+        int baseSequence = tokens.nextInt();
+        int flags = tokens.nextInt();
+        Snapshot base = baseSequence == 0 ? null : ring[baseSequence % HISTORY];
+        if (sequence <= shown.sequence || (baseSequence != 0 && (base == null || base.sequence != baseSequence))) {
+            return -1;
+        }
+
+        Snapshot snapshot = new Snapshot(sequence, flags);
+        if (base != null) {
+            snapshot.players.putAll(base.players);
+        }
+        while (tokens.remaining() >= 2) {
+            int id = tokens.nextInt();
+            int mask = tokens.nextInt();
+            if ((mask & LEFT) != 0) {
+                snapshot.players.remove(id);
+                continue;
+            }
+            Entry entry = snapshot.players.get(id);
+            if (entry == null && (mask & JOINED) == 0) {
+                // Changes to a player the base does not have: skip its fields
+                for (int field = Integer.bitCount(mask & (X | Y)); field > 0; field--) {
+                    tokens.next();
+                }
+                continue;
+            }
+            String name = (mask & JOINED) != 0 ? tokens.nextString() : entry.name;
+            String team = (mask & JOINED) != 0 ? tokens.nextString() : entry.team;
+            int x = (mask & X) != 0 ? tokens.nextInt() : entry.x;
+            int y = (mask & Y) != 0 ? tokens.nextInt() : entry.y;
+            snapshot.players.put(id, new Entry(name, team, x, y));
+        }
+
+        for (Map.Entry<Integer, Entry> player : snapshot.players.entrySet()) {
+            Entry now = player.getValue();
+            Entry before = shown.players.get(player.getKey());
+            if (!now.name.equals(localPlayer) && (before == null || before.x != now.x || before.y != now.y)) {
+                updates.move(now.name, now.team, now.x, now.y);
+            }
+        }
+        for (Map.Entry<Integer, Entry> player : shown.players.entrySet()) {
+            String name = player.getValue().name;
+            if (!snapshot.players.containsKey(player.getKey()) && !name.equals(localPlayer)) {
+                updates.hide(name);
+            }
+        }
+        int captured = flags & ~shown.flags;
+        for (int i = 0; captured >> i != 0; i++) {
+            if ((captured >> i & 1) != 0) {
+                updates.lockFlag("flag" + (i + 1));
+            }
+        }
+
+        ring[sequence % HISTORY] = snapshot;
+        shown = snapshot;
+        return sequence;
+    }
+}
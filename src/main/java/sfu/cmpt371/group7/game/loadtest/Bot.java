@@ -0,0 +1,274 @@
+package sfu.cmpt371.group7.game.loadtest;
+
+import sfu.cmpt371.group7.game.protocol.MessageStream;
+import sfu.cmpt371.group7.game.protocol.MessageTokenizer;
+import sfu.cmpt371.group7.game.protocol.MessageType;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One simulated player, playing over its own connection like the game window does.
+ * <p>
+ * The bot selects a team, waits for its match to start and sends the flag coordinates. It then
+ * walks around the maze at a fixed rate, now and then giving up a capture or asking for the players
+ * to be resent. Replies are read on a virtual thread of their own, and the time from sending a message
+ * to seeing the server's answer is recorded: the broadcast of the bot's own move, the
+ * {@code respawnPlayer} that follows a failed capture, or the player count that starts a resend.
+ */
+class Bot {
+    /** Percent of messages that give up a capture. */
+    private static final int CAPTURE_PERCENT = 2;
+    /** Percent of messages that ask for the players to be resent. */
+    private static final int RESEND_PERCENT = 1;
+    /** A capture still unanswered after this long is given up, so the bot keeps moving. */
+    private static final long CAPTURE_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+    private static final int[][] DIRECTIONS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+    private final LoadGenerator generator;
+    private final String name;
+    private final String team;
+    private final CountDownLatch started = new CountDownLatch(1);
+    /** Moves sent and not seen yet, oldest first, as {x, y, time sent}. */
+    private final Queue<long[]> pendingMoves = new ConcurrentLinkedQueue<>();
+    /** Send times of resend requests not answered yet, oldest first. */
+    private final Queue<Long> pendingResends = new ConcurrentLinkedQueue<>();
+    private MessageStream connection;
+    /** When the unanswered capture was sent, or 0 if there is none. */
+    private volatile long captureSentAt;
+    /** Position of the player; written by the reader before the game starts, on a respawn and on a refused move, otherwise by the sender. */
+    private volatile int x;
+    private volatile int y;
+
+    /**
+     * Constructs a bot that is not connected yet.
+     *
+     * @param generator The generator the bot reports to.
+     * @param name The name of the bot's player.
+     * @param team The team the bot selects.
+     */
+    Bot(LoadGenerator generator, String name, String team) {
+        this.generator = generator;
+        this.name = name;
+        this.team = team;
+    }
+
+    /**
+     * Connects to the server, starts reading and selects a team.
+     * The server places the bot in a match on the team selection.
+     *
+     * @return false if the connection failed.
+     */
+    boolean connect() {
+        LoadConfig config = generator.getConfig();
+        try {
+            connection = MessageStream.connect(config.getHost(), config.getPort(), config.isBinary());
+        } catch (IOException e) {
+            generator.connectionError(name + " could not connect: " + e.getMessage());
+            return false;
+        }
+        Thread.ofVirtual().name("bot-" + name).start(this::listen);
+        send("teamSelection " + team + " " + name);
+        return true;
+    }
+
+    /**
+     * Waits until the bot's match has started.
+     *
+     * @param nanos How long to wait at most.
+     * @return true if the match started in time.
+     */
+    boolean awaitStart(long nanos) throws InterruptedException {
+        return started.await(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends messages at the configured rate until the generator stops.
+     * The first message is sent at a random point of the first interval, so the bots do not send in step.
+     */
+    void play() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        send(generator.getFlagCoordinates());
+        long interval = TimeUnit.SECONDS.toNanos(1) / generator.getConfig().getMoveRate();
+        long next = System.nanoTime() + random.nextLong(interval);
+        while (generator.isRunning()) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            next += interval;
+
+            long capture = captureSentAt;
+            if (capture != 0) {
+                // Moving before the respawn arrives would be undone by it
+                if (System.nanoTime() - capture < CAPTURE_TIMEOUT) {
+                    continue;
+                }
+                captureSentAt = 0;
+            }
+            int roll = random.nextInt(100);
+            if (roll < CAPTURE_PERCENT) {
+                // What the game window sends when capturing is given up early
+                captureSentAt = System.nanoTime();
+                send("captureDuration " + name + " flag1 0.0");
+            } else if (roll < CAPTURE_PERCENT + RESEND_PERCENT) {
+                pendingResends.add(System.nanoTime());
+                send("resendPlayers");
+            } else {
+                move(random);
+            }
+        }
+    }
+
+    /**
+     * Moves the player to a random open cell next to it.
+     */
+    private void move(ThreadLocalRandom random) {
+        int start = random.nextInt(DIRECTIONS.length);
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            int[] direction = DIRECTIONS[(start + i) % DIRECTIONS.length];
+            int newX = x + direction[0];
+            int newY = y + direction[1];
+            if (generator.isOpen(newX, newY)) {
+                x = newX;
+                y = newY;
+                pendingMoves.add(new long[] {newX, newY, System.nanoTime()});
+                send("movePlayer " + name + " " + newX + " " + newY);
+                return;
+            }
+        }
+    }
+
+    private void send(String message) {
+        connection.send(message);
+        generator.sent();
+    }
+
+    /**
+     * Reads messages from the server until the connection closes.
+     */
+    private void listen() {
+        MessageTokenizer tokens = new MessageTokenizer();
+        try {
+            String message;
+            while ((message = connection.readMessage()) != null) {
+                long now = System.nanoTime();
+                generator.received();
+                MessageType messageType = tokens.reset(message).nextType();
+                if (messageType == null) {
+                    continue;
+                }
+                switch (messageType) {
+                    case MOVE_PLAYER -> handleMoves(tokens, now);
+                    case MOVE_PLAYERS -> handleMoves(tokens, now);
+                    case RESPAWN_PLAYER -> handleRespawn(tokens, now);
+                    case SIZE_OF_PLAYERS_IS -> handlePlayerCount(now);
+                    case SENDING_PLAYER -> handleSendingPlayer(tokens);
+                    case START_GAME -> started.countDown();
+                    default -> {
+                    }
+                }
+            }
+            if (generator.isRunning()) {
+                generator.connectionError(name + " was disconnected by the server");
+            }
+        } catch (IOException e) {
+            if (generator.isRunning()) {
+                generator.connectionError(name + " lost its connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Handles a single move or a tick's batch of moves, looking for the bot's own player.
+     */
+    private void handleMoves(MessageTokenizer tokens, long now) {
+        // movePlayer <name> <x> <y> / movePlayers <name> <x> <y> [<name> <x> <y> ...]
+        while (tokens.remaining() >= 3) {
+            tokens.next();
+            boolean own = tokens.tokenEquals(name);
+            int movedX = tokens.nextInt();
+            int movedY = tokens.nextInt();
+            if (own) {
+                moveSeen(movedX, movedY, now);
+            }
+        }
+    }
+
+    /**
+     * Records the round trip of a move that came back. Moves sent before it that never came back
+     * were superseded within the same tick, and are counted as coalesced.
+     */
+    private void moveSeen(int movedX, int movedY, long now) {
+        boolean pending = false;
+        for (long[] move : pendingMoves) {
+            if (move[0] == movedX && move[1] == movedY) {
+                pending = true;
+                break;
+            }
+        }
+        // Not one of ours: the move that follows a respawn, or the server's position after refusing a move,
+        // e.g. onto a cell another player took first. The moves sent since will not come back either
+        if (!pending) {
+            x = movedX;
+            y = movedY;
+            pendingMoves.clear();
+            return;
+        }
+        Iterator<long[]> moves = pendingMoves.iterator();
+        while (moves.hasNext()) {
+            long[] move = moves.next();
+            moves.remove();
+            if (move[0] == movedX && move[1] == movedY) {
+                generator.moveAnswered(now - move[2]);
+                return;
+            }
+            generator.moveCoalesced();
+        }
+    }
+
+    private void handleRespawn(MessageTokenizer tokens, long now) {
+        // respawnPlayer <name> <x> <y>
+        if (tokens.remaining() >= 3 && tokens.next() && tokens.tokenEquals(name)) {
+            x = tokens.nextInt();
+            y = tokens.nextInt();
+            long capture = captureSentAt;
+            if (capture != 0) {
+                generator.captureAnswered(now - capture);
+                captureSentAt = 0;
+            }
+        }
+    }
+
+    private void handlePlayerCount(long now) {
+        Long sentAt = pendingResends.poll();
+        if (sentAt != null) {
+            generator.resendAnswered(now - sentAt);
+        }
+    }
+
+    private void handleSendingPlayer(MessageTokenizer tokens) {
+        // sendingPlayer <name> <team> <x> <y>
+        if (started.getCount() > 0 && tokens.remaining() >= 4 && tokens.next() && tokens.tokenEquals(name)) {
+            tokens.next();
+            x = tokens.nextInt();
+            y = tokens.nextInt();
+        }
+    }
+
+    /**
+     * Closes the connection.
+     */
+    void close() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+}
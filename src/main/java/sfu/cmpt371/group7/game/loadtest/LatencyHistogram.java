@@ -0,0 +1,97 @@
+package sfu.cmpt371.group7.game.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets that grow with the value, so percentiles can be read from
+ * millions of samples in a fixed amount of memory. Values are kept in microseconds;
+ * up to 64 us every value has its own bucket, above that a bucket spans at most 1/32 of its value.
+ * Any thread may record.
+ */
+public final class LatencyHistogram {
+    /** Values below this each have their own bucket. */
+    private static final int LINEAR = 64;
+    /** Buckets per power of two above {@link #LINEAR}. */
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BITS = 5;
+    /** Powers of two above {@link #LINEAR} covered, enough for any latency in microseconds. */
+    private static final int RANGES = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + RANGES * SUB_BUCKETS);
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos / 1000)));
+    }
+
+    /**
+     * Counts the latencies recorded so far.
+     * @return the number of latencies
+     */
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the latency below which the given fraction of the recorded latencies lie.
+     *
+     * @param fraction The fraction, e.g. 0.99 for the 99th percentile.
+     * @return the latency in microseconds, or 0 if nothing was recorded.
+     */
+    public long percentile(double fraction) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(counts.length() - 1);
+    }
+
+    /**
+     * Forgets every latency recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int range = Math.min(exponent - 6, RANGES - 1);
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + range * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gets the largest value that falls into a bucket.
+     */
+    private static long highestValueOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int range = (index - LINEAR) / SUB_BUCKETS;
+        int sub = (index - LINEAR) % SUB_BUCKETS;
+        int exponent = range + 6;
+        long lowest = (1L << exponent) + ((long) sub << (exponent - SUB_BITS));
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
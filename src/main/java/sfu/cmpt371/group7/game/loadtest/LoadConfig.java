@@ -0,0 +1,135 @@
+package sfu.cmpt371.group7.game.loadtest;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.util.function.Function;
+
+/**
+ * Settings for the {@link LoadGenerator}.
+ * <p>
+ * Settings are looked up by key, normally from a {@code .env} file or the environment,
+ * and every setting has a default.
+ * <ul>
+ *     <li>{@code LOAD_HOST} - address of the server (default: localhost)</li>
+ *     <li>{@code LOAD_PORT} - port of the server (default: 65000)</li>
+ *     <li>{@code LOAD_PLAYERS} - number of simulated players; every four of them play one match (default: 1000)</li>
+ *     <li>{@code LOAD_MOVE_RATE} - messages each player sends per second (default: 10)</li>
+ *     <li>{@code LOAD_DURATION} - seconds to measure for once every match has started (default: 30)</li>
+ *     <li>{@code LOAD_PROTOCOL} - {@code text} (default) or {@code binary}</li>
+ * </ul>
+ */
+public class LoadConfig {
+
+    /** The address of the server. */
+    private final String host;
+
+    /** The port of the server. */
+    private final int port;
+
+    /** Number of simulated players. */
+    private final int players;
+
+    /** Messages each player sends per second. */
+    private final int moveRate;
+
+    /** Seconds to measure for. */
+    private final int durationSeconds;
+
+    /** Whether the players ask for the binary protocol. */
+    private final boolean binary;
+
+    /**
+     * Constructs a configuration reading each setting from the given source.
+     *
+     * @param source Looks up a setting by key, returning {@code null} when it is not set.
+     */
+    public LoadConfig(Function<String, String> source) {
+        String host = source.apply("LOAD_HOST");
+        this.host = host == null ? "localhost" : host.trim();
+        this.port = readInt(source, "LOAD_PORT", 65000);
+        this.players = Math.max(1, readInt(source, "LOAD_PLAYERS", 1000));
+        this.moveRate = Math.max(1, readInt(source, "LOAD_MOVE_RATE", 10));
+        this.durationSeconds = Math.max(1, readInt(source, "LOAD_DURATION", 30));
+        String protocol = source.apply("LOAD_PROTOCOL");
+        this.binary = protocol != null && protocol.trim().equalsIgnoreCase("binary");
+    }
+
+    /**
+     * Loads the configuration from a {@code .env} file if there is one, otherwise from the environment.
+     *
+     * @return the loaded configuration.
+     */
+    public static LoadConfig load() {
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        return new LoadConfig(dotenv::get);
+    }
+
+    /**
+     * Reads an integer setting.
+     *
+     * @param source The source to read from.
+     * @param key The key of the setting.
+     * @param defaultValue The value to use when the setting is missing or not a number.
+     * @return the value of the setting.
+     */
+    private static int readInt(Function<String, String> source, String key, int defaultValue) {
+        String value = source.apply(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets the address of the server.
+     * @return the host name or address
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the port of the server.
+     * @return the TCP port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Gets the number of simulated players.
+     * @return the number of players
+     */
+    public int getPlayers() {
+        return players;
+    }
+
+    /**
+     * Gets the number of messages each player sends per second.
+     * @return the message rate of one player
+     */
+    public int getMoveRate() {
+        return moveRate;
+    }
+
+    /**
+     * Gets how long to measure for.
+     * @return the duration in seconds
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * Checks whether the players ask for the binary protocol.
+     * @return true for the binary protocol
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+}
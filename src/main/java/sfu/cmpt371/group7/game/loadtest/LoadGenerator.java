@@ -0,0 +1,272 @@
+package sfu.cmpt371.group7.game.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A headless client that puts a running {@code Server} under load with thousands of simulated players.
+ * <p>
+ * Every player is a {@link Bot} with its own connection. The server's matchmaking puts every four of them
+ * in a match, so the players spread over many matches. Once the matches have started, the bots play for
+ * the configured duration, and the generator then prints the messages sent and received per second,
+ * the connection errors, and the round-trip latency percentiles of moves, captures and resends.
+ * <p>
+ * Settings are read by {@link LoadConfig}.
+ */
+public class LoadGenerator {
+    /** How long to wait for every match to start before measuring anyway. */
+    private static final long START_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+    private static final int ROWS = 20;
+    private static final int COLS = 20;
+
+    private final LoadConfig config;
+    private final int[][] grid = new int[ROWS][COLS];
+    private final String flagCoordinates;
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram captureLatency = new LatencyHistogram();
+    private final LatencyHistogram resendLatency = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder coalescedMoves = new LongAdder();
+    private final LongAdder connectionErrors = new LongAdder();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws InterruptedException {
+        new LoadGenerator(LoadConfig.load()).run();
+    }
+
+    /**
+     * Constructs a generator and reads the maze the bots walk in.
+     *
+     * @param config The settings to run with.
+     */
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+        loadMap();
+        this.flagCoordinates = findFlagCoordinates();
+    }
+
+    /**
+     * Connects the bots, lets them play for the configured duration and prints the results.
+     */
+    public void run() throws InterruptedException {
+        int players = config.getPlayers();
+        System.out.println("Connecting " + players + " players to " + config.getHost() + ":" + config.getPort()
+                + " using the " + (config.isBinary() ? "binary" : "text") + " protocol");
+
+        List<Bot> bots = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            Bot bot = new Bot(this, "b" + i, i % 2 == 0 ? "red" : "blue");
+            if (bot.connect()) {
+                bots.add(bot);
+            }
+        }
+
+        // A match only starts with four players, so a last match with fewer never does
+        List<Bot> playing = new ArrayList<>();
+        long deadline = System.nanoTime() + START_TIMEOUT;
+        for (Bot bot : bots) {
+            if (bot.awaitStart(Math.max(0, deadline - System.nanoTime()))) {
+                playing.add(bot);
+            }
+        }
+        System.out.println(playing.size() + " players in started matches, measuring for " + config.getDurationSeconds() + " s");
+
+        resetCounts();
+        long start = System.nanoTime();
+        List<Thread> senders = new ArrayList<>();
+        for (Bot bot : playing) {
+            senders.add(Thread.ofVirtual().start(bot::play));
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.getDurationSeconds()));
+        running = false;
+        long elapsed = System.nanoTime() - start;
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        report(playing.size(), bots.size(), elapsed);
+        for (Bot bot : bots) {
+            bot.close();
+        }
+    }
+
+    /**
+     * Forgets everything counted while connecting, so only the measured period is reported.
+     * Connection errors are kept.
+     */
+    private void resetCounts() {
+        moveLatency.reset();
+        captureLatency.reset();
+        resendLatency.reset();
+        sent.reset();
+        received.reset();
+        coalescedMoves.reset();
+    }
+
+    /**
+     * Prints the results of the run.
+     *
+     * @param playing The number of players whose match started.
+     * @param connected The number of players that connected.
+     * @param elapsedNanos How long was measured.
+     */
+    private void report(int playing, int connected, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.println("Players: " + playing + " playing in " + playing / 4 + " matches, "
+                + connected + " of " + config.getPlayers() + " connected");
+        System.out.printf("Duration: %.1f s%n", seconds);
+        System.out.printf("Sent: %d messages (%.0f/s)%n", sent.sum(), sent.sum() / seconds);
+        System.out.printf("Received: %d messages (%.0f/s)%n", received.sum(), received.sum() / seconds);
+        System.out.println("Connection errors: " + connectionErrors.sum());
+        System.out.println("Moves coalesced by the server tick: " + coalescedMoves.sum());
+        System.out.println("Round trip in microseconds:");
+        printLatency("movePlayer", moveLatency);
+        printLatency("captureDuration", captureLatency);
+        printLatency("resendPlayers", resendLatency);
+    }
+
+    private static void printLatency(String messageType, LatencyHistogram latency) {
+        System.out.printf("  %-16s count=%d p50=%d p99=%d p999=%d%n", messageType, latency.count(),
+                latency.percentile(0.5), latency.percentile(0.99), latency.percentile(0.999));
+    }
+
+    /**
+     * Reads the maze the game is played in, the same one the game window shows.
+     */
+    private void loadMap() {
+        InputStream map = Objects.requireNonNull(getClass().getResourceAsStream("/sfu/cmpt371/group7/game/map.txt"));
+        try (BufferedReader tileMap = new BufferedReader(new InputStreamReader(map))) {
+            for (int row = 0; row < ROWS; ++row) {
+                char[] tileValues = tileMap.readLine().replaceAll(" ", "").toCharArray();
+                for (int col = 0; col < COLS; ++col) {
+                    grid[row][col] = tileValues[col] - '0';
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading tile map: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the flag coordinates message the game window sends, listing the flags in the same order.
+     */
+    private String findFlagCoordinates() {
+        StringBuilder message = new StringBuilder("flagCoordinates");
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                if (grid[row][col] == 2) {
+                    message.append(' ').append(row).append(' ').append(col);
+                }
+            }
+        }
+        return message.toString();
+    }
+
+    /**
+     * Checks whether a player may step on a cell, which is the case for empty cells and flags.
+     *
+     * @param x The row of the cell.
+     * @param y The column of the cell.
+     * @return true if the cell is open.
+     */
+    boolean isOpen(int x, int y) {
+        return x >= 0 && x < ROWS && y >= 0 && y < COLS && (grid[x][y] == 0 || grid[x][y] == 2);
+    }
+
+    /**
+     * Gets the settings the generator runs with.
+     * @return the configuration
+     */
+    LoadConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Gets the flag coordinates message every bot sends once its match has started.
+     * @return the message
+     */
+    String getFlagCoordinates() {
+        return flagCoordinates;
+    }
+
+    /**
+     * Checks whether the bots should keep playing.
+     * @return false once the measured period is over
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Counts a message sent by a bot.
+     */
+    void sent() {
+        sent.increment();
+    }
+
+    /**
+     * Counts a message received by a bot.
+     */
+    void received() {
+        received.increment();
+    }
+
+    /**
+     * Records the round trip of a move. Answers arriving after the measured period are ignored.
+     *
+     * @param nanos The round trip in nanoseconds.
+     */
+    void moveAnswered(long nanos) {
+        if (running) {
+            moveLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Counts a move the server never sent back because a later one replaced it.
+     */
+    void moveCoalesced() {
+        coalescedMoves.increment();
+    }
+
+    /**
+     * Records the round trip of a capture. Answers arriving after the measured period are ignored.
+     *
+     * @param nanos The round trip in nanoseconds.
+     */
+    void captureAnswered(long nanos) {
+        if (running) {
+            captureLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Records the round trip of a resend. Answers arriving after the measured period are ignored.
+     *
+     * @param nanos The round trip in nanoseconds.
+     */
+    void resendAnswered(long nanos) {
+        if (running) {
+            resendLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Counts a connection that failed or was lost.
+     *
+     * @param reason What happened, printed for the user.
+     */
+    void connectionError(String reason) {
+        connectionErrors.increment();
+        System.err.println(reason);
+    }
+}
@@ -84,6 +84,20 @@ public class Flag {
         this.captured = captured;
     }
 
+    /**
+     * Captures the flag, unless it was captured already.
+     * Checking and setting are one step, so of several players capturing the flag, only one succeeds.
+     * The server only calls this on the command loop of the flag's match.
+     * @return true if this call captured the flag, false if it was already captured
+     */
+    public boolean tryCapture() {
+        if (captured) {
+            return false;
+        }
+        captured = true;
+        return true;
+    }
+
     /**
      * Gets the name of the flag.
      * @return the name of the flag
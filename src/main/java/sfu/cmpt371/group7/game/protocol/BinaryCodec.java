@@ -0,0 +1,406 @@
+package sfu.cmpt371.group7.game.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary form of the text protocol, used once a connection has agreed on it
+ * with a {@code protocol binary} handshake.
+ * <p>
+ * Every message is a frame made of a varint body length followed by the body:
+ * <ul>
+ *     <li>one opcode byte for the {@link MessageType} ({@code 0} is followed by an unknown type as a string)</li>
+ *     <li>the fields of the message, each a tag byte and its value:
+ *         {@link #INT} a zig-zag varint, {@link #REF} the varint id of a string sent before,
+ *         {@link #DEFINE} a new string that is given the next id, or {@link #RAW} a string that is not remembered</li>
+ * </ul>
+ * Strings are UTF-8 with a varint length. Player names, teams and flag names are therefore
+ * sent once per connection and as a one or two byte id afterwards, and coordinates take one byte.
+ * Each direction of a connection has its own {@link Encoder} and {@link Decoder}, which keep
+ * the string ids in step.
+ */
+public final class BinaryCodec {
+
+    /** Field holding an integer. */
+    static final int INT = 0;
+
+    /** Field holding the id of a string defined earlier. */
+    static final int REF = 1;
+
+    /** Field defining a new string, which gets the next id. */
+    static final int DEFINE = 2;
+
+    /** Field holding a string that is not given an id. */
+    static final int RAW = 3;
+
+    /** Number of strings each direction of a connection remembers. */
+    static final int MAX_STRINGS = 1024;
+
+    /** Largest frame body accepted, to guard against corrupt length prefixes. */
+    static final int MAX_FRAME_SIZE = 1 << 16;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Turns text messages into frames for one direction of a connection.
+     * Not thread safe; frames must be written in the order they were encoded.
+     */
+    public static final class Encoder {
+        /** Room kept before the body for the longest varint length prefix. */
+        private static final int PREFIX = 5;
+
+        /** Strings given an id, in an open addressing table kept at most half full, probed by a field of a message. */
+        private final String[] strings = new String[MAX_STRINGS * 2];
+        /** The id of each string in {@link #strings}, by slot. */
+        private final int[] ids = new int[MAX_STRINGS * 2];
+        private int stringCount;
+        /** The frame being encoded: its body starts at {@link #PREFIX}, and the length prefix is put right before it. */
+        private byte[] frame = new byte[64];
+        private int position;
+        private int frameStart;
+
+        /**
+         * Encodes one message.
+         *
+         * @param message The message in the text protocol, without a line terminator.
+         * @return the frame, including its length prefix.
+         */
+        public byte[] encode(String message) {
+            int length = encodeFrame(message);
+            return Arrays.copyOfRange(frame, frameStart, frameStart + length);
+        }
+
+        /**
+         * Encodes one message straight into a stream, without creating an array for the frame.
+         *
+         * @param message The message in the text protocol, without a line terminator.
+         * @param out The stream to write the frame to, including its length prefix.
+         * @throws IOException If writing to the stream fails.
+         */
+        public void encode(String message, OutputStream out) throws IOException {
+            int length = encodeFrame(message);
+            out.write(frame, frameStart, length);
+        }
+
+        /**
+         * Encodes a message into {@link #frame}, from {@link #frameStart}.
+         *
+         * @return the length of the frame.
+         */
+        private int encodeFrame(String message) {
+            position = PREFIX;
+            int length = message.length();
+            int end = indexOfSpace(message, 0);
+
+            MessageType type = MessageType.lookup(message, 0, end);
+            if (type != null) {
+                writeByte(type.getOpcode());
+            } else {
+                writeByte(0);
+                writeString(message.substring(0, end));
+            }
+
+            int start = end + 1;
+            while (start <= length) {
+                end = indexOfSpace(message, start);
+                writeField(message, start, end);
+                start = end + 1;
+            }
+
+            int bodyLength = position - PREFIX;
+            frameStart = PREFIX - varintSize(bodyLength);
+            int prefixEnd = position;
+            position = frameStart;
+            writeVarint(bodyLength);
+            position = prefixEnd;
+            return position - frameStart;
+        }
+
+        private void writeField(String message, int start, int end) {
+            if (isInt(message, start, end)) {
+                writeByte(INT);
+                int value = Integer.parseInt(message, start, end, 10);
+                writeVarint((value << 1) ^ (value >> 31));
+                return;
+            }
+
+            int slot = slot(message, start, end);
+            if (strings[slot] != null) {
+                writeByte(REF);
+                writeVarint(ids[slot]);
+            } else if (stringCount < MAX_STRINGS) {
+                String value = message.substring(start, end);
+                strings[slot] = value;
+                ids[slot] = stringCount++;
+                writeByte(DEFINE);
+                writeString(value);
+            } else {
+                writeByte(RAW);
+                writeString(message.substring(start, end));
+            }
+        }
+
+        /**
+         * Finds the slot of the string with the characters of a field, or the empty slot it would go in.
+         * The field is hashed in place, like {@link MessageTokenizer#tokenHash()}, so no string is created.
+         */
+        private int slot(String message, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + message.charAt(i);
+            }
+            // Scrambled, so names that only differ in a number do not fill runs of neighbouring slots
+            hash *= 0x9E3779B9;
+            int mask = strings.length - 1;
+            int length = end - start;
+            for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+                String string = strings[slot];
+                if (string == null || (string.length() == length && message.regionMatches(start, string, 0, length))) {
+                    return slot;
+                }
+            }
+        }
+
+        private void writeByte(int b) {
+            if (position == frame.length) {
+                frame = Arrays.copyOf(frame, frame.length * 2);
+            }
+            frame[position++] = (byte) b;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            if (frame.length - position < bytes.length) {
+                frame = Arrays.copyOf(frame, Math.max(frame.length * 2, position + bytes.length));
+            }
+            System.arraycopy(bytes, 0, frame, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private static int varintSize(int value) {
+            int size = 1;
+            while ((value & ~0x7F) != 0) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+
+        /**
+         * Checks whether a field is an integer that survives a round trip unchanged,
+         * so "07" or numbers too large for an int stay strings.
+         */
+        private static boolean isInt(String s, int start, int end) {
+            int i = start;
+            if (i < end && s.charAt(i) == '-') {
+                i++;
+            }
+            int digits = end - i;
+            if (digits < 1 || digits > 9 || (digits > 1 && s.charAt(i) == '0')) {
+                return false;
+            }
+            for (; i < end; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return !(end - start == 2 && s.charAt(start) == '-' && s.charAt(start + 1) == '0');
+        }
+
+        private static int indexOfSpace(String s, int from) {
+            int index = s.indexOf(' ', from);
+            return index < 0 ? s.length() : index;
+        }
+    }
+
+    /**
+     * Turns frames back into text messages for one direction of a connection.
+     * Not thread safe; frames must be decoded in the order they were received.
+     */
+    public static final class Decoder {
+        private final List<String> strings = new ArrayList<>();
+        private final StringBuilder message = new StringBuilder(64);
+        private byte[] frame = new byte[64];
+        private int frameLength = -1;
+        private int framePosition;
+        private int position;
+        private int lengthValue;
+        private int lengthShift;
+
+        /**
+         * Reads and decodes the next frame from a blocking stream.
+         *
+         * @param in The stream to read from.
+         * @return the message, or {@code null} if the stream ended between frames.
+         * @throws IOException If the stream fails, ends inside a frame or holds a malformed frame.
+         */
+        public String read(InputStream in) throws IOException {
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    if (shift == 0) {
+                        return null;
+                    }
+                    throw new EOFException("Stream ended inside a frame length");
+                }
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+                if (shift >= 21) {
+                    throw new IOException("Frame length is too long");
+                }
+            }
+            ensureFrameCapacity(length);
+            if (in.readNBytes(frame, 0, length) < length) {
+                throw new EOFException("Stream ended inside a frame");
+            }
+            return decodeFrame(length);
+        }
+
+        /**
+         * Consumes bytes from a buffer until a whole frame has arrived.
+         * Bytes of an incomplete frame are kept until the next call.
+         *
+         * @param in The bytes received so far; its position is advanced past the consumed bytes.
+         * @return the message, or {@code null} if the frame is not complete yet.
+         * @throws IOException If the frame is malformed.
+         */
+        public String decode(ByteBuffer in) throws IOException {
+            while (frameLength < 0) {
+                if (!in.hasRemaining()) {
+                    return null;
+                }
+                int b = in.get() & 0xFF;
+                lengthValue |= (b & 0x7F) << lengthShift;
+                lengthShift += 7;
+                if ((b & 0x80) == 0) {
+                    ensureFrameCapacity(lengthValue);
+                    frameLength = lengthValue;
+                    framePosition = 0;
+                    lengthValue = 0;
+                    lengthShift = 0;
+                } else if (lengthShift > 21) {
+                    throw new IOException("Frame length is too long");
+                }
+            }
+
+            int count = Math.min(in.remaining(), frameLength - framePosition);
+            in.get(frame, framePosition, count);
+            framePosition += count;
+            if (framePosition < frameLength) {
+                return null;
+            }
+            int length = frameLength;
+            frameLength = -1;
+            return decodeFrame(length);
+        }
+
+        /**
+         * Checks whether part of a frame was consumed by {@link #decode(ByteBuffer)} and the rest has not arrived yet.
+         *
+         * @return true if the input stopped inside a frame.
+         */
+        boolean isInsideFrame() {
+            return frameLength >= 0 || lengthShift > 0;
+        }
+
+        private void ensureFrameCapacity(int length) throws IOException {
+            if (length > MAX_FRAME_SIZE) {
+                throw new IOException("Frame of " + length + " bytes is too large");
+            }
+            if (frame.length < length) {
+                frame = new byte[Math.max(length, frame.length * 2)];
+            }
+        }
+
+        private String decodeFrame(int length) throws IOException {
+            message.setLength(0);
+            if (length == 0) {
+                throw new IOException("Empty frame");
+            }
+            position = 0;
+            int opcode = frame[position++] & 0xFF;
+            MessageType type = MessageType.fromOpcode(opcode);
+            if (opcode == 0) {
+                message.append(readString(length));
+            } else if (type != null) {
+                message.append(type.getWireName());
+            } else {
+                throw new IOException("Unknown opcode " + opcode);
+            }
+
+            while (position < length) {
+                message.append(' ');
+                int tag = frame[position++] & 0xFF;
+                switch (tag) {
+                    case INT -> {
+                        int value = readVarint(length);
+                        message.append((value >>> 1) ^ -(value & 1));
+                    }
+                    case REF -> {
+                        int id = readVarint(length);
+                        if (id >= strings.size()) {
+                            throw new IOException("Unknown string id " + id);
+                        }
+                        message.append(strings.get(id));
+                    }
+                    case DEFINE -> {
+                        String value = readString(length);
+                        if (strings.size() < MAX_STRINGS) {
+                            strings.add(value);
+                        }
+                        message.append(value);
+                    }
+                    case RAW -> message.append(readString(length));
+                    default -> throw new IOException("Unknown field tag " + tag);
+                }
+            }
+            return message.toString();
+        }
+
+        private int readVarint(int length) throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (position >= length) {
+                    throw new IOException("Truncated varint");
+                }
+                int b = frame[position++] & 0xFF;
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Varint is too long");
+        }
+
+        private String readString(int length) throws IOException {
+            int size = readVarint(length);
+            if (size < 0 || position + size > length) {
+                throw new IOException("Truncated string");
+            }
+            String value = new String(frame, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package sfu.cmpt371.group7.game.protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reads and writes protocol messages over a blocking {@link Socket}.
+ * <p>
+ * Messages are newline terminated text lines until {@link #useBinaryProtocol()} is called,
+ * and {@link BinaryCodec} frames afterwards. Either way callers only see the text form.
+ * Any thread may send; only one thread may read.
+ * <p>
+ * Input is read in bulk into a buffer of the stream's own, which text lines are cut from.
+ * Bytes read past the line that switched the protocol stay in the buffer and are decoded as frames.
+ * <p>
+ * Output is buffered. {@link #send(String)} writes a message out right away, while
+ * {@link #write(String)} leaves it in the buffer until {@link #flush()}, so several messages
+ * can go out in one system call and, with TCP_NODELAY, one packet.
+ */
+public class MessageStream {
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+    private static final int INPUT_BUFFER_SIZE = 8192;
+
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    /** Bytes received and not read yet, from its position to its limit; only used by the reading thread. */
+    private ByteBuffer received = ByteBuffer.allocate(INPUT_BUFFER_SIZE).limit(0);
+    /** Keeps frames in the order they were encoded; a lock rather than synchronized so virtual threads are not pinned. */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private BinaryCodec.Encoder encoder;
+    private volatile BinaryCodec.Decoder decoder;
+
+    /**
+     * Constructs a message stream over the given socket.
+     *
+     * @param socket The connected socket.
+     * @throws IOException If the streams of the socket cannot be opened.
+     */
+    public MessageStream(Socket socket) throws IOException {
+        this.socket = socket;
+        this.input = socket.getInputStream();
+        this.output = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a connection to a server.
+     *
+     * @param host The address of the server.
+     * @param port The port of the server.
+     * @param binary Whether to ask the server for the binary protocol.
+     * @return the connected message stream.
+     * @throws IOException If the connection or the handshake fails.
+     */
+    public static MessageStream connect(String host, int port, boolean binary) throws IOException {
+        Socket socket = new Socket(host, port);
+        // Every send is flushed on purpose, so waiting to coalesce small packets would only add delay
+        socket.setTcpNoDelay(true);
+        MessageStream stream = new MessageStream(socket);
+        if (binary) {
+            stream.requestBinaryProtocol();
+        }
+        return stream;
+    }
+
+    /**
+     * Asks the other side for the binary protocol and switches to it if the other side agrees.
+     * Must be the first message on the connection, and must be called before anyone starts reading.
+     *
+     * @return true if the connection now uses the binary protocol.
+     * @throws IOException If the connection fails during the handshake.
+     */
+    public boolean requestBinaryProtocol() throws IOException {
+        send("protocol binary");
+        String answer = readMessage();
+        if ("protocol binary".equals(answer)) {
+            useBinaryProtocol();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Switches both directions to the binary protocol.
+     * Messages sent before this call are still written as text.
+     */
+    public void useBinaryProtocol() {
+        writeLock.lock();
+        try {
+            encoder = new BinaryCodec.Encoder();
+            decoder = new BinaryCodec.Decoder();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends one message, together with any written before it that were not flushed yet.
+     *
+     * @param message The message in the text protocol, without a line terminator.
+     */
+    public void send(String message) {
+        writeLock.lock();
+        try {
+            writeMessage(message);
+            output.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing message: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds one message to the output buffer without flushing it. The message is only
+     * sure to be sent by the next {@link #flush()} or {@link #send(String)}.
+     *
+     * @param message The message in the text protocol, without a line terminator.
+     */
+    public void write(String message) {
+        writeLock.lock();
+        try {
+            writeMessage(message);
+        } catch (IOException e) {
+            System.err.println("Error writing message: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends every message written since the last flush.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            output.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing message: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeMessage(String message) throws IOException {
+        // Written as bytes rather than through a PrintWriter, whose monitors would pin a
+        // virtual thread blocked on a client that stopped reading
+        if (encoder == null) {
+            output.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+        } else {
+            encoder.encode(message, output);
+        }
+    }
+
+    /**
+     * Blocks until the next message arrives.
+     *
+     * @return the message in its text form, or {@code null} once the other side has closed the connection.
+     * @throws IOException If reading from the socket fails.
+     */
+    public String readMessage() throws IOException {
+        BinaryCodec.Decoder frames = decoder;
+        if (frames != null) {
+            while (true) {
+                String message = frames.decode(received);
+                if (message != null) {
+                    return message;
+                }
+                if (!fill()) {
+                    if (frames.isInsideFrame()) {
+                        throw new EOFException("Stream ended inside a frame");
+                    }
+                    return null;
+                }
+            }
+        }
+
+        // Only the line is consumed, so bytes after it are still there if the connection switches to binary frames
+        byte[] bytes = received.array();
+        int scanned = 0;
+        while (true) {
+            int start = received.position();
+            for (int i = start + scanned; i < received.limit(); i++) {
+                if (bytes[i] == '\n') {
+                    received.position(i + 1);
+                    int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+                    return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                }
+            }
+            scanned = received.remaining();
+            if (!fill()) {
+                if (!received.hasRemaining()) {
+                    return null;
+                }
+                // A last line without a terminator
+                String message = new String(bytes, received.position(), received.remaining(), StandardCharsets.UTF_8);
+                received.position(received.limit());
+                return message;
+            }
+            bytes = received.array();
+        }
+    }
+
+    /**
+     * Reads more bytes into the input buffer, after the ones not read yet, which are moved to its start.
+     * The buffer grows when it is full of a single unfinished line.
+     *
+     * @return false if the stream has ended.
+     * @throws IOException If reading from the socket fails.
+     */
+    private boolean fill() throws IOException {
+        received.compact();
+        if (!received.hasRemaining()) {
+            received = ByteBuffer.allocate(received.capacity() * 2).put(received.flip());
+        }
+        int count = input.read(received.array(), received.position(), received.remaining());
+        if (count > 0) {
+            received.position(received.position() + count);
+        }
+        received.flip();
+        return count >= 0;
+    }
+
+    /**
+     * Closes the socket. Calling this more than once has no effect.
+     */
+    public void close() {
+        try {
+            if (!socket.isClosed()) socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package sfu.cmpt371.group7.game.protocol;
+
+/**
+ * Reads the space separated fields of a text message in place.
+ * <p>
+ * Unlike {@code String.split(" ")}, the tokenizer creates no array and no strings unless
+ * a field is asked for with {@link #nextString()}: message types are looked up and integers
+ * are parsed straight from the characters of the message. One instance is meant to be reused
+ * for every message handled by a thread, so it is not thread safe.
+ */
+public final class MessageTokenizer {
+    private CharSequence message;
+    private int length;
+    private int position;
+    private int tokenStart;
+    private int tokenEnd;
+
+    /**
+     * Starts reading a new message.
+     *
+     * @param message The message to read.
+     * @return this tokenizer.
+     */
+    public MessageTokenizer reset(CharSequence message) {
+        this.message = message;
+        this.length = message.length();
+        this.position = 0;
+        this.tokenStart = 0;
+        this.tokenEnd = 0;
+        return this;
+    }
+
+    /**
+     * Moves to the next field, skipping any run of spaces.
+     *
+     * @return true if there was another field.
+     */
+    public boolean next() {
+        int i = position;
+        while (i < length && message.charAt(i) == ' ') {
+            i++;
+        }
+        if (i >= length) {
+            position = length;
+            tokenStart = tokenEnd = length;
+            return false;
+        }
+        int end = i;
+        while (end < length && message.charAt(end) != ' ') {
+            end++;
+        }
+        tokenStart = i;
+        tokenEnd = end;
+        position = end;
+        return true;
+    }
+
+    /**
+     * Counts the fields that have not been read yet.
+     *
+     * @return the number of remaining fields.
+     */
+    public int remaining() {
+        int count = 0;
+        boolean inToken = false;
+        for (int i = position; i < length; i++) {
+            boolean space = message.charAt(i) == ' ';
+            if (!space && !inToken) {
+                count++;
+            }
+            inToken = !space;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the next field as a message type.
+     *
+     * @return the message type, or {@code null} if there is no field or it is not a known type.
+     */
+    public MessageType nextType() {
+        return next() ? MessageType.lookup(message, tokenStart, tokenEnd) : null;
+    }
+
+    /**
+     * Reads the next field as a decimal integer.
+     *
+     * @return the value of the field.
+     * @throws NumberFormatException If there is no field or it is not an integer.
+     */
+    public int nextInt() {
+        if (!next()) {
+            throw new NumberFormatException("Missing integer field");
+        }
+        return Integer.parseInt(message, tokenStart, tokenEnd, 10);
+    }
+
+    /**
+     * Reads the next field as a decimal number.
+     *
+     * @return the value of the field.
+     * @throws NumberFormatException If there is no field or it is not a number.
+     */
+    public double nextDouble() {
+        return Double.parseDouble(nextString());
+    }
+
+    /**
+     * Reads the next field as a new string.
+     *
+     * @return the field.
+     * @throws IllegalStateException If there is no field.
+     */
+    public String nextString() {
+        if (!next()) {
+            throw new IllegalStateException("Missing field");
+        }
+        return tokenString();
+    }
+
+    /**
+     * Creates a string from the current field.
+     *
+     * @return the current field.
+     */
+    public String tokenString() {
+        return message.subSequence(tokenStart, tokenEnd).toString();
+    }
+
+    /**
+     * Computes the hash code a string of the current field would have, without creating the string.
+     *
+     * @return the same value as {@code tokenString().hashCode()}.
+     */
+    public int tokenHash() {
+        int hash = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            hash = 31 * hash + message.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Compares the current field with a string without creating a new string.
+     *
+     * @param s The string to compare with.
+     * @return true if the current field has the same characters.
+     */
+    public boolean tokenEquals(String s) {
+        int tokenLength = tokenEnd - tokenStart;
+        if (s.length() != tokenLength) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (s.charAt(i) != message.charAt(tokenStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
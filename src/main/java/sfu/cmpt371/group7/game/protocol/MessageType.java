@@ -0,0 +1,101 @@
+package sfu.cmpt371.group7.game.protocol;
+
+/**
+ * The message types of the protocol, each with the name it has on the wire.
+ * The binary protocol uses {@code ordinal() + 1} as the opcode, so new types go at the end.
+ */
+public enum MessageType {
+    TEAM_SELECTION("teamSelection"),
+    MOVE_PLAYER("movePlayer"),
+    MOVE_PLAYERS("movePlayers"),
+    TELL_ME_THE_CURRENT_PLAYERS("tellMeTheCurrentPlayers"),
+    EXIT_GAME("exitGame"),
+    FLAG_COORDINATES("flagCoordinates"),
+    RESEND_PLAYERS("resendPlayers"),
+    GAME_OVER("gameOver"),
+    CAPTURE_DURATION("captureDuration"),
+    JOIN_ROOM("joinRoom"),
+    JOINED_ROOM("joinedRoom"),
+    SENDING_PLAYER("sendingPlayer"),
+    UPDATE_COUNT("updateCount"),
+    SHOW_PLAYER_JOINED("showPlayerJoined"),
+    START_GAME("startGame"),
+    NEW_PLAYER("newPlayer"),
+    SIZE_OF_PLAYERS_IS("sizeOfPlayersIs"),
+    FLAG_CAPTURED("flagCaptured"),
+    LOCK_FLAG("lockFlag"),
+    PLAYER_LEFT("playerLeft"),
+    RESPAWN_PLAYER("respawnPlayer"),
+    PROTOCOL("protocol"),
+    JOIN_REFUSED("joinRefused"),
+    MOVE_ACK("moveAck"),
+    CAPTURE_BEGIN("captureBegin"),
+    HIDE_PLAYER("hidePlayer"),
+    SNAPSHOT("snapshot"),
+    SNAPSHOT_ACK("snapshotAck"),
+    UDP_REQUEST("udpRequest"),
+    UDP_OFFER("udpOffer"),
+    UDP_BIND("udpBind");
+
+    private static final MessageType[] VALUES = values();
+
+    private final String wireName;
+
+    MessageType(String wireName) {
+        this.wireName = wireName;
+    }
+
+    /**
+     * Gets the name of the message type as it is written in the text protocol.
+     * @return the wire name
+     */
+    public String getWireName() {
+        return wireName;
+    }
+
+    /**
+     * Gets the opcode of the message type in the binary protocol.
+     * @return the opcode, never 0
+     */
+    public int getOpcode() {
+        return ordinal() + 1;
+    }
+
+    /**
+     * Finds a message type by its opcode.
+     *
+     * @param opcode The opcode.
+     * @return the message type, or {@code null} if no type has that opcode.
+     */
+    public static MessageType fromOpcode(int opcode) {
+        return opcode >= 1 && opcode <= VALUES.length ? VALUES[opcode - 1] : null;
+    }
+
+    /**
+     * Finds a message type by the characters of its wire name, without creating a string.
+     *
+     * @param s The text holding the name.
+     * @param start The index of the first character of the name.
+     * @param end The index after the last character of the name.
+     * @return the message type, or {@code null} if there is no type with that name.
+     */
+    public static MessageType lookup(CharSequence s, int start, int end) {
+        int length = end - start;
+        for (MessageType type : VALUES) {
+            String name = type.wireName;
+            if (name.length() == length && regionMatches(name, s, start)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static boolean regionMatches(String name, CharSequence s, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != s.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package sfu.cmpt371.group7.game.server;
+
+/**
+ * The outbound side of a single client connection, independent of how the
+ * connection is served by the {@link Server}.
+ * <p>
+ * Sent messages may wait in a buffer until {@link #flush()}, so that several of them
+ * reach the socket in one write.
+ */
+interface ClientConnection {
+
+    /**
+     * Sends one line of the text protocol to the client.
+     *
+     * @param message The message to send, without a line terminator.
+     */
+    void send(String message);
+
+    /**
+     * Writes out every message sent since the last flush.
+     * Does not wait for the messages to be written.
+     */
+    void flush();
+
+    /**
+     * Switches both directions of the connection to the binary protocol.
+     * Messages sent before this call are still written as text.
+     */
+    void useBinaryProtocol();
+
+    /**
+     * Closes the connection. Calling this more than once has no effect.
+     */
+    void close();
+}
@@ -0,0 +1,339 @@
+package sfu.cmpt371.group7.game.server;
+
+import sfu.cmpt371.group7.game.protocol.MessageTokenizer;
+import sfu.cmpt371.group7.game.protocol.MessageType;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+
+/**
+ * Handles communication with a single client in a separate thread;
+ * implemented as a Runnable to allow for multi-threading.
+ * Each client has corresponding {@code ClientHandler} instance.
+ * When the client is served by the NIO transport, {@link #run()} is not used and
+ * the transport passes each received line to {@link #handleMessage(String)} instead.
+ * <p>
+ * A client belongs to one {@link Match}, chosen with a {@code joinRoom <id>} message
+ * or assigned by the server on the first other message. The type of a message is read on
+ * the thread that received it, and the message is then handed to the match's command loop,
+ * which reads the rest of its fields.
+ */
+class ClientHandler implements Runnable {
+    private final Server server;
+    /** Whether every received message is printed. */
+    private final boolean logMessages;
+    private ClientConnection connection;
+    /** The connection read by {@link #run()}; {@code null} when a transport reads the input. */
+    private SocketConnection socketConnection;
+    private String playerName;
+    private volatile Match match;
+    /** The snapshots sent to this client, or {@code null} if it is sent moves; only used by the match's command loop. */
+    private SnapshotHistory snapshots;
+    /** Where this client's snapshots are sent over UDP, or {@code null} to send them over TCP. */
+    private volatile SocketAddress datagramAddress;
+    /** Only used by the thread reading this client's messages. */
+    private final MessageTokenizer tokens = new MessageTokenizer();
+
+    /**
+     * Constructs {@code ClientHandler} for particular client socket.
+     * @param server The server the client connected to.
+     * @param socket The socket that is connected to client.
+     */
+    ClientHandler(Server server, Socket socket) {
+        this.server = server;
+        this.logMessages = server.getConfig().isLogMessages();
+        try {
+            server.configureSocket(socket);
+            socketConnection = new SocketConnection(socket, server.newOutboundQueue(), server.getOutboundMetrics(),
+                    server.getConfig().getTransportMode() == TransportMode.VIRTUAL);
+            connection = socketConnection;
+        } catch (IOException e) {
+            System.err.println("Error setting up client handler: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Constructs {@code ClientHandler} for a connection whose input is read by a transport.
+     * @param server The server the client connected to.
+     * @param connection The connection to send messages to the client.
+     */
+    ClientHandler(Server server, ClientConnection connection) {
+        this.server = server;
+        this.logMessages = server.getConfig().isLogMessages();
+        this.connection = connection;
+    }
+
+    /**
+     * Gets the name of the player this client selected, if any.
+     * @return the player name, or {@code null} before team selection
+     */
+    String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * Sets the name of the player this client plays as.
+     * @param playerName the player name
+     */
+    void setPlayerName(String playerName) {
+        this.playerName = playerName;
+    }
+
+    /**
+     * Gets the snapshots sent to this client.
+     * @return the snapshot history, or {@code null} if the client did not ask for snapshots
+     */
+    SnapshotHistory getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Switches this client from moves to snapshots.
+     * @param snapshots the history of the snapshots sent to the client
+     */
+    void setSnapshots(SnapshotHistory snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Gets the address this client receives its snapshots on over UDP.
+     * @return the address, or {@code null} if the client did not bind one
+     */
+    SocketAddress getDatagramAddress() {
+        return datagramAddress;
+    }
+
+    /**
+     * Sends this client's snapshots over UDP from now on.
+     * @param datagramAddress the address the client bound from
+     */
+    void setDatagramAddress(SocketAddress datagramAddress) {
+        this.datagramAddress = datagramAddress;
+    }
+
+    /**
+     * Sends a snapshot to this client: over UDP if it bound an address and the snapshot fits in a datagram,
+     * and otherwise like any other message.
+     *
+     * @param snapshot The snapshot message.
+     */
+    void sendSnapshot(String snapshot) {
+        SocketAddress address = datagramAddress;
+        UdpChannel udp = server.getUdpChannel();
+        if (address != null && udp != null && udp.send(address, snapshot)) {
+            return;
+        }
+        sendMessage(snapshot);
+    }
+
+    /**
+     * Sends a message to this specific client.
+     *
+     * @param message The message that needs to be sent.
+     */
+    public void sendMessage(String message) {
+        if (connection != null) {
+            connection.send(message);
+        }
+    }
+
+    /**
+     * Writes out the messages sent to this client since the last flush.
+     * The match flushes its clients at the end of every command loop run.
+     */
+    void flush() {
+        if (connection != null) {
+            connection.flush();
+        }
+    }
+
+    /**
+     * Listens for messages from the client and handles each of them until the client disconnects.
+     */
+    @Override
+    public void run() {
+        if (socketConnection == null) {
+            handleDisconnect();
+            return;
+        }
+        try {
+            String message;
+            while ((message = socketConnection.readMessage()) != null) {
+                handleMessage(message);
+            }
+        } catch (IOException e) {
+            System.err.println("Error in client handler: " + e.getMessage());
+        } finally {
+            handleDisconnect();
+        }
+    }
+
+    /**
+     * Handles a single message from the client according to
+     * the type of message. e.g., team selection.
+     *
+     * @param message The line received from the client.
+     */
+    void handleMessage(String message) {
+        if (logMessages) {
+            System.out.println("Received: " + message);
+        }
+        MessageType messageType = tokens.reset(message).nextType();
+
+        if (messageType == MessageType.PROTOCOL) {
+            handleProtocol();
+            return;
+        }
+        if (messageType == MessageType.JOIN_ROOM) {
+            handleJoinRoom();
+            return;
+        }
+        if (messageType == MessageType.UDP_REQUEST) {
+            handleUdpRequest();
+            return;
+        }
+        if (match == null) {
+            match = server.assignMatch(this);
+        }
+        match.submit(this, messageType, message);
+    }
+
+    /**
+     * Handles a snapshot acknowledgement that came over UDP, on the thread reading the UDP channel.
+     * It goes straight to the match's command loop; a client not in a match yet has nothing to acknowledge.
+     *
+     * @param message The datagram, a snapshotAck message.
+     */
+    void handleDatagram(String message) {
+        Match target = match;
+        if (target != null) {
+            target.submit(this, MessageType.SNAPSHOT_ACK, message);
+        }
+    }
+
+    /**
+     * Runs the handler for a message on the match's command loop.
+     *
+     * @param match The match the client belongs to.
+     * @param messageType The type of the message, or {@code null} if it is not known.
+     * @param message The whole message.
+     */
+    void dispatch(Match match, MessageType messageType, String message) {
+        if (messageType == null) {
+            System.out.println("i dont know what you mean. when you wanna say less but you wanna say no" + message);
+            return;
+        }
+        MessageTokenizer fields = match.tokenize(message);
+        switch (messageType) {
+            case TEAM_SELECTION:
+                match.handleTeamSelection(this, fields);
+                break;
+            case MOVE_PLAYER:
+                match.handleMovePlayer(this, fields);
+                break;
+            case TELL_ME_THE_CURRENT_PLAYERS:
+                match.handleCurrentPlayers(this);
+                break;
+            case EXIT_GAME:
+                match.handleExitGame(fields);
+                break;
+            case FLAG_COORDINATES:
+                match.handleFlagCoordinates(fields);
+                break;
+            case RESEND_PLAYERS:
+                match.handleResendPlayers(this, fields);
+                break;
+            case GAME_OVER:
+                match.handleGameOver(fields);
+                break;
+            case CAPTURE_DURATION:
+                match.handleCaptureDuration(fields);
+                break;
+            case CAPTURE_BEGIN:
+                match.handleCaptureBegin(fields);
+                break;
+            case SNAPSHOT_ACK:
+                match.handleSnapshotAck(this, fields);
+                break;
+            default:
+                System.out.println("i dont know what you mean. when you wanna say less but you wanna say no" + message);
+                break;
+        }
+    }
+
+    /**
+     * Handles a protocol message, which a client sends before anything else to ask for the
+     * binary protocol. The answer is sent as text, and both directions switch right after it.
+     *
+     * The tokenizer is positioned after the message type.
+     */
+    private void handleProtocol() {
+        // protocol <text | binary>
+        if (tokens.next() && tokens.tokenEquals("binary")) {
+            sendMessage("protocol binary");
+            connection.useBinaryProtocol();
+        } else {
+            sendMessage("protocol text");
+        }
+        flush();
+    }
+
+    /**
+     * Handles a join room message, moving this client into the named match.
+     * A client that already belongs to a match stays where it is. A client that may not join
+     * is told so, and is placed by matchmaking on its next message like a client that did not ask.
+     *
+     * The tokenizer is positioned after the message type.
+     */
+    private void handleJoinRoom() {
+        // joinRoom <match id>
+        if (match == null && tokens.next()) {
+            String id = tokens.tokenString();
+            match = server.joinMatch(id, this);
+            if (match == null) {
+                sendMessage("joinRefused " + id);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Handles a UDP request: offers the server's UDP channel for this client's snapshots,
+     * with the token to bind a UDP socket with, or port 0 when the server has no UDP channel.
+     */
+    private void handleUdpRequest() {
+        // udpOffer <port> <token>
+        UdpChannel udp = server.getUdpChannel();
+        if (udp == null) {
+            sendMessage("udpOffer 0 0");
+        } else {
+            sendMessage("udpOffer " + udp.getPort() + " " + udp.offer(this));
+        }
+        flush();
+    }
+
+    /**
+     * Handles client disconnection
+     * Cleans the client from its match and closes the connection.
+     */
+    void handleDisconnect() {
+        Match target = match;
+        if (target != null) {
+            target.submit(() -> target.handleDisconnect(this));
+        }
+        close();
+    }
+
+    /**
+     * Closes the connection to the client, and forgets its UDP address.
+     * The match also calls this when it drops the client, such as for being idle.
+     */
+    void close() {
+        UdpChannel udp = server.getUdpChannel();
+        if (udp != null) {
+            udp.forget(this);
+        }
+        if (connection != null) connection.close();
+    }
+}
@@ -0,0 +1,138 @@
+package sfu.cmpt371.group7.game.server;
+
+import sfu.cmpt371.group7.game.protocol.MessageType;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The commands waiting for a match's command loop, in a fixed ring of slots that are reused,
+ * so that queueing a client's message allocates nothing.
+ * <p>
+ * A slot holds either a command or a message from a client with its type, which is handed to
+ * {@link Match#runMessage} when its turn comes. Any thread may add to the ring; only the command loop
+ * takes from it. Every slot has a sequence number: an adding thread claims the next position with a
+ * compare-and-set, fills the slot and then publishes it by advancing its sequence, and the command loop
+ * takes a slot once it is published and hands it back by advancing the sequence a lap further.
+ * A full ring refuses the command, and the match queues it elsewhere.
+ */
+class CommandRing {
+    private final int mask;
+    /** Per slot: its position when free, its position + 1 once published. */
+    private final AtomicLongArray sequences;
+    private final Runnable[] commands;
+    private final ClientHandler[] senders;
+    private final MessageType[] types;
+    private final String[] messages;
+    /** The next position to claim. */
+    private final AtomicLong tail = new AtomicLong();
+    /** The next position to take; only used by the command loop. */
+    private long head;
+
+    /**
+     * Constructs an empty ring.
+     *
+     * @param capacity The number of slots, a power of two.
+     */
+    CommandRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        commands = new Runnable[capacity];
+        senders = new ClientHandler[capacity];
+        types = new MessageType[capacity];
+        messages = new String[capacity];
+    }
+
+    /**
+     * Adds a command.
+     *
+     * @param command The command to run.
+     * @return false if the ring is full.
+     */
+    boolean offer(Runnable command) {
+        return offer(command, null, null, null);
+    }
+
+    /**
+     * Adds a message from a client.
+     *
+     * @param sender The client the message came from.
+     * @param type The type of the message, or {@code null} if it is not known.
+     * @param message The whole message.
+     * @return false if the ring is full.
+     */
+    boolean offer(ClientHandler sender, MessageType type, String message) {
+        return offer(null, sender, type, message);
+    }
+
+    private boolean offer(Runnable command, ClientHandler sender, MessageType type, String message) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // The slot still holds what was added a lap ago
+                return false;
+            }
+            // Otherwise another thread claimed the position first
+        }
+        commands[index] = command;
+        senders[index] = sender;
+        types[index] = type;
+        messages[index] = message;
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest published slot and runs it on a match: its command, or its message.
+     * Only called by the match's command loop.
+     *
+     * @param match The match whose command loop this is.
+     * @return false if there is nothing to run, or the oldest slot is claimed but not published yet.
+     */
+    boolean runOldest(Match match) {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return false;
+        }
+        Runnable command = commands[index];
+        ClientHandler sender = senders[index];
+        MessageType type = types[index];
+        String message = messages[index];
+        commands[index] = null;
+        senders[index] = null;
+        types[index] = null;
+        messages[index] = null;
+        sequences.set(index, head + mask + 1);
+        head++;
+        if (command != null) {
+            match.runCommand(command);
+        } else {
+            match.runMessage(sender, type, message);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether anything was added that the command loop has not taken yet, published or not.
+     * Only called by the match's command loop.
+     *
+     * @return true if the ring is empty.
+     */
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+}
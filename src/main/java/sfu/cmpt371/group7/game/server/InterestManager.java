@@ -0,0 +1,364 @@
+package sfu.cmpt371.group7.game.server;
+
+import sfu.cmpt371.group7.game.model.Player;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides which clients of a {@link Match} are sent the moves of which players, so that a client
+ * only hears about the players within a radius of its own player.
+ * <p>
+ * A client watches a player once it has said which player it plays. It is then sent the moves of
+ * the players within the radius, counted as the larger of the distances along x and y, and its
+ * own player's moves wherever they go. A player coming within the radius is sent to the client as a
+ * {@code sendingPlayer} message, with its team and position, and a player going out of it as a
+ * {@code hidePlayer} message. Clients that watch nobody are sent every move, as without a radius.
+ * Clients sent snapshots are not sent any of these: their snapshots only hold the players they see.
+ * <p>
+ * The players are kept in a spatial hash: the maze is cut into square buckets as wide as the
+ * radius, each holding a linked list of the ids in it. Everything within the radius of a cell is in
+ * that cell's bucket or one of its eight neighbours, so a move only looks at the players in the
+ * buckets around where the mover was and where it went, however big the map and the match are.
+ * <p>
+ * Only used by the match's command loop, so nothing is synchronized.
+ */
+class InterestManager {
+    private static final int NONE = PlayerIndex.NONE;
+
+    private final int radius;
+    private final int rows;
+    private final int cols;
+    /** Buckets along x and along y. */
+    private final int bucketRows;
+    private final int bucketCols;
+    /** The first id in each bucket. */
+    private final int[] bucketHead;
+    /** The next and previous ids in the same bucket, by id. */
+    private int[] nextInBucket = new int[16];
+    private int[] previousInBucket = new int[16];
+    /** The position each player was last seen at, by id. */
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    /** The players in the hash, by id. */
+    private final BitSet present = new BitSet();
+    /** By player id, the first client watching the player. */
+    private Viewer[] viewersOf = new Viewer[16];
+    /** Every client that watches a player. */
+    private final Map<ClientHandler, Viewer> viewers = new HashMap<>();
+
+    /**
+     * A client watching a player, with the players it was last told about.
+     */
+    private static final class Viewer {
+        private final ClientHandler client;
+        private final int id;
+        /** The ids of the players the client is sent moves of. */
+        private final BitSet visible = new BitSet();
+        /** The next client watching the same player. */
+        private Viewer next;
+
+        private Viewer(ClientHandler client, int id) {
+            this.client = client;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Constructs a manager with no players for a maze of the given size.
+     *
+     * @param rows The number of rows, which x counts.
+     * @param cols The number of columns, which y counts.
+     * @param radius How far from its player a client is sent moves, at least 1.
+     */
+    InterestManager(int rows, int cols, int radius) {
+        this.rows = rows;
+        this.cols = cols;
+        this.radius = Math.max(1, radius);
+        this.bucketRows = (rows + this.radius - 1) / this.radius;
+        this.bucketCols = (cols + this.radius - 1) / this.radius;
+        this.bucketHead = new int[bucketRows * bucketCols];
+        Arrays.fill(bucketHead, NONE);
+    }
+
+    /**
+     * Adds a player that every client was just sent. Clients watching a player too far away
+     * are told to hide it again.
+     *
+     * @param id The id of the player in the match's index.
+     * @param player The player.
+     */
+    void add(int id, Player player) {
+        ensureCapacity(id);
+        xs[id] = player.getX();
+        ys[id] = player.getY();
+        present.set(id);
+        link(id, bucket(xs[id], ys[id]));
+        String hide = null;
+        for (Viewer viewer : viewers.values()) {
+            if (isWithin(viewer.id, xs[id], ys[id])) {
+                viewer.visible.set(id);
+            } else {
+                if (hide == null) {
+                    hide = "hidePlayer " + player.getName();
+                }
+                send(viewer, hide);
+            }
+        }
+    }
+
+    /**
+     * Removes a player that left. The clients watching it go back to being sent every move.
+     *
+     * @param id The id of the player.
+     */
+    void remove(int id) {
+        if (id == NONE || !present.get(id)) {
+            return;
+        }
+        unlink(id, bucket(xs[id], ys[id]));
+        present.clear(id);
+        for (Viewer viewer = viewersOf[id]; viewer != null; viewer = viewer.next) {
+            viewers.remove(viewer.client);
+        }
+        viewersOf[id] = null;
+        for (Viewer viewer : viewers.values()) {
+            viewer.visible.clear(id);
+        }
+    }
+
+    /**
+     * Makes a client watch a player, replacing whatever it watched before. The client is assumed
+     * to know about every player, and is sent nothing: the caller tells it what to show.
+     *
+     * @param client The client.
+     * @param id The id of the player the client plays.
+     * @param players The players of the match.
+     */
+    void watch(ClientHandler client, int id, PlayerIndex players) {
+        if (!present.get(id)) {
+            return;
+        }
+        unwatch(client);
+        Viewer viewer = new Viewer(client, id);
+        viewer.next = viewersOf[id];
+        viewersOf[id] = viewer;
+        viewers.put(client, viewer);
+        for (int other = present.nextSetBit(0); other >= 0; other = present.nextSetBit(other + 1)) {
+            if (players.get(other) != null && isWithin(id, xs[other], ys[other])) {
+                viewer.visible.set(other);
+            }
+        }
+    }
+
+    /**
+     * Stops a client from watching its player, so it is sent every move again.
+     *
+     * @param client The client.
+     */
+    void unwatch(ClientHandler client) {
+        Viewer viewer = viewers.remove(client);
+        if (viewer == null) {
+            return;
+        }
+        Viewer previous = null;
+        for (Viewer current = viewersOf[viewer.id]; current != null; current = current.next) {
+            if (current == viewer) {
+                if (previous == null) {
+                    viewersOf[viewer.id] = current.next;
+                } else {
+                    previous.next = current.next;
+                }
+                return;
+            }
+            previous = current;
+        }
+    }
+
+    /**
+     * Checks whether a client watches a player.
+     *
+     * @param client The client.
+     * @return true if the client is only sent the moves of players near its own.
+     */
+    boolean isWatching(ClientHandler client) {
+        return viewers.containsKey(client);
+    }
+
+    /**
+     * Checks whether a client is sent the moves of a player.
+     *
+     * @param client The client.
+     * @param id The id of the player.
+     * @return true if the client watches nobody or the player is within its radius.
+     */
+    boolean sees(ClientHandler client, int id) {
+        Viewer viewer = viewers.get(client);
+        return viewer == null || viewer.visible.get(id);
+    }
+
+    /**
+     * Applies a player's move, telling each watching client near where it was or where it went
+     * about players that came into or went out of its radius. The players the mover's own clients
+     * see change too. Clients that watch nobody are left to the caller.
+     *
+     * @param id The id of the player.
+     * @param player The player, already at its new position.
+     * @param message The move to send to the watching clients that see the player before and after it,
+     *                or {@code null} when moves are sent later, once per tick.
+     * @param players The players of the match.
+     */
+    void move(int id, Player player, String message, PlayerIndex players) {
+        if (!present.get(id)) {
+            return;
+        }
+        int fromX = xs[id];
+        int fromY = ys[id];
+        int from = bucket(fromX, fromY);
+        int to = bucket(player.getX(), player.getY());
+        if (from != to) {
+            unlink(id, from);
+            link(id, to);
+        }
+        xs[id] = player.getX();
+        ys[id] = player.getY();
+
+        String enter = null;
+        String hide = null;
+        for (Viewer own = viewersOf[id]; own != null; own = own.next) {
+            if (message != null) {
+                send(own, message);
+            }
+        }
+        // Visit the buckets around both positions, each once
+        int fromRow = from / bucketCols;
+        int fromCol = from % bucketCols;
+        int toRow = to / bucketCols;
+        int toCol = to % bucketCols;
+        for (int row = Math.min(fromRow, toRow) - 1; row <= Math.max(fromRow, toRow) + 1; row++) {
+            for (int col = Math.min(fromCol, toCol) - 1; col <= Math.max(fromCol, toCol) + 1; col++) {
+                if (row < 0 || row >= bucketRows || col < 0 || col >= bucketCols
+                        || !(isNear(row, col, fromRow, fromCol) || isNear(row, col, toRow, toCol))) {
+                    continue;
+                }
+                for (int other = bucketHead[row * bucketCols + col]; other != NONE; other = nextInBucket[other]) {
+                    if (other == id) {
+                        continue;
+                    }
+                    boolean within = isWithin(id, xs[other], ys[other]);
+                    // The mover's clients see the other player come or go
+                    for (Viewer own = viewersOf[id]; own != null; own = own.next) {
+                        update(own, other, within, players.get(other));
+                    }
+                    // The other player's clients see the mover come, go or move
+                    for (Viewer viewer = viewersOf[other]; viewer != null; viewer = viewer.next) {
+                        boolean was = viewer.visible.get(id);
+                        if (within && was) {
+                            if (message != null) {
+                                send(viewer, message);
+                            }
+                        } else if (within) {
+                            if (enter == null) {
+                                enter = sendingPlayer(player);
+                            }
+                            viewer.visible.set(id);
+                            send(viewer, enter);
+                        } else if (was) {
+                            if (hide == null) {
+                                hide = "hidePlayer " + player.getName();
+                            }
+                            viewer.visible.clear(id);
+                            send(viewer, hide);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells a watching client about a player that came into or went out of its radius.
+     */
+    private void update(Viewer viewer, int other, boolean within, Player player) {
+        if (player == null || within == viewer.visible.get(other)) {
+            return;
+        }
+        if (within) {
+            viewer.visible.set(other);
+            send(viewer, sendingPlayer(player));
+        } else {
+            viewer.visible.clear(other);
+            send(viewer, "hidePlayer " + player.getName());
+        }
+    }
+
+    /**
+     * Sends a message to a watching client, unless it is sent snapshots, which carry the same changes.
+     */
+    private static void send(Viewer viewer, String message) {
+        if (viewer.client.getSnapshots() == null) {
+            viewer.client.sendMessage(message);
+        }
+    }
+
+    private static String sendingPlayer(Player player) {
+        return "sendingPlayer " + player.getName() + " " + player.getTeam() + " " + player.getX() + " " + player.getY();
+    }
+
+    private static boolean isNear(int row, int col, int centreRow, int centreCol) {
+        return Math.abs(row - centreRow) <= 1 && Math.abs(col - centreCol) <= 1;
+    }
+
+    /**
+     * Checks whether a cell is within the radius of a player's position.
+     */
+    private boolean isWithin(int id, int x, int y) {
+        return Math.max(Math.abs(xs[id] - x), Math.abs(ys[id] - y)) <= radius;
+    }
+
+    /**
+     * Gets the bucket of a cell. Positions outside the maze, which only a misbehaving client sends,
+     * go in the nearest bucket at the edge.
+     */
+    private int bucket(int x, int y) {
+        int row = Math.min(Math.max(x, 0), rows - 1) / radius;
+        int col = Math.min(Math.max(y, 0), cols - 1) / radius;
+        return row * bucketCols + col;
+    }
+
+    private void link(int id, int bucket) {
+        int head = bucketHead[bucket];
+        nextInBucket[id] = head;
+        previousInBucket[id] = NONE;
+        if (head != NONE) {
+            previousInBucket[head] = id;
+        }
+        bucketHead[bucket] = id;
+    }
+
+    private void unlink(int id, int bucket) {
+        int previous = previousInBucket[id];
+        int next = nextInBucket[id];
+        if (previous == NONE) {
+            bucketHead[bucket] = next;
+        } else {
+            nextInBucket[previous] = next;
+        }
+        if (next != NONE) {
+            previousInBucket[next] = previous;
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= xs.length) {
+            int length = Math.max(xs.length * 2, id + 1);
+            nextInBucket = Arrays.copyOf(nextInBucket, length);
+            previousInBucket = Arrays.copyOf(previousInBucket, length);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+            viewersOf = Arrays.copyOf(viewersOf, length);
+        }
+    }
+}
@@ -0,0 +1,1248 @@
+package sfu.cmpt371.group7.game.server;
+
+import sfu.cmpt371.group7.game.model.Flag;
+import sfu.cmpt371.group7.game.model.Player;
+import sfu.cmpt371.group7.game.protocol.MessageTokenizer;
+import sfu.cmpt371.group7.game.protocol.MessageType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single game of Capture the Flag hosted by the {@link Server}.
+ * <p>
+ * Each match has its own players, flags, scores and clients, so many matches can run
+ * side by side in one server process. Broadcasts only reach the clients of the match,
+ * and the match is torn down once its last client leaves.
+ * <p>
+ * The match is the single writer of its own state. Client threads never touch it directly;
+ * they {@link #submit(Runnable)} commands to a lock-free queue, and the match applies them
+ * one at a time, in arrival order, on a thread borrowed from the server's executor.
+ * Client messages are queued as they are, in a {@link CommandRing} of reused slots, so queueing
+ * one allocates nothing.
+ * So no locks are needed, and a win check always sees every capture that came before it.
+ * <p>
+ * With a tick rate configured, moves are not broadcast as they arrive. The match remembers
+ * which players moved and, once per tick, sends a single {@code movePlayers} message with their
+ * latest positions, so a move superseded within the same tick is never sent.
+ * <p>
+ * Moves are checked before they are applied: a player only steps to a neighbouring cell that is
+ * open in the {@link MazeMap} and not taken by another player, except that players may share a flag,
+ * and no faster than the configured move rate. A refused move is not broadcast, and the mover is
+ * told where its player actually is. Each check is a constant number of array reads.
+ * <p>
+ * The server times captures: a {@code captureBegin} starts a hold on the flag the player stands on,
+ * and the flag is captured once the hold has lasted the capture time. Moving off the flag, leaving
+ * or giving up with a {@code captureDuration} ends the hold first. Holds, delayed respawns and idle
+ * players are timed on the server's shared {@link TimerWheel}, whose tasks only submit a command to
+ * the match; the command then checks that the timer it was started by is still the current one.
+ * <p>
+ * With an interest radius configured, a client that said which player it plays is only sent the
+ * moves of players near that player, as decided by the match's {@link InterestManager}. Everything
+ * else, such as captures, respawns and the game over, still goes to every client.
+ * <p>
+ * A client that acknowledges snapshots is sent {@link SnapshotHistory snapshots} of the players it sees
+ * instead of moves: once per tick, or at the end of each command loop run without a tick rate, each such
+ * client gets the changes since the last snapshot it acknowledged, if there are any.
+ */
+class Match {
+    static final int NUM_PLAYERS = 4;
+
+    /** Connections a match takes: every player has a lobby connection and a game window. */
+    static final int MAX_CLIENTS = NUM_PLAYERS * 2;
+    /** Rows and columns of the maze, which is the same for every match. */
+    static final int MAZE_SIZE = 20;
+    /** Commands applied before the loop yields its thread to other matches. */
+    private static final int MAX_COMMANDS_PER_RUN = 256;
+    /** Slots in the command ring; commands submitted while it is full wait in the overflow queue. */
+    private static final int COMMAND_RING_SIZE = 1024;
+
+    private final String id;
+    private final Server server;
+    private final Executor executor;
+    private final CommandRing commands = new CommandRing(COMMAND_RING_SIZE);
+    /**
+     * Commands submitted while the ring was full. Once anything is here, later commands queue behind it
+     * until the loop has taken it, so they still run in the order they were submitted.
+     */
+    private final Queue<Runnable> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    /** Reads the fields of the message being handled; only used by the command loop. */
+    private final MessageTokenizer tokens = new MessageTokenizer();
+    private final List<ClientHandler> clients = new ArrayList<>();
+    private int clientCount = 0;
+    private volatile boolean gameStarted = false;
+    private volatile boolean ended = false;
+    /** Clients placed here by matchmaking; only touched while holding the server's matchmaking lock. */
+    private int seatsTaken = 0;
+    /**
+     * Connections that joined and have not left, counted as they join so the match cannot be overfilled.
+     * Set to -1 once the match is torn down, so no connection can join it any more.
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+    /** Players that moved since the last tick, by name, in the order they first moved. */
+    private final Map<String, Player> movedPlayers = new LinkedHashMap<>();
+    /** The scheduled tick, or {@code null} when moves are sent immediately. */
+    private ScheduledFuture<?> tickTask;
+    /** Whether every broadcast message and respawn is printed. */
+    private final boolean logMessages;
+    /** The players, found by name and by position in constant time. */
+    private final PlayerIndex PLAYERS = new PlayerIndex(MAZE_SIZE, MAZE_SIZE);
+    /** Flags by name, in the order the first client listed them. */
+    private final Map<String, Flag> flags = new LinkedHashMap<>();
+    /** The same flags by cell, indexed by {@code x * MAZE_SIZE + y}. */
+    private final Flag[] flagCells = new Flag[MAZE_SIZE * MAZE_SIZE];
+    /** Whether moves are checked before they are applied. */
+    private final boolean validateMoves;
+    /** The maze moves are checked against. */
+    private final MazeMap map;
+    /** Limits how fast each player moves. */
+    private final MoveRateLimiter moveLimiter;
+    /** Runs the capture holds, respawn delays and idle checks. */
+    private final TimerWheel timers;
+    /** How long a capture is held before the flag is captured, in nanoseconds. */
+    private final long captureTime;
+    /** How long a player waits to respawn, in nanoseconds, or 0 to respawn at once. */
+    private final long respawnDelay;
+    /** How long a player may do nothing before it is disconnected, in nanoseconds, or 0 for no limit. */
+    private final long idleTimeout;
+    /** By player id, the flag the player is holding a capture on, or {@code null}. */
+    private Flag[] holdFlags = new Flag[16];
+    /** By player id, the timer that completes the player's capture. */
+    private TimerWheel.Timeout[] holdTimers = new TimerWheel.Timeout[16];
+    /** By player id, the timer that respawns the player, or {@code null} if it is not waiting to respawn. */
+    private TimerWheel.Timeout[] respawnTimers = new TimerWheel.Timeout[16];
+    /** By player id, when the player last moved or captured, from {@link System#nanoTime()}. */
+    private long[] lastActive = new long[16];
+    /** Which clients are sent which players' moves, or {@code null} when every client is sent every move. */
+    private final InterestManager interest;
+    /** Clients sent snapshots instead of moves. */
+    private int snapshotClients = 0;
+    /** Flags captured by each team. Only changed by a successful {@link Flag#tryCapture()}, so each flag counts once. */
+    private int redFlagCount = 0;
+    private int blueFlagCount = 0;
+    /** Whether a team has captured enough flags and the game over was sent. */
+    private boolean winnerAnnounced = false;
+    private int redTeamCount = 0;
+    private int blueTeamCount = 0;
+
+    private final int RED_1_X = 2;
+    private final int RED_1_Y = 0;
+
+    private final int RED_2_X = 17;
+    private final int RED_2_Y = 0;
+
+    private final int BLUE_1_X = 2;
+    private final int BLUE_1_Y = 19;
+
+    private final int BLUE_2_X = 17;
+    private final int BLUE_2_Y = 19;
+
+    /**
+     * Constructs an empty match.
+     *
+     * @param id The identifier clients use to join the match.
+     * @param server The server hosting the match.
+     * @param executor The threads that run the command loop.
+     */
+    Match(String id, Server server, Executor executor) {
+        this.id = id;
+        this.server = server;
+        this.executor = executor;
+        this.logMessages = server.getConfig().isLogMessages();
+        this.validateMoves = server.getConfig().isValidateMoves();
+        this.map = validateMoves ? MazeMap.get() : null;
+        this.moveLimiter = new MoveRateLimiter(validateMoves ? server.getConfig().getMoveRate() : 0);
+        this.timers = server.getTimers();
+        this.captureTime = TimeUnit.MILLISECONDS.toNanos(server.getConfig().getCaptureTime());
+        this.respawnDelay = TimeUnit.MILLISECONDS.toNanos(server.getConfig().getRespawnDelay());
+        this.idleTimeout = TimeUnit.SECONDS.toNanos(server.getConfig().getIdleTimeout());
+        int interestRadius = server.getConfig().getInterestRadius();
+        this.interest = interestRadius > 0 ? new InterestManager(MAZE_SIZE, MAZE_SIZE, interestRadius) : null;
+    }
+
+    /**
+     * Gets the identifier of the match.
+     * @return the match id
+     */
+    String getId() {
+        return id;
+    }
+
+    /**
+     * Checks whether matchmaking can still place a player in this match.
+     * @return true if the game has not started and not every seat is taken
+     */
+    boolean hasFreeSeat() {
+        return !ended && !gameStarted && seatsTaken < NUM_PLAYERS;
+    }
+
+    /**
+     * Reserves a seat for a client placed here by matchmaking.
+     */
+    void takeSeat() {
+        seatsTaken++;
+    }
+
+    /**
+     * Queues a command to run on this match's command loop.
+     * May be called from any thread; commands run one at a time in the order they were submitted.
+     *
+     * @param command The command to run.
+     */
+    void submit(Runnable command) {
+        if (!overflow.isEmpty() || !commands.offer(command)) {
+            overflow.add(command);
+        }
+        schedule();
+    }
+
+    /**
+     * Queues a message from a client, to be handled on this match's command loop, like a command.
+     *
+     * @param sender The client the message came from.
+     * @param type The type of the message, or {@code null} if it is not known.
+     * @param message The whole message.
+     */
+    void submit(ClientHandler sender, MessageType type, String message) {
+        if (!overflow.isEmpty() || !commands.offer(sender, type, message)) {
+            overflow.add(() -> sender.dispatch(this, type, message));
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::runCommands);
+        }
+    }
+
+    /**
+     * Applies queued commands. At most one run is scheduled at a time, and a busy match
+     * hands its thread back after {@link #MAX_COMMANDS_PER_RUN} commands so other matches get a turn.
+     * Every client is flushed once at the end of a run, so the messages a run sends a client,
+     * or a whole tick's, go out together.
+     */
+    private void runCommands() {
+        int count = 0;
+        while (count < MAX_COMMANDS_PER_RUN && runNext()) {
+            count++;
+        }
+        if (tickTask == null && !ended) {
+            sendSnapshots();
+        }
+        // One write per client for everything the run sent it
+        for (ClientHandler client : clients) {
+            client.flush();
+        }
+        scheduled.set(false);
+        if (!commands.isEmpty() || !overflow.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Applies the oldest queued command, taking the ring's before the overflow queue's.
+     *
+     * @return false if there was none.
+     */
+    private boolean runNext() {
+        if (commands.runOldest(this)) {
+            return true;
+        }
+        Runnable command = overflow.poll();
+        if (command == null) {
+            return false;
+        }
+        runCommand(command);
+        return true;
+    }
+
+    /**
+     * Runs a command taken from the queue. Once the match has ended, only clients joining still run.
+     *
+     * @param command The command.
+     */
+    void runCommand(Runnable command) {
+        if (ended && !(command instanceof Join)) {
+            return;
+        }
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            System.err.println("Error in match " + id + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles a client message taken from the queue, unless the match has ended.
+     *
+     * @param sender The client the message came from.
+     * @param type The type of the message, or {@code null} if it is not known.
+     * @param message The whole message.
+     */
+    void runMessage(ClientHandler sender, MessageType type, String message) {
+        if (ended) {
+            return;
+        }
+        try {
+            sender.dispatch(this, type, message);
+        } catch (RuntimeException e) {
+            System.err.println("Error in match " + id + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts a connection joining the match, unless the match has been torn down or already has
+     * {@link #MAX_CLIENTS} connections. The connection is counted until it disconnects, and the match
+     * is not torn down while it is counted, even before {@link #addClient} added it.
+     *
+     * @return false if the connection may not join.
+     */
+    boolean tryJoin() {
+        while (true) {
+            int count = connections.get();
+            if (count < 0 || count >= MAX_CLIENTS) {
+                return false;
+            }
+            if (connections.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Starts sending batched moves at a fixed rate.
+     *
+     * @param ticker The scheduler that triggers the ticks.
+     * @param tickRate The number of ticks per second.
+     */
+    void startTicking(ScheduledExecutorService ticker, int tickRate) {
+        long period = TimeUnit.SECONDS.toNanos(1) / tickRate;
+        tickTask = ticker.scheduleAtFixedRate(() -> submit(this::tick), period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends the latest position of every player that moved since the previous tick as one message.
+     * With an interest radius, a client watching a player only gets the moves of the players it sees,
+     * and nothing when it sees none of them. Runs on the command loop.
+     */
+    private void tick() {
+        sendSnapshots();
+        if (movedPlayers.isEmpty()) {
+            return;
+        }
+        String message = movePlayers(null);
+        if (interest == null && snapshotClients == 0) {
+            movedPlayers.clear();
+            broadcast(message);
+            return;
+        }
+        if (logMessages) {
+            System.out.println("Broadcasting: " + message);
+        }
+        for (ClientHandler client : clients) {
+            if (client.getSnapshots() != null) {
+                continue;
+            }
+            if (interest == null || !interest.isWatching(client)) {
+                client.sendMessage(message);
+            } else {
+                String seen = movePlayers(client);
+                if (seen != null) {
+                    client.sendMessage(seen);
+                }
+            }
+        }
+        movedPlayers.clear();
+    }
+
+    /**
+     * Builds a movePlayers message with the players that moved since the previous tick.
+     *
+     * @param client The client to leave out the players it does not see for, or {@code null} for all of them.
+     * @return the message, or {@code null} if the client sees none of the players.
+     */
+    private String movePlayers(ClientHandler client) {
+        // movePlayers <name> <x> <y> [<name> <x> <y> ...]
+        StringBuilder message = new StringBuilder("movePlayers");
+        for (Player player : movedPlayers.values()) {
+            if (client != null && interest != null && !interest.sees(client, PLAYERS.find(player.getName()))) {
+                continue;
+            }
+            message.append(' ').append(player.getName())
+                    .append(' ').append(player.getX())
+                    .append(' ').append(player.getY());
+        }
+        return message.length() > "movePlayers".length() ? message.toString() : null;
+    }
+
+    /**
+     * Adds a client to this match and tells it which match it joined.
+     * A client that joined as the match was torn down has its connection closed instead.
+     *
+     * @param client The client joining the match.
+     */
+    void addClient(ClientHandler client) {
+        submit(new Join(client));
+    }
+
+    /**
+     * The command adding a client, which still runs once the match has ended so the client is not left waiting.
+     */
+    private final class Join implements Runnable {
+        private final ClientHandler client;
+
+        private Join(ClientHandler client) {
+            this.client = client;
+        }
+
+        @Override
+        public void run() {
+            if (ended) {
+                // Closing the connection lets the client try again
+                client.close();
+                return;
+            }
+            clients.add(client);
+            client.sendMessage("joinedRoom " + id);
+        }
+    }
+
+    /**
+     * Broadcasts a message to all clients of this match.
+     * Only called on the command loop. Each client queues the message for its own writer,
+     * so a client that reads slowly does not hold up the others.
+     * @param message The message to be broadcast to all the clients.
+     */
+    void broadcast(String message) {
+        if (logMessages) {
+            System.out.println("Broadcasting: " + message);
+        }
+
+        for (ClientHandler client : clients) {
+            client.sendMessage(message);
+        }
+    }
+
+    /**
+     * Checks if the game should start based on player count
+     * if the minimum number of players is reached then the
+     * broadcast message is sent to all the players
+     */
+    private void checkGameStart() {
+        if (!gameStarted && clientCount >= NUM_PLAYERS) {
+            System.out.println("Starting game " + id + " with " + clientCount + " players");
+            gameStarted = true;
+            broadcast("startGame");
+
+            // Send all players' info to everyone
+            for (Player player : PLAYERS) {
+                broadcast("newPlayer " + player.getTeam() + " " + player.getX() + " " + player.getY() + " " + player.getName());
+                watchIdle(PLAYERS.find(player.getName()), idleTimeout);
+            }
+        }
+    }
+
+    /**
+     * Finds the player object by its name and returns it.
+     *
+     * @param name The name of the player to find.
+     * @return The {@code Player} with the matching name, or {@code null} if that name is not found.
+     */
+    Player findPlayerByName(String name) {
+        return PLAYERS.get(name);
+    }
+
+    /**
+     * Finds a flag by its name.
+     *
+     * @param name The name of the flag to find.
+     * @return The {@code Flag} with same name, or {@code null} if it is not found.
+     */
+    private Flag findFlagByName(String name) {
+        return flags.get(name);
+    }
+
+    /**
+     * Checks if a team has won by capturing enough number of flags.
+     * Sends terminating message if above condition is fulfilled, only the first time.
+     */
+    private void checkWinCondition() {
+        if (winnerAnnounced) {
+            return;
+        }
+        if (redFlagCount >= 4) {
+            winnerAnnounced = true;
+            broadcast("gameOver red");
+        } else if (blueFlagCount >= 4) {
+            winnerAnnounced = true;
+            broadcast("gameOver blue");
+        }
+    }
+
+    /**
+     * Gets the number of flags a team has captured. Only called on the command loop.
+     *
+     * @param team The team, red or blue.
+     * @return the number of flags the team captured.
+     */
+    int getFlagCount(String team) {
+        return team.equals("red") ? redFlagCount : blueFlagCount;
+    }
+
+    /**
+     * Decides if a specific grid position is unoccupied by any player.
+     *
+     * @param x The x-co-ord of particular position
+     * @param y the y-co-ord of particular position
+     * @return {@code true} is particular position is empty, {@code false} otherwise.
+    */
+    boolean isNoPlayerAtPosition(int x, int y) {
+        return PLAYERS.isFree(x, y);
+    }
+
+    /**
+     * Respawn a player to their team's designated spawn point.
+     * Notifies all clients of the updated position.
+     *
+     * @param player The player to respawn.
+     */
+    private void respawnPlayer(Player player) {
+        int spawnX = 10, spawnY = 10;
+        if (player.getTeam().equals("red")) {
+            if(isNoPlayerAtPosition(2, 0)) {
+                if (logMessages) {
+                    System.out.println("spawning at 0,2");
+                }
+                spawnX = RED_1_X;
+                spawnY = RED_1_Y;
+            } else if(isNoPlayerAtPosition(3, 0)){
+                if (logMessages) {
+                    System.out.println("spawning at 0,3");
+                }
+                spawnX = RED_2_X;
+                spawnY = RED_2_Y;
+            }
+        } else {
+            if(isNoPlayerAtPosition(2, 19)) {
+                if (logMessages) {
+                    System.out.println("spawning at 2,19");
+                }
+                spawnX = BLUE_1_X;
+                spawnY = BLUE_1_Y;
+            } else if(isNoPlayerAtPosition(3, 19)){
+                if (logMessages) {
+                    System.out.println("spawning at 3,19");
+                }
+                spawnX = BLUE_2_X;
+                spawnY = BLUE_2_Y;
+            }
+        }
+
+        // Update player position
+        int id = PLAYERS.find(player.getName());
+        PLAYERS.move(id, spawnX, spawnY);
+
+        // Notify all clients about respawn
+        broadcast("respawnPlayer " + player.getName() + " " + spawnX + " " + spawnY);
+        sendMove(id, player, "movePlayer " + player.getName() + " " + spawnX + " " + spawnY);
+
+        if (logMessages) {
+            System.out.println("Respawning player " + player.getName() + " to " + spawnX + "," + spawnY);
+        }
+    }
+
+    /**
+     * Sends a player's move to the clients that see it: every client without an interest radius,
+     * and otherwise the clients near the player and those watching nobody.
+     *
+     * @param id The id of the player.
+     * @param player The player, already at its new position.
+     * @param message The movePlayer message.
+     */
+    private void sendMove(int id, Player player, String message) {
+        if (interest == null && snapshotClients == 0) {
+            broadcast(message);
+            return;
+        }
+        if (logMessages) {
+            System.out.println("Broadcasting: " + message);
+        }
+        if (interest != null) {
+            interest.move(id, player, message, PLAYERS);
+        }
+        for (ClientHandler client : clients) {
+            if (client.getSnapshots() == null && (interest == null || !interest.isWatching(client))) {
+                client.sendMessage(message);
+            }
+        }
+    }
+
+    /**
+     * Sends each client that asked for snapshots the changes since the last snapshot it acknowledged.
+     * Runs on the command loop.
+     */
+    private void sendSnapshots() {
+        if (snapshotClients == 0) {
+            return;
+        }
+        int captured = capturedFlags();
+        for (ClientHandler client : clients) {
+            SnapshotHistory snapshots = client.getSnapshots();
+            if (snapshots != null) {
+                String snapshot = snapshots.next(PLAYERS, player -> interest == null || interest.sees(client, player), captured);
+                if (snapshot != null) {
+                    client.sendSnapshot(snapshot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets which flags are captured.
+     * @return a bit per flag, in the order the flags were listed, set if the flag is captured
+     */
+    private int capturedFlags() {
+        int captured = 0;
+        int bit = 1;
+        for (Flag flag : flags.values()) {
+            if (flag.isCaptured()) {
+                captured |= bit;
+            }
+            bit <<= 1;
+        }
+        return captured;
+    }
+
+    /**
+     * Starts reading a message on the command loop.
+     * Handlers receive the tokenizer positioned after the message type.
+     *
+     * @param message The message to read.
+     * @return the match's tokenizer, reset to the fields of the message.
+     */
+    MessageTokenizer tokenize(String message) {
+        tokens.reset(message).next();
+        return tokens;
+    }
+
+    /**
+     * Handles team selection message sent by the client.
+     * Adds the player to either the red or blue team and broadcasts their position.
+     * Makes sure game starts after player joins, then tells the other clients about the player.
+     *
+     * @param sender The client that selected the team.
+     * @param tokens The message containing the team and the player name.
+     */
+    void handleTeamSelection(ClientHandler sender, MessageTokenizer tokens) {
+        if (tokens.remaining() >= 2) {
+            String team = tokens.nextString();
+            String playerName = tokens.nextString();
+            sender.setPlayerName(playerName);
+
+            int x, y;
+            if (team.equals("red")) {
+                if(redTeamCount== 0){
+                    x = RED_1_X;
+                }
+                else{
+                    x = RED_2_X;
+                }
+                y = RED_1_Y;
+                redTeamCount++;
+            } else {
+                if(blueTeamCount == 0){
+                    x = BLUE_1_X;
+                }
+                else{
+                    x = BLUE_2_X;
+                }
+                y = BLUE_1_Y;
+                blueTeamCount++;
+            }
+
+            Player player = new Player(team, x, y, playerName);
+
+            int id = PLAYERS.add(player);
+            if (id != PlayerIndex.NONE) {
+                clientCount++;
+                ensureTimerCapacity(id);
+                lastActive[id] = System.nanoTime();
+                if (gameStarted) {
+                    watchIdle(id, idleTimeout);
+                }
+            }
+
+            broadcast("sendingPlayer " + player.getName() + " " + player.getTeam() + " " + player.getX() + " " + player.getY());
+            if (interest != null && id != PlayerIndex.NONE) {
+                interest.add(id, player);
+                // The lobby connection plays the player it selected
+                interest.watch(sender, id, PLAYERS);
+            }
+            broadcast("updateCount " + clientCount);
+
+            checkGameStart();
+            sendClientToAllPlayers(sender, team, playerName);
+        }
+    }
+
+    /**
+     * Sends a message to all clients of the match except the sender
+     * to notify them that a player has joined a team.
+     *
+     * @param sender The client that joined a team.
+     * @param team The team the player joined.
+     * @param playerName The name of the player.
+     */
+    private void sendClientToAllPlayers(ClientHandler sender, String team, String playerName) {
+        String info = "showPlayerJoined " + team + " " + playerName;
+        for (ClientHandler client : clients) {
+            if (client != sender) {
+                client.sendMessage(info);
+            }
+        }
+    }
+
+    /**
+     * Handles move player message
+     * first we check the move, then we update the location of the player and tell the other clients.
+     *
+     * The player is looked up straight from the message, so a move of a known player
+     * creates no strings.
+     *
+     * A client predicting its own moves numbers them, and the move is then acknowledged to that
+     * client alone with the position the player ended up at, which the client reconciles its
+     * prediction against. A refused move is not broadcast: a numbered move is acknowledged with the
+     * position the player stayed at, and the sender of any other move is sent that position.
+     *
+     * @param sender The client that sent the move.
+     * @param tokens The message containing player name, new coordinates and optionally a sequence number.
+     */
+    void handleMovePlayer(ClientHandler sender, MessageTokenizer tokens) {
+
+        if (tokens.remaining() >= 3) {
+            tokens.next();
+            int id = PLAYERS.find(tokens);
+            Player player = id != PlayerIndex.NONE ? PLAYERS.get(id) : null;
+            if (player == null && validateMoves) {
+                // Nobody to move, so nothing worth telling the other clients
+                return;
+            }
+            String playerName = player != null ? player.getName() : tokens.tokenString();
+            int x = tokens.nextInt();
+            int y = tokens.nextInt();
+
+            if (player != null) {
+                lastActive[id] = System.nanoTime();
+            }
+            // A player waiting to respawn stays where it is
+            boolean accepted = player == null || (respawnTimers[id] == null && isValidMove(id, player, x, y));
+            if (accepted && player != null) {
+                PLAYERS.move(id, x, y);
+                cancelCapture(id);
+            }
+            if (player != null) {
+                // movePlayer <name> <x> <y> <sequence>: moveAck <sequence> <x> <y>
+                if (tokens.remaining() >= 1) {
+                    sender.sendMessage("moveAck " + tokens.nextInt() + " " + player.getX() + " " + player.getY());
+                } else if (!accepted) {
+                    sender.sendMessage("movePlayer " + playerName + " " + player.getX() + " " + player.getY());
+                }
+            }
+            if (!accepted) {
+                return;
+            }
+
+            //checkIfPlayerCapturedFlag(playerName, x, y);
+
+            if (tickTask == null) {
+                String moveMessage = "movePlayer " + playerName + " " + x + " " + y;
+                if (player != null) {
+                    sendMove(id, player, moveMessage);
+                } else {
+                    broadcast(moveMessage);
+                }
+            } else if (player != null) {
+                if (interest != null) {
+                    // Players coming into or going out of view are sent at once, their moves on the tick
+                    interest.move(id, player, null, PLAYERS);
+                }
+                movedPlayers.put(playerName, player);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a player may move to a cell: the next cell up, down, left or right,
+     * open in the maze, not a captured flag, free of other players unless it is a flag,
+     * and within the player's move rate.
+     *
+     * @param id The id of the player.
+     * @param player The player.
+     * @param x The x-co-ord the player moves to.
+     * @param y The y-co-ord the player moves to.
+     * @return true if the move may be applied.
+     */
+    private boolean isValidMove(int id, Player player, int x, int y) {
+        if (!validateMoves) {
+            return true;
+        }
+        if (Math.abs(x - player.getX()) + Math.abs(y - player.getY()) != 1 || !map.isOpen(x, y)) {
+            return false;
+        }
+        if (map.cell(x, y) == MazeMap.FLAG) {
+            // Players may share a flag until it is captured
+            Flag flag = flagCells[x * MAZE_SIZE + y];
+            if (flag != null && flag.isCaptured()) {
+                return false;
+            }
+        } else if (!PLAYERS.isFree(x, y)) {
+            return false;
+        }
+        return moveLimiter.tryMove(id, System.nanoTime());
+    }
+
+    /**
+     * Handles request from the client for current player count.
+     * Only used to get the size of the players and to set the number of players label in the UI
+     *
+     * @param sender The client asking for the count.
+     */
+    void handleCurrentPlayers(ClientHandler sender) {
+        sender.sendMessage("sizeOfPlayersIs " + PLAYERS.size());
+    }
+
+    /**
+     * Handles a player leaving the game.
+     * Removes the player and ends the match once no players are left.
+     *
+     * @param tokens The message containing the name of the leaving player.
+     */
+    void handleExitGame(MessageTokenizer tokens) {
+        if (tokens.next()) {
+            String name = tokens.tokenString();
+
+            removePlayer(name);
+
+            clientCount--;
+            if (clientCount < 0) {
+                System.err.println("Client count is negative. Something went wrong.");
+                return;
+            }
+
+            broadcast("playerLeft " + name);
+            broadcast("sizeOfPlayersIs " + PLAYERS.size());
+
+            endMatch();
+        }
+    }
+
+    /**
+     * Handles flag coordinates message.
+     * Stores the coordinates of all flags sent from the client.
+     *
+     * @param tokens The message containing the flag coordinates.
+     */
+    void handleFlagCoordinates(MessageTokenizer tokens) {
+        //flagCoordinates <flag1.x> <flag1.y> <flag2.x> <flag2.y> <flag3.x> <flag3.y>
+        int NUM_FLAGS = 7;
+        if (tokens.remaining() >= NUM_FLAGS * 2) {
+            try {
+                for (int i = 0; i < NUM_FLAGS; i++) {
+                    int x = tokens.nextInt();
+                    int y = tokens.nextInt();
+                    // Every client sends the flags; the first coordinates are kept
+                    String name = "flag" + (i + 1);
+                    if (!flags.containsKey(name)) {
+                        Flag flag = new Flag(x, y, name);
+                        flags.put(name, flag);
+                        if (x >= 0 && x < MAZE_SIZE && y >= 0 && y < MAZE_SIZE) {
+                            flagCells[x * MAZE_SIZE + y] = flag;
+                        }
+                    }
+                }
+                System.out.println("Flag coordinates set");
+            } catch (Exception e) {
+                System.err.println("Error parsing flag coordinates: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Handles resend all current players request and flag data to a client.
+     * Used to get the resend the players in case of an error to get the location of the players
+     * <p>
+     * A game window names its player, so with an interest radius it is then only sent the players
+     * near its own, and told to hide the others.
+     *
+     * @param sender The client asking for the players.
+     * @param tokens The message, optionally containing the name of the client's player.
+     */
+    void handleResendPlayers(ClientHandler sender, MessageTokenizer tokens) {
+        // resendPlayers [<player name>]
+        System.out.println("Resending all players to client");
+        if (interest != null && tokens.next()) {
+            int id = PLAYERS.find(tokens);
+            if (id != PlayerIndex.NONE) {
+                interest.watch(sender, id, PLAYERS);
+            }
+        }
+
+        sender.sendMessage("sizeOfPlayersIs " + PLAYERS.size());
+
+        for (Player player : PLAYERS) {
+            if (interest == null || interest.sees(sender, PLAYERS.find(player.getName()))) {
+                sender.sendMessage("sendingPlayer " + player.getName() + " " + player.getTeam() + " " + player.getX() + " " + player.getY());
+            } else {
+                sender.sendMessage("hidePlayer " + player.getName());
+            }
+        }
+
+        for (Flag flag : flags.values()) {
+            if (flag.isCaptured()) {
+                sender.sendMessage("lockFlag " + flag.getName());
+            }
+        }
+    }
+
+    /**
+     * Handles game over message.
+     * Determines winner based on flag counts and broadcasts the result.
+     *
+     * @param tokens The message containing the winner, if the client knows it.
+     */
+    void handleGameOver(MessageTokenizer tokens) {
+        String winner = tokens.next() ? tokens.tokenString() : "";
+        if (winner.isEmpty()) {
+            // Determine winner based on flag count
+            if (redFlagCount > blueFlagCount) {
+                winner = "red";
+            } else if (blueFlagCount > redFlagCount) {
+                winner = "blue";
+            } else {
+                winner = "tie";
+            }
+        }
+
+        broadcast("gameOver " + winner);
+    }
+
+    /**
+     * Handles client disconnection
+     * Cleans the client from the match and tears the match down once no clients are left.
+     *
+     * @param client The client that disconnected.
+     */
+    void handleDisconnect(ClientHandler client) {
+        if (!clients.contains(client)) {
+            // Already disconnected for being idle
+            return;
+        }
+        connections.decrementAndGet();
+        String playerName = client.getPlayerName();
+        if (interest != null) {
+            interest.unwatch(client);
+        }
+        if (client.getSnapshots() != null) {
+            snapshotClients--;
+        }
+        if (playerName != null) {
+            removePlayer(playerName);
+            clientCount--;
+            broadcast("playerLeft " + playerName);
+            broadcast("sizeOfPlayersIs " + clientCount);
+        }
+
+        clients.remove(client);
+        // A connection that joined but is not added yet keeps the match open
+        if (clients.isEmpty() && connections.compareAndSet(0, -1)) {
+            close();
+        }
+    }
+
+    /**
+     * Handles a snapshot acknowledgement: the client applied a snapshot. The first one, which may
+     * acknowledge snapshot 0, switches the client from moves to snapshots, starting with a full one.
+     *
+     * @param sender The client that applied the snapshot.
+     * @param tokens The message containing the number of the snapshot.
+     */
+    void handleSnapshotAck(ClientHandler sender, MessageTokenizer tokens) {
+        // snapshotAck <sequence>
+        if (tokens.remaining() >= 1) {
+            int sequence = tokens.nextInt();
+            if (sender.getSnapshots() == null) {
+                sender.setSnapshots(new SnapshotHistory());
+                snapshotClients++;
+            }
+            sender.getSnapshots().acknowledge(sequence);
+        }
+    }
+
+    /**
+     * Handles a capture begin message: the player started holding C on a flag.
+     * The server starts a hold, and captures the flag for the player once the hold has lasted
+     * the capture time. A player that is not on the flag, is waiting to respawn or is already
+     * holding a capture is ignored.
+     *
+     * @param tokens The message containing the player and the flag.
+     */
+    void handleCaptureBegin(MessageTokenizer tokens) {
+        // captureBegin <player name> <flag name>
+        if (tokens.remaining() >= 2) {
+            tokens.next();
+            int id = PLAYERS.find(tokens);
+            Flag flag = findFlagByName(tokens.nextString());
+            if (id == PlayerIndex.NONE || flag == null || flag.isCaptured()) {
+                return;
+            }
+            Player player = PLAYERS.get(id);
+            lastActive[id] = System.nanoTime();
+            if (player.getX() != flag.getX() || player.getY() != flag.getY()
+                    || respawnTimers[id] != null || holdFlags[id] != null) {
+                return;
+            }
+            holdFlags[id] = flag;
+            holdTimers[id] = timers.schedule(() -> submit(() -> completeCapture(id)), captureTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Captures the flag of a hold that lasted the capture time. Runs on the command loop
+     * once the hold's timer expired, unless the hold ended in the meantime.
+     *
+     * @param id The id of the holding player.
+     */
+    private void completeCapture(int id) {
+        Flag flag = holdFlags[id];
+        if (flag == null || !holdTimers[id].isExpired()) {
+            return;
+        }
+        holdFlags[id] = null;
+        holdTimers[id] = null;
+        Player player = PLAYERS.get(id);
+        // Holds that complete together are applied one at a time, and only the first captures the flag
+        if (player == null || !flag.tryCapture()) {
+            return;
+        }
+
+        broadcast("flagCaptured " + player.getName() + " " + flag.getName());
+
+        // Update team score
+        if (player.getTeam().equals("red")) {
+            redFlagCount++;
+        } else {
+            blueFlagCount++;
+        }
+
+        // Check for other players on the same flag position and respawn them
+        for (Player other : PLAYERS.playersAt(flag.getX(), flag.getY())) {
+            if (other != player) {
+                scheduleRespawn(PLAYERS.find(other.getName()));
+            }
+        }
+
+        // Check if this capture results in a win
+        checkWinCondition();
+    }
+
+    /**
+     * Handle capture duration message from clients, sent when a player lets go of C before
+     * the flag was captured, or presses another key while holding it.
+     * The duration the client measured is not used: the server timed the hold itself.
+     * A player giving up a hold, or letting go without holding a flag that can still be captured,
+     * is respawned. A player letting go after its capture completed is left alone.
+     *
+     * @param tokens The message containing the player, the flag and how long capture was held.
+     */
+    void handleCaptureDuration(MessageTokenizer tokens) {
+        // captureDuration <player name> <flag name> <time (sec)>
+        if (tokens.remaining() >= 3) {
+            tokens.next();
+            int id = PLAYERS.find(tokens);
+            Flag flag = findFlagByName(tokens.nextString());
+            if (id == PlayerIndex.NONE) {
+                return;
+            }
+            lastActive[id] = System.nanoTime();
+            if (cancelCapture(id) || (flag != null && !flag.isCaptured())) {
+                // Failed capture - respawn the player
+                scheduleRespawn(id);
+            }
+        }
+    }
+
+    /**
+     * Ends the capture a player is holding, if any, without capturing the flag.
+     *
+     * @param id The id of the player.
+     * @return true if the player was holding a capture.
+     */
+    private boolean cancelCapture(int id) {
+        if (holdFlags[id] == null) {
+            return false;
+        }
+        holdTimers[id].cancel();
+        holdFlags[id] = null;
+        holdTimers[id] = null;
+        return true;
+    }
+
+    /**
+     * Respawns a player after the respawn delay, or at once without one.
+     * The player keeps its position until then, and its moves are refused.
+     *
+     * @param id The id of the player.
+     */
+    private void scheduleRespawn(int id) {
+        cancelCapture(id);
+        if (respawnDelay == 0) {
+            respawnPlayer(PLAYERS.get(id));
+        } else if (respawnTimers[id] == null) {
+            respawnTimers[id] = timers.schedule(() -> submit(() -> completeRespawn(id)), respawnDelay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Respawns a player whose respawn delay is over, unless it left in the meantime.
+     *
+     * @param id The id of the player.
+     */
+    private void completeRespawn(int id) {
+        TimerWheel.Timeout timer = respawnTimers[id];
+        if (timer == null || !timer.isExpired()) {
+            return;
+        }
+        respawnTimers[id] = null;
+        Player player = PLAYERS.get(id);
+        if (player != null) {
+            respawnPlayer(player);
+        }
+    }
+
+    /**
+     * Checks on a player once the idle timeout has passed since a time, if there is an idle timeout.
+     *
+     * @param id The id of the player.
+     * @param delay How long to wait, in nanoseconds.
+     */
+    private void watchIdle(int id, long delay) {
+        if (idleTimeout > 0) {
+            timers.schedule(() -> submit(() -> checkIdle(id)), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Disconnects a player that has not moved or captured for the idle timeout,
+     * and otherwise checks again once the timeout has passed since its last action.
+     *
+     * @param id The id of the player.
+     */
+    private void checkIdle(int id) {
+        Player player = PLAYERS.get(id);
+        if (player == null) {
+            return;
+        }
+        long idle = System.nanoTime() - lastActive[id];
+        if (idle < idleTimeout) {
+            watchIdle(id, idleTimeout - idle);
+            return;
+        }
+        System.out.println("Disconnecting " + player.getName() + " from match " + this.id + " after "
+                + TimeUnit.NANOSECONDS.toSeconds(idle) + " s without playing");
+        for (ClientHandler client : new ArrayList<>(clients)) {
+            if (player.getName().equals(client.getPlayerName())) {
+                handleDisconnect(client);
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Takes a leaving player out of the match: stops its timers and forgets its position and moves.
+     *
+     * @param name The name of the player.
+     */
+    private void removePlayer(String name) {
+        cancelTimers(name);
+        if (interest != null) {
+            interest.remove(PLAYERS.find(name));
+        }
+        PLAYERS.remove(name);
+        movedPlayers.remove(name);
+    }
+
+    /**
+     * Stops the timers of a player that is leaving.
+     *
+     * @param name The name of the player.
+     */
+    private void cancelTimers(String name) {
+        int id = PLAYERS.find(name);
+        if (id == PlayerIndex.NONE) {
+            return;
+        }
+        cancelCapture(id);
+        if (respawnTimers[id] != null) {
+            respawnTimers[id].cancel();
+            respawnTimers[id] = null;
+        }
+    }
+
+    /**
+     * Makes room in the per-player timer arrays for a new player id.
+     *
+     * @param id The id of the new player.
+     */
+    private void ensureTimerCapacity(int id) {
+        if (id >= holdFlags.length) {
+            int length = Math.max(holdFlags.length * 2, id + 1);
+            holdFlags = Arrays.copyOf(holdFlags, length);
+            holdTimers = Arrays.copyOf(holdTimers, length);
+            respawnTimers = Arrays.copyOf(respawnTimers, length);
+            lastActive = Arrays.copyOf(lastActive, length);
+        }
+    }
+
+    /**
+     * Ends the match if all players have left.
+     * Only this match is torn down; the server keeps running.
+    */
+    private void endMatch() {
+        System.out.println("ending match " + id);
+        if (clientCount == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Tears the match down: removes it from the server and closes the connections still attached to it.
+     */
+    private void close() {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        connections.set(-1);
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+        server.removeMatch(this);
+        for (ClientHandler client : clients) {
+            client.close();
+        }
+        clients.clear();
+    }
+}
@@ -0,0 +1,124 @@
+package sfu.cmpt371.group7.game.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+/**
+ * The maze every match is played in, read from the same {@code map.txt} the game window draws,
+ * so the server can check moves against it.
+ * <p>
+ * The map never changes, so one instance is read when first needed and shared by all matches.
+ * Cells are kept in one array indexed by {@code x * cols + y}, and every check is a single read.
+ */
+final class MazeMap {
+    /** An empty cell. */
+    static final byte EMPTY = 0;
+    /** A wall. */
+    static final byte WALL = 1;
+    /** A cell holding a flag. */
+    static final byte FLAG = 2;
+    /** The home cells of the red team, where red players spawn. */
+    static final byte RED_HOME = 3;
+    /** The home cells of the blue team, where blue players spawn. */
+    static final byte BLUE_HOME = 4;
+
+    private static MazeMap shared;
+
+    private final int rows;
+    private final int cols;
+    private final byte[] cells;
+
+    private MazeMap(int rows, int cols, byte[] cells) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = cells;
+    }
+
+    /**
+     * Gets the game's maze, reading it the first time.
+     *
+     * @return the maze of {@link Match#MAZE_SIZE} rows and columns.
+     */
+    static synchronized MazeMap get() {
+        if (shared == null) {
+            InputStream map = Objects.requireNonNull(MazeMap.class.getResourceAsStream("/sfu/cmpt371/group7/game/map.txt"));
+            try {
+                shared = read(map, Match.MAZE_SIZE, Match.MAZE_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading tile map", e);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Reads a maze written as one line per row of space separated cell values.
+     * Missing or unknown values are read as empty cells.
+     *
+     * @param in The map to read.
+     * @param rows The number of rows, which x counts.
+     * @param cols The number of columns, which y counts.
+     * @return the maze.
+     * @throws IOException if the map cannot be read.
+     */
+    static MazeMap read(InputStream in, int rows, int cols) throws IOException {
+        byte[] cells = new byte[rows * cols];
+        try (BufferedReader tileMap = new BufferedReader(new InputStreamReader(in))) {
+            for (int row = 0; row < rows; row++) {
+                String line = tileMap.readLine();
+                if (line == null) {
+                    break;
+                }
+                char[] tileValues = line.replaceAll(" ", "").toCharArray();
+                for (int col = 0; col < cols && col < tileValues.length; col++) {
+                    if (tileValues[col] >= '1' && tileValues[col] <= '4') {
+                        cells[row * cols + col] = (byte) (tileValues[col] - '0');
+                    }
+                }
+            }
+        }
+        return new MazeMap(rows, cols, cells);
+    }
+
+    /**
+     * Checks whether a position is inside the maze.
+     *
+     * @param x The x-co-ord of the position.
+     * @param y The y-co-ord of the position.
+     * @return true if the position is on the map.
+     */
+    boolean contains(int x, int y) {
+        return x >= 0 && x < rows && y >= 0 && y < cols;
+    }
+
+    /**
+     * Gets what is on a cell.
+     *
+     * @param x The x-co-ord of the cell, inside the maze.
+     * @param y The y-co-ord of the cell, inside the maze.
+     * @return one of {@link #EMPTY}, {@link #WALL}, {@link #FLAG}, {@link #RED_HOME} and {@link #BLUE_HOME}.
+     */
+    byte cell(int x, int y) {
+        return cells[x * cols + y];
+    }
+
+    /**
+     * Checks whether a player may walk onto a cell, which is the case for empty cells and flags.
+     * Homes are only left, never entered.
+     *
+     * @param x The x-co-ord of the cell.
+     * @param y The y-co-ord of the cell.
+     * @return true if the cell is in the maze and open.
+     */
+    boolean isOpen(int x, int y) {
+        if (!contains(x, y)) {
+            return false;
+        }
+        byte cell = cells[x * cols + y];
+        return cell == EMPTY || cell == FLAG;
+    }
+}
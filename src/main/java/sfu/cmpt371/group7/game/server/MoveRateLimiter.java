@@ -0,0 +1,66 @@
+package sfu.cmpt371.group7.game.server;
+
+import java.util.Arrays;
+
+/**
+ * Limits how fast each player of a match may move, as a token bucket per player.
+ * <p>
+ * A player may move {@code rate} times per second on average, and up to {@code rate} times in a
+ * burst after standing still for a second. Each bucket is kept as a single time, the earliest time
+ * the bucket is full again (the generic cell rate algorithm), so a check is a few arithmetic
+ * operations and there is nothing to refill in the background. Buckets are indexed by the
+ * player ids of the match's {@link PlayerIndex}.
+ * <p>
+ * Only used by the match's command loop, so nothing is synchronized.
+ */
+class MoveRateLimiter {
+    /** Marks a player that has not moved yet, whose bucket is full. */
+    private static final long NEVER = Long.MIN_VALUE;
+    /** Nanoseconds one move takes out of the bucket, or 0 when moves are not limited. */
+    private final long interval;
+    /** How far ahead of the current time a bucket may be full again: the burst less one move. */
+    private final long tolerance;
+    /** By player id, when the player's bucket is full again, or {@link #NEVER}. */
+    private long[] fullAt = newBuckets(16);
+
+    /**
+     * Constructs a limiter.
+     *
+     * @param rate Moves each player may make per second, or 0 for no limit.
+     */
+    MoveRateLimiter(int rate) {
+        this.interval = rate > 0 ? 1_000_000_000L / rate : 0;
+        this.tolerance = rate > 0 ? (rate - 1) * interval : 0;
+    }
+
+    private static long[] newBuckets(int length) {
+        long[] buckets = new long[length];
+        Arrays.fill(buckets, NEVER);
+        return buckets;
+    }
+
+    /**
+     * Takes a move out of a player's bucket, if there is one left.
+     *
+     * @param id The player's id in the match's index.
+     * @param now The current time from {@link System#nanoTime()}.
+     * @return false if the player is moving too fast, in which case nothing is taken.
+     */
+    boolean tryMove(int id, long now) {
+        if (interval == 0) {
+            return true;
+        }
+        if (id >= fullAt.length) {
+            long[] grown = newBuckets(Math.max(fullAt.length * 2, id + 1));
+            System.arraycopy(fullAt, 0, grown, 0, fullAt.length);
+            fullAt = grown;
+        }
+        // A bucket that is already full counts from now; times are compared by difference, as nanoTime may wrap
+        long start = fullAt[id] == NEVER || fullAt[id] - now < 0 ? now : fullAt[id];
+        if (start - now > tolerance) {
+            return false;
+        }
+        fullAt[id] = start + interval;
+        return true;
+    }
+}
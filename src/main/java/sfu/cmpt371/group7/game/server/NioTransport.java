@@ -0,0 +1,413 @@
+package sfu.cmpt371.group7.game.server;
+
+import sfu.cmpt371.group7.game.protocol.BinaryCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking transport for the {@link Server}.
+ * <p>
+ * One acceptor thread hands new connections round-robin to a fixed set of I/O loops.
+ * Each loop owns a {@link Selector}, reads newline terminated messages from its clients
+ * and passes them to the same message handlers used by the blocking transport.
+ * Outbound messages may be sent from any thread; they are put on the connection's
+ * {@link OutboundQueue}, and encoded and written by the loop that owns it once the connection is flushed,
+ * many messages to a gathering write. Keys and channels are only cancelled and
+ * closed by the loop that owns them, so a connection closed from another thread cannot
+ * invalidate a key while its loop is using it.
+ */
+class NioTransport {
+    private static final int READ_BUFFER_SIZE = 4096;
+    /** Encoded messages handed to the socket in one gathering write. */
+    private static final int MAX_GATHER = 64;
+
+    private final Server server;
+    private final int port;
+    private final IoLoop[] loops;
+
+    /**
+     * Constructs the transport.
+     *
+     * @param server The server whose handlers receive the messages.
+     * @param port The port to listen on.
+     * @param ioThreads The number of I/O loops to run.
+     */
+    NioTransport(Server server, int port, int ioThreads) {
+        this.server = server;
+        this.port = port;
+        this.loops = new IoLoop[ioThreads];
+    }
+
+    /**
+     * Starts the I/O loops and accepts connections on the calling thread until the server socket fails.
+     *
+     * @throws IOException If the server socket cannot be opened.
+     */
+    void run() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop();
+            Thread thread = new Thread(loops[i], "nio-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port), Server.ACCEPT_BACKLOG);
+            System.out.println("Server listening on port " + port + " with " + loops.length + " NIO threads");
+
+            int next = 0;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                System.out.println("New client connected: " + channel.socket().getInetAddress().getHostAddress());
+
+                server.configureSocket(channel.socket());
+                channel.configureBlocking(false);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            }
+        }
+    }
+
+    /**
+     * A single selector thread serving a share of the connections.
+     */
+    private class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+        private final Queue<NioConnection> pendingCloses = new ConcurrentLinkedQueue<>();
+        /** The buffers of the write in progress; only used by this loop. */
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+        IoLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Hands a newly accepted channel to this loop.
+         */
+        void register(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Asks this loop to write the outbound queue of a connection.
+         */
+        void requestWrite(NioConnection connection) {
+            pendingWrites.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Asks this loop to cancel the key and close the channel of a connection.
+         */
+        void requestClose(NioConnection connection) {
+            pendingCloses.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    closePendingConnections();
+                    registerPendingChannels();
+                    flushPendingWrites();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        try {
+                            if (!key.isValid() || connection.isClosed()) {
+                                continue;
+                            }
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && !connection.isClosed() && key.isWritable()) {
+                                connection.write();
+                            }
+                        } catch (CancelledKeyException e) {
+                            // Only this connection is affected; the others on the loop carry on
+                            connection.disconnect();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("NIO loop error: " + e.getMessage());
+                }
+            }
+        }
+
+        private void closePendingConnections() {
+            NioConnection connection;
+            while ((connection = pendingCloses.poll()) != null) {
+                connection.closeChannel();
+            }
+        }
+
+        private void registerPendingChannels() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                try {
+                    NioConnection connection = new NioConnection(this, channel, server.newOutboundQueue(),
+                            server.getOutboundMetrics());
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connection.handler = server.register(connection);
+                } catch (ClosedChannelException e) {
+                    System.err.println("Client closed before registration: " + e.getMessage());
+                }
+            }
+        }
+
+        private void flushPendingWrites() {
+            NioConnection connection;
+            while ((connection = pendingWrites.poll()) != null) {
+                if (!connection.isClosed()) {
+                    connection.write();
+                }
+            }
+        }
+    }
+
+    /**
+     * A client connection served by an {@link IoLoop}.
+     */
+    private static class NioConnection implements ClientConnection {
+        private final IoLoop loop;
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final OutboundQueue outbound;
+        private final OutboundMetrics metrics;
+        /** Encoded messages not fully written yet, oldest first. Only used by the owning loop. */
+        private final ArrayDeque<ByteBuffer> encoded = new ArrayDeque<>();
+        private final AtomicBoolean writeRequested = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        /** Only used by the owning loop. */
+        private BinaryCodec.Encoder encoder;
+        /** Only used by the owning loop. */
+        private BinaryCodec.Decoder decoder;
+        private SelectionKey key;
+        private ClientHandler handler;
+
+        NioConnection(IoLoop loop, SocketChannel channel, OutboundQueue outbound, OutboundMetrics metrics) {
+            this.loop = loop;
+            this.channel = channel;
+            this.outbound = outbound;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void send(String message) {
+            if (closed.get()) {
+                return;
+            }
+            if (!outbound.offer(message)) {
+                System.out.println("Disconnecting a client that fell too far behind");
+                disconnect();
+            }
+        }
+
+        /**
+         * Has the owning loop write the queued messages, unless it is already going to.
+         */
+        @Override
+        public void flush() {
+            if (!closed.get() && outbound.flush() && writeRequested.compareAndSet(false, true)) {
+                loop.requestWrite(this);
+            }
+        }
+
+        /**
+         * Switches to binary frames. Called by the handler while it handles the
+         * handshake, so it runs on the owning loop before any later byte is read.
+         * Messages queued before the switch are encoded as text first.
+         */
+        @Override
+        public void useBinaryProtocol() {
+            String message;
+            while ((message = outbound.poll()) != null) {
+                encoded.add(encode(message));
+            }
+            encoder = new BinaryCodec.Encoder();
+            decoder = new BinaryCodec.Decoder();
+        }
+
+        /**
+         * Encodes a message in the protocol currently used for writing.
+         */
+        private ByteBuffer encode(String message) {
+            return ByteBuffer.wrap(encoder == null
+                    ? (message + "\n").getBytes(StandardCharsets.UTF_8)
+                    : encoder.encode(message));
+        }
+
+        /**
+         * Reads whatever is available and dispatches every complete message.
+         * Only called from the owning loop.
+         */
+        void read() {
+            int count;
+            try {
+                count = channel.read(readBuffer);
+            } catch (IOException e) {
+                System.err.println("Error in client handler: " + e.getMessage());
+                count = -1;
+            }
+            if (count < 0) {
+                disconnect();
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                String message;
+                try {
+                    message = decoder != null ? decoder.decode(readBuffer) : nextLine();
+                } catch (IOException e) {
+                    System.err.println("Error in client handler: " + e.getMessage());
+                    disconnect();
+                    return;
+                }
+                if (message == null) {
+                    continue;
+                }
+                try {
+                    handler.handleMessage(message);
+                } catch (RuntimeException e) {
+                    // Same outcome as an exception escaping a blocking client thread
+                    System.err.println("Error in client handler: " + e.getMessage());
+                    disconnect();
+                    return;
+                }
+            }
+            readBuffer.clear();
+        }
+
+        /**
+         * Consumes bytes from the read buffer up to the end of the current line.
+         *
+         * @return the line, or {@code null} if the buffer ran out before its end.
+         */
+        private String nextLine() {
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    String message = line.toString(StandardCharsets.UTF_8);
+                    line.reset();
+                    return message.endsWith("\r") ? message.substring(0, message.length() - 1) : message;
+                }
+                line.write(b);
+            }
+            return null;
+        }
+
+        /**
+         * Writes as much of the outbound queue as the socket accepts, and waits
+         * for the channel to become writable again if anything is left.
+         * Up to {@link #MAX_GATHER} messages are encoded at a time and handed to the socket
+         * in a single gathering write, while those still queued can be coalesced.
+         * Only called from the owning loop.
+         */
+        void write() {
+            writeRequested.set(false);
+            if (closed.get() || !key.isValid()) {
+                return;
+            }
+            ByteBuffer[] gather = loop.gather;
+            try {
+                while (true) {
+                    String message;
+                    while (encoded.size() < MAX_GATHER && (message = outbound.poll()) != null) {
+                        encoded.add(encode(message));
+                    }
+                    if (encoded.isEmpty()) {
+                        break;
+                    }
+                    int count = 0;
+                    for (ByteBuffer buffer : encoded) {
+                        gather[count++] = buffer;
+                        if (count == MAX_GATHER) {
+                            break;
+                        }
+                    }
+                    channel.write(gather, 0, count);
+                    Arrays.fill(gather, 0, count, null);
+                    int written = 0;
+                    while (!encoded.isEmpty() && !encoded.peek().hasRemaining()) {
+                        encoded.poll();
+                        written++;
+                    }
+                    metrics.written(written);
+                    if (!encoded.isEmpty()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                key.interestOps(SelectionKey.OP_READ);
+            } catch (IOException e) {
+                System.err.println("Error writing to client: " + e.getMessage());
+                disconnect();
+            }
+        }
+
+        private void disconnect() {
+            if (!closed.get()) {
+                handler.handleDisconnect();
+            }
+            close();
+        }
+
+        /**
+         * Checks whether the connection has been closed, so the loop stops serving it.
+         * @return true once {@link #close()} has been called
+         */
+        boolean isClosed() {
+            return closed.get();
+        }
+
+        /**
+         * Stops sending to the client and has the owning loop close the connection.
+         * May be called from any thread, such as another loop handling a message that ends the game.
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                outbound.close();
+                loop.requestClose(this);
+            }
+        }
+
+        /**
+         * Cancels the key and closes the channel. Only called from the owning loop.
+         */
+        private void closeChannel() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing client connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package sfu.cmpt371.group7.game.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by the {@link OutboundQueue}s of all clients of a {@link Server}.
+ * Any thread may update and read them.
+ */
+class OutboundMetrics {
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicInteger deepest = new AtomicInteger();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * Counts messages added to or taken from a queue.
+     *
+     * @param delta The change in the number of queued messages.
+     * @param depth The number of messages in the queue after the change.
+     */
+    void queued(int delta, int depth) {
+        queued.addAndGet(delta);
+        deepest.accumulateAndGet(depth, Math::max);
+    }
+
+    /**
+     * Counts a position update dropped because a newer one for the same player was queued.
+     */
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    /**
+     * Counts a client disconnected because its queue was full.
+     */
+    void evicted() {
+        evicted.increment();
+    }
+
+    /**
+     * Counts one write to a client's socket.
+     *
+     * @param messages The number of messages the write completed.
+     */
+    void written(int messages) {
+        writes.increment();
+        written.add(messages);
+    }
+
+    /**
+     * Gets the number of messages waiting in all queues.
+     * @return the number of queued messages
+     */
+    long getQueuedMessages() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the depth of the deepest queue since the last call, and starts over.
+     * @return the largest number of messages one queue held
+     */
+    int takeDeepestQueue() {
+        return deepest.getAndSet(0);
+    }
+
+    /**
+     * Gets the number of position updates dropped in favour of newer ones.
+     * @return the number of coalesced messages
+     */
+    long getCoalescedMessages() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Gets the number of clients disconnected for falling behind.
+     * @return the number of evicted clients
+     */
+    long getEvictedClients() {
+        return evicted.sum();
+    }
+
+    /**
+     * Gets the number of writes to client sockets.
+     * @return the number of writes
+     */
+    long getWrites() {
+        return writes.sum();
+    }
+
+    /**
+     * Gets the number of messages written to client sockets.
+     * @return the number of written messages
+     */
+    long getWrittenMessages() {
+        return written.sum();
+    }
+
+    @Override
+    public String toString() {
+        long writeCount = getWrites();
+        long messageCount = getWrittenMessages();
+        String perWrite = writeCount == 0 ? "0" : String.format("%.1f", (double) messageCount / writeCount);
+        return "Outbound queues: " + getQueuedMessages() + " messages queued, deepest " + takeDeepestQueue()
+                + ", " + getCoalescedMessages() + " moves coalesced, " + getEvictedClients() + " clients evicted, "
+                + messageCount + " messages in " + writeCount + " writes (" + perWrite + " per write)";
+    }
+}
@@ -0,0 +1,293 @@
+package sfu.cmpt371.group7.game.server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The messages waiting to be written to one client, so that sending to a client never
+ * waits for its socket. Any thread may add messages; one writer takes them.
+ * <p>
+ * A client that reads slower than it is sent to falls behind. Once its queue holds
+ * {@code coalesceDepth} messages, a new {@code movePlayer} replaces any older queued move of
+ * the same player, since only the latest position matters. Likewise, a new {@code movePlayers} batch,
+ * sent once per tick, replaces every older queued batch whose players it all has. A batch that
+ * has some player the new one lacks is kept, as that player's position would otherwise be lost.
+ * A queue that is still full after that
+ * refuses the message, and the connection then disconnects the client.
+ * <p>
+ * Adding a message does not wake the writer. The sender calls {@link #flush()} once it has
+ * added everything that belongs together, such as all messages of one command loop run, and the
+ * writer then writes them in one go.
+ */
+class OutboundQueue {
+    private static final String MOVE_PREFIX = "movePlayer ";
+    private static final String BATCH_PREFIX = "movePlayers ";
+
+    private final ArrayDeque<String> messages = new ArrayDeque<>();
+    /** A lock rather than synchronized so virtual writer threads are not pinned while waiting. */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final int capacity;
+    private final int coalesceDepth;
+    private final OutboundMetrics metrics;
+    /** Whether the messages queued so far should be written; cleared when the writer starts on them. */
+    private boolean flushRequested;
+    private boolean closed;
+
+    /**
+     * Constructs an empty queue.
+     *
+     * @param capacity The number of messages the queue holds before refusing more.
+     * @param coalesceDepth The number of queued messages from which moves are coalesced.
+     * @param metrics The counters to update.
+     */
+    OutboundQueue(int capacity, int coalesceDepth, OutboundMetrics metrics) {
+        this.capacity = capacity;
+        this.coalesceDepth = coalesceDepth;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds a message to the end of the queue. It is written after the next {@link #flush()}.
+     *
+     * @param message The message to write.
+     * @return false if the queue is full, in which case the queue closes and the client should be disconnected.
+     */
+    boolean offer(String message) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (messages.size() >= coalesceDepth) {
+                int removed = removeSuperseded(message);
+                for (int i = 0; i < removed; i++) {
+                    metrics.coalesced();
+                }
+                if (removed > 0) {
+                    metrics.queued(-removed, messages.size());
+                }
+            }
+            if (messages.size() >= capacity) {
+                metrics.evicted();
+                closeLocked();
+                return false;
+            }
+            messages.add(message);
+            metrics.queued(1, messages.size());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the queued moves a new message makes out of date.
+     *
+     * @param message The new message.
+     * @return the number of messages removed.
+     */
+    private int removeSuperseded(String message) {
+        if (message.startsWith(BATCH_PREFIX)) {
+            return removeOlderBatches(message);
+        }
+        return removeOlderMove(message) ? 1 : 0;
+    }
+
+    /**
+     * Removes the oldest queued move of the player a new move is for.
+     *
+     * @param message The new message.
+     * @return true if a move was removed.
+     */
+    private boolean removeOlderMove(String message) {
+        if (!message.startsWith(MOVE_PREFIX)) {
+            return false;
+        }
+        // movePlayer <name> <x> <y>: compare up to and including the space after the name
+        int nameEnd = message.indexOf(' ', MOVE_PREFIX.length());
+        if (nameEnd < 0) {
+            return false;
+        }
+        Iterator<String> queued = messages.iterator();
+        while (queued.hasNext()) {
+            if (queued.next().regionMatches(0, message, 0, nameEnd + 1)) {
+                queued.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes every queued batch whose players are all in a new batch, which has their latest positions.
+     *
+     * @param batch The new {@code movePlayers} message.
+     * @return the number of batches removed.
+     */
+    private int removeOlderBatches(String batch) {
+        int removed = 0;
+        Iterator<String> queued = messages.iterator();
+        while (queued.hasNext()) {
+            String older = queued.next();
+            if (older.startsWith(BATCH_PREFIX) && hasAllPlayers(batch, older)) {
+                queued.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Checks whether a batch has every player that another batch has.
+     *
+     * @param batch The batch to look in.
+     * @param older The batch whose players to look for.
+     * @return true if every player of {@code older} is in {@code batch}.
+     */
+    private static boolean hasAllPlayers(String batch, String older) {
+        // movePlayers <name> <x> <y> [<name> <x> <y> ...]
+        int start = BATCH_PREFIX.length();
+        while (start < older.length()) {
+            int nameEnd = older.indexOf(' ', start);
+            if (nameEnd < 0 || !hasPlayer(batch, older, start, nameEnd)) {
+                return false;
+            }
+            start = nextName(older, nameEnd);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a batch has a player.
+     *
+     * @param batch The batch to look in.
+     * @param names The message holding the player's name.
+     * @param start The index of the name in {@code names}.
+     * @param end The index just past the name in {@code names}.
+     * @return true if the batch has a move of the player.
+     */
+    private static boolean hasPlayer(String batch, String names, int start, int end) {
+        int length = end - start;
+        int nameStart = BATCH_PREFIX.length();
+        while (nameStart < batch.length()) {
+            int nameEnd = batch.indexOf(' ', nameStart);
+            if (nameEnd < 0) {
+                return false;
+            }
+            if (nameEnd - nameStart == length && batch.regionMatches(nameStart, names, start, length)) {
+                return true;
+            }
+            nameStart = nextName(batch, nameEnd);
+        }
+        return false;
+    }
+
+    /**
+     * Finds the next player's name in a batch, past the co-ordinates that follow a name.
+     *
+     * @param batch The {@code movePlayers} message.
+     * @param nameEnd The index of the space after the current name.
+     * @return the index of the next name, or the length of the batch if there is none.
+     */
+    private static int nextName(String batch, int nameEnd) {
+        int xEnd = batch.indexOf(' ', nameEnd + 1);
+        int yEnd = xEnd < 0 ? -1 : batch.indexOf(' ', xEnd + 1);
+        return yEnd < 0 ? batch.length() : yEnd + 1;
+    }
+
+    /**
+     * Takes the oldest message without waiting.
+     *
+     * @return the message, or {@code null} if the queue is empty.
+     */
+    String poll() {
+        lock.lock();
+        try {
+            String message = messages.poll();
+            if (message != null) {
+                metrics.queued(-1, messages.size());
+            }
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Asks the writer to write every message queued so far.
+     *
+     * @return true if there is anything to write, so a writer that is not waiting should be woken.
+     */
+    boolean flush() {
+        lock.lock();
+        try {
+            if (closed || messages.isEmpty()) {
+                return false;
+            }
+            flushRequested = true;
+            flushed.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a flush was asked for and there is a message to write, or the queue is closed.
+     * The writer should then {@link #poll()} until the queue is empty.
+     *
+     * @return false once the queue is closed.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    boolean awaitFlush() throws InterruptedException {
+        lock.lock();
+        try {
+            while ((!flushRequested || messages.isEmpty()) && !closed) {
+                flushed.await();
+            }
+            flushRequested = false;
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of messages waiting.
+     * @return the queue depth
+     */
+    int size() {
+        lock.lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every waiting message and wakes the writer so it can stop.
+     * Messages offered afterwards are ignored.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeLocked() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        metrics.queued(-messages.size(), 0);
+        messages.clear();
+        flushed.signalAll();
+    }
+}
@@ -0,0 +1,346 @@
+package sfu.cmpt371.group7.game.server;
+
+import sfu.cmpt371.group7.game.model.Player;
+import sfu.cmpt371.group7.game.protocol.MessageTokenizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The players of a {@link Match}, indexed so that handling a message takes the same time
+ * whether the match has four players or thousands.
+ * <p>
+ * Every player gets a numeric id when it is added, and ids are not reused within the index,
+ * so iterating visits the players in the order they joined. Players are found by name through an
+ * open addressing hash table of ids, which can also be probed with a name read from a message
+ * without creating a string. Positions are kept in an occupancy grid of the maze: each cell holds
+ * a linked list of the ids standing on it. Positions outside the maze, which only a misbehaving
+ * client sends, share one extra list that is searched by coordinates.
+ * <p>
+ * Only used by the match's command loop, so nothing is synchronized. A player's position must
+ * only be changed with {@link #move(int, int, int)}, or the grid no longer matches it.
+ */
+class PlayerIndex implements Iterable<Player> {
+    /** Returned when there is no such player; also marks the end of a cell's list and an empty slot of the name table. */
+    static final int NONE = -1;
+
+    private final int rows;
+    private final int cols;
+    /** Players by id; {@code null} once removed. */
+    private Player[] players = new Player[16];
+    /** Ids handed out so far, so also the next id. */
+    private int nextId;
+    private int size;
+    /** Ids by the hash of their player's name, with linear probing. Kept at most half full. */
+    private int[] nameTable = newTable(32);
+    /** The first id on each cell; the last entry is for positions outside the maze. */
+    private final int[] cellHead;
+    /** The next and previous ids on the same cell, by id. */
+    private int[] nextInCell = new int[16];
+    private int[] previousInCell = new int[16];
+
+    /**
+     * Constructs an empty index for a maze of the given size.
+     *
+     * @param rows The number of rows, which x counts.
+     * @param cols The number of columns, which y counts.
+     */
+    PlayerIndex(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cellHead = new int[rows * cols + 1];
+        Arrays.fill(cellHead, NONE);
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, NONE);
+        return table;
+    }
+
+    /**
+     * Adds a player at its current position, unless a player with the same name is already in the index.
+     *
+     * @param player The player to add.
+     * @return the id of the player, or {@link #NONE} if the name is taken.
+     */
+    int add(Player player) {
+        if (find(player.getName()) != NONE) {
+            return NONE;
+        }
+        int id = nextId++;
+        if (id == players.length) {
+            players = Arrays.copyOf(players, id * 2);
+            nextInCell = Arrays.copyOf(nextInCell, id * 2);
+            previousInCell = Arrays.copyOf(previousInCell, id * 2);
+        }
+        players[id] = player;
+        size++;
+        if (size * 2 > nameTable.length) {
+            rehash(nameTable.length * 2);
+        } else {
+            insertName(id);
+        }
+        link(id, cell(player.getX(), player.getY()));
+        return id;
+    }
+
+    /**
+     * Removes the player with the given name.
+     *
+     * @param name The name of the player.
+     * @return the removed player, or {@code null} if there was none.
+     */
+    Player remove(String name) {
+        int id = find(name);
+        if (id == NONE) {
+            return null;
+        }
+        Player player = players[id];
+        unlink(id, cell(player.getX(), player.getY()));
+        removeName(id);
+        players[id] = null;
+        size--;
+        return player;
+    }
+
+    /**
+     * Gets a player by id.
+     *
+     * @param id The id handed out when the player was added.
+     * @return the player, or {@code null} if it has been removed.
+     */
+    Player get(int id) {
+        return players[id];
+    }
+
+    /**
+     * Gets a player by name.
+     *
+     * @param name The name of the player.
+     * @return the player, or {@code null} if there is none with that name.
+     */
+    Player get(String name) {
+        int id = find(name);
+        return id == NONE ? null : players[id];
+    }
+
+    /**
+     * Finds the id of the player with the given name.
+     *
+     * @param name The name of the player.
+     * @return the id, or {@link #NONE} if there is no player with that name.
+     */
+    int find(String name) {
+        int mask = nameTable.length - 1;
+        for (int slot = spread(name.hashCode()) & mask; nameTable[slot] != NONE; slot = (slot + 1) & mask) {
+            if (players[nameTable[slot]].getName().equals(name)) {
+                return nameTable[slot];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Finds the id of the player named by the current field of a message, without creating a string.
+     *
+     * @param tokens The tokenizer positioned on the player name.
+     * @return the id, or {@link #NONE} if there is no player with that name.
+     */
+    int find(MessageTokenizer tokens) {
+        int mask = nameTable.length - 1;
+        for (int slot = spread(tokens.tokenHash()) & mask; nameTable[slot] != NONE; slot = (slot + 1) & mask) {
+            if (tokens.tokenEquals(players[nameTable[slot]].getName())) {
+                return nameTable[slot];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Moves a player and updates the grid.
+     *
+     * @param id The id of the player.
+     * @param x The new x-co-ord.
+     * @param y The new y-co-ord.
+     */
+    void move(int id, int x, int y) {
+        Player player = players[id];
+        int from = cell(player.getX(), player.getY());
+        int to = cell(x, y);
+        player.setX(x);
+        player.setY(y);
+        if (from != to) {
+            unlink(id, from);
+            link(id, to);
+        }
+    }
+
+    /**
+     * Checks whether any player stands on a position.
+     *
+     * @param x The x-co-ord of the position.
+     * @param y The y-co-ord of the position.
+     * @return true if no player is there.
+     */
+    boolean isFree(int x, int y) {
+        for (int id = cellHead[cell(x, y)]; id != NONE; id = nextInCell[id]) {
+            if (players[id].getX() == x && players[id].getY() == y) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the players standing on a position.
+     *
+     * @param x The x-co-ord of the position.
+     * @param y The y-co-ord of the position.
+     * @return the players there, which may be moved while going through the list.
+     */
+    List<Player> playersAt(int x, int y) {
+        List<Player> found = new ArrayList<>(2);
+        for (int id = cellHead[cell(x, y)]; id != NONE; id = nextInCell[id]) {
+            if (players[id].getX() == x && players[id].getY() == y) {
+                found.add(players[id]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the number of players.
+     * @return the number of players in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of ids handed out, so every id is below it; removed players' ids are included.
+     * @return the next id
+     */
+    int idCount() {
+        return nextId;
+    }
+
+    /**
+     * Iterates over the players in the order they were added.
+     */
+    @Override
+    public Iterator<Player> iterator() {
+        return new Iterator<>() {
+            private int id = skipRemoved(0);
+
+            @Override
+            public boolean hasNext() {
+                return id < nextId;
+            }
+
+            @Override
+            public Player next() {
+                if (id >= nextId) {
+                    throw new NoSuchElementException();
+                }
+                Player player = players[id];
+                id = skipRemoved(id + 1);
+                return player;
+            }
+        };
+    }
+
+    private int skipRemoved(int id) {
+        while (id < nextId && players[id] == null) {
+            id++;
+        }
+        return id;
+    }
+
+    /**
+     * Gets the grid cell of a position, or the extra cell for positions outside the maze.
+     */
+    private int cell(int x, int y) {
+        if (x < 0 || x >= rows || y < 0 || y >= cols) {
+            return rows * cols;
+        }
+        return x * cols + y;
+    }
+
+    private void link(int id, int cell) {
+        int head = cellHead[cell];
+        nextInCell[id] = head;
+        previousInCell[id] = NONE;
+        if (head != NONE) {
+            previousInCell[head] = id;
+        }
+        cellHead[cell] = id;
+    }
+
+    private void unlink(int id, int cell) {
+        int next = nextInCell[id];
+        int previous = previousInCell[id];
+        if (previous == NONE) {
+            cellHead[cell] = next;
+        } else {
+            nextInCell[previous] = next;
+        }
+        if (next != NONE) {
+            previousInCell[next] = previous;
+        }
+    }
+
+    /**
+     * Scrambles a hash code before its low bits pick the slot. Names that only differ in a number,
+     * such as those of the load generator's bots, have consecutive hash codes, which would otherwise
+     * fill runs of neighbouring slots and make linear probing walk them.
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void insertName(int id) {
+        int mask = nameTable.length - 1;
+        int slot = spread(players[id].getName().hashCode()) & mask;
+        while (nameTable[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        nameTable[slot] = id;
+    }
+
+    /**
+     * Removes an id from the name table, moving later ids of the same probe run back
+     * so every remaining id can still be reached from its home slot.
+     */
+    private void removeName(int id) {
+        int mask = nameTable.length - 1;
+        int slot = spread(players[id].getName().hashCode()) & mask;
+        while (nameTable[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        int hole = slot;
+        for (slot = (hole + 1) & mask; nameTable[slot] != NONE; slot = (slot + 1) & mask) {
+            int home = spread(players[nameTable[slot]].getName().hashCode()) & mask;
+            // Move the id into the hole unless its home lies cyclically after the hole, up to the id's slot
+            boolean homeAfterHole = hole <= slot ? home > hole && home <= slot : home > hole || home <= slot;
+            if (!homeAfterHole) {
+                nameTable[hole] = nameTable[slot];
+                hole = slot;
+            }
+        }
+        nameTable[hole] = NONE;
+    }
+
+    private void rehash(int capacity) {
+        nameTable = newTable(capacity);
+        for (int id = 0; id < nextId; id++) {
+            if (players[id] != null) {
+                insertName(id);
+            }
+        }
+    }
+}
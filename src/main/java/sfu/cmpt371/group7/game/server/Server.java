@@ -1,70 +1,126 @@
 package sfu.cmpt371.group7.game.server;
 
-import sfu.cmpt371.group7.game.model.Flag;
-import sfu.cmpt371.group7.game.model.Player;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
-
-import static java.lang.System.exit;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The {@code Server} class handles multiplayer game server logic.
- * It manages client connections, game initializations, player communication and the win conditions.
- * It supports up to four players and deals with game events, for example,
+ * It manages client connections and hosts any number of independent {@link Match}es,
+ * each supporting up to four players. The matches deal with game events, for example,
  * player movement, selecting teams, handling the flags and respawning the players.
- * Communication is done over sockets using the TCP protocol.
+ * Communication is done over sockets using the TCP protocol, except that clients may
+ * have their snapshots sent over UDP through the server's {@link UdpChannel}.
+ * <p>
+ * Matches opened by matchmaking are numbered. A client may also open a match by joining an id
+ * that does not exist yet, as long as the id is not a number, so it can never clash with a
+ * numbered match, and the server has fewer than {@code SERVER_MAX_MATCHES} matches.
  */
 public class Server {
-    private static final int NUM_PLAYERS = 4;
-    private static final int PORT = 65000;
-    private final List<ClientHandler> clients = new ArrayList<>();
-    private int clientCount = 0;
-    private boolean gameStarted = false;
-    private final List<Player> PLAYERS = new ArrayList<>();
-    private final List<Flag> flags = new ArrayList<>();
-    private int redFlagCount = 0;
-    private int blueFlagCount = 0;
-    private int redTeamCount = 0;
-    private int blueTeamCount = 0;
-
-    private final int RED_1_X = 2;
-    private final int RED_1_Y = 0;
+    /** Pending connections the OS queues before they are accepted, enough for a burst of thousands of clients. */
+    static final int ACCEPT_BACKLOG = 1024;
+    private final ServerConfig config;
+    private final Map<String, Match> matches = new ConcurrentHashMap<>();
+    /** Runs the command loops of all matches; each match uses at most one of these threads at a time. */
+    private final Executor matchExecutor;
+    /** Triggers the ticks of all matches when a tick rate is configured. */
+    private final ScheduledExecutorService ticker;
+    /** Runs the per-player timers of all matches: capture holds, respawn delays and idle timeouts. */
+    private final TimerWheel timers = new TimerWheel("timers", 10, TimeUnit.MILLISECONDS, 512);
+    private final AtomicInteger nextMatchId = new AtomicInteger(1);
+    /** Counters of the outbound queues of all clients. */
+    private final OutboundMetrics outboundMetrics = new OutboundMetrics();
+    private Match openMatch;
+    /** Carries snapshots over UDP, or {@code null} when no UDP port is configured. */
+    private volatile UdpChannel udpChannel;
 
-    private final int RED_2_X = 17;
-    private final int RED_2_Y = 0;
-
-    private final int BLUE_1_X = 2;
-    private final int BLUE_1_Y = 19;
+    public Server() {
+        this(ServerConfig.load());
+    }
 
-    private final int BLUE_2_X = 17;
-    private final int BLUE_2_Y = 19;
+    /**
+     * Constructs a server with the given configuration.
+     *
+     * @param config The settings to run the server with.
+     */
+    public Server(ServerConfig config) {
+        this(config, Executors.newFixedThreadPool(config.getMatchThreads(),
+                Thread.ofPlatform().name("match-", 0).daemon().factory()));
+    }
 
-    public Server() {
-        System.out.println("Server starting on port " + PORT);
+    /**
+     * Constructs a server whose matches run their command loops on the given executor.
+     * Benchmarks pass an executor that runs each command loop on the calling thread,
+     * so a message is fully handled when {@link ClientHandler#handleMessage(String)} returns.
+     *
+     * @param config The settings to run the server with.
+     * @param matchExecutor The threads that run the command loops of all matches.
+     */
+    Server(ServerConfig config, Executor matchExecutor) {
+        this.config = config;
+        this.matchExecutor = matchExecutor;
+        this.ticker = config.getTickRate() > 0
+                ? Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("ticker").daemon().factory())
+                : null;
+        System.out.println("Server starting on port " + config.getPort() + " using " + config.getTransportMode() + " transport");
+        if (config.getMetricsInterval() > 0) {
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("metrics").daemon().factory())
+                    .scheduleAtFixedRate(() -> System.out.println(outboundMetrics),
+                            config.getMetricsInterval(), config.getMetricsInterval(), TimeUnit.SECONDS);
+        }
     }
 
     /**
      * Starts the server and listens for client connections on a specified port.
-     * For each connection, a new {@code ClientHandler} thread is initiated.
+     * Connections are served by the transport selected in the {@link ServerConfig}.
      */
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Server listening on port " + PORT);
+        if (config.getUdpPort() > 0) {
+            try {
+                openUdpChannel(config.getUdpPort());
+                System.out.println("Server sending snapshots on UDP port " + config.getUdpPort());
+            } catch (IOException e) {
+                System.err.println("Error opening UDP port " + config.getUdpPort() + ", sending everything over TCP: " + e.getMessage());
+            }
+        }
+        if (config.getTransportMode() == TransportMode.NIO) {
+            try {
+                new NioTransport(this, config.getPort(), config.getIoThreads()).run();
+            } catch (IOException e) {
+                System.err.println("Server error: " + e.getMessage());
+            }
+        } else {
+            startBlocking();
+        }
+    }
+
+    /**
+     * Listens for client connections and serves each one on its own thread.
+     * For each connection, a new {@code ClientHandler} thread is initiated,
+     * which is a virtual thread in {@link TransportMode#VIRTUAL} mode.
+     */
+    private void startBlocking() {
+        try (ServerSocket serverSocket = new ServerSocket(config.getPort(), ACCEPT_BACKLOG)) {
+            System.out.println("Server listening on port " + config.getPort());
 
             while (true) {
                 Socket clientSocket = serverSocket.accept();
                 System.out.println("New client connected: " + clientSocket.getInetAddress().getHostAddress());
 
-                ClientHandler client = new ClientHandler(clientSocket);
-                clients.add(client);
-                new Thread(client).start();
+                ClientHandler client = new ClientHandler(this, clientSocket);
+                if (config.getTransportMode() == TransportMode.VIRTUAL) {
+                    Thread.ofVirtual().name("client-" + clientSocket.getPort()).start(client);
+                } else {
+                    new Thread(client).start();
+                }
             }
         } catch (IOException e) {
             System.err.println("Server error: " + e.getMessage());
@@ -72,516 +128,197 @@ public class Server {
     }
 
     /**
-     * Broadcasts a message to all connected clients
-     * @param message The message to be broadcast to all the clients.
+     * Creates the handler for a connection whose input is read by a transport
+     * other than the blocking one. The transport passes every received line to
+     * {@link ClientHandler#handleMessage(String)}.
+     *
+     * @param connection The connection to send messages to the client.
+     * @return the handler for the new client.
      */
-    private void broadcast(String message) {
-        System.out.println("Broadcasting: " + message);
-
-        synchronized (clients) {
-            for (ClientHandler client : clients) {
-                if (client != null) {
-                    client.sendMessage(message);
-                }
-            }
-        }
+    ClientHandler register(ClientConnection connection) {
+        return new ClientHandler(this, connection);
     }
 
     /**
-     * Checks if the game should start based on player count
-     * if the minimum number of players is reached then the
-     * broadcast message is sent to all the players
+     * Gets the settings the server runs with.
+     *
+     * @return the server configuration.
      */
-    private void checkGameStart() {
-        if (!gameStarted && clientCount >= NUM_PLAYERS) {
-            System.out.println("Starting game with " + clientCount + " players");
-            gameStarted = true;
-            broadcast("startGame");
-
-            // Send all players' info to everyone
-            for (Player player : PLAYERS) {
-                broadcast("newPlayer " + player.getTeam() + " " + player.getX() + " " + player.getY() + " " + player.getName());
-            }
-        }
+    ServerConfig getConfig() {
+        return config;
     }
 
     /**
-     * Finds the player object by its name and returns it.
+     * Applies the configured socket options to a new client connection.
+     * Messages are flushed in batches, so Nagle's algorithm is off by default: holding a
+     * batch back for more data would only delay it.
      *
-     * @param name The name of the player to find.
-     * @return The {@code Player} with the matching name, or {@code null} if that name is not found.
+     * @param socket The socket connected to the client.
      */
-    private Player findPlayerByName(String name) {
-        for (Player player : PLAYERS) {
-            if (player.getName().equals(name)) {
-                return player;
+    void configureSocket(Socket socket) {
+        try {
+            socket.setTcpNoDelay(config.isTcpNoDelay());
+            if (config.getSendBufferSize() > 0) {
+                socket.setSendBufferSize(config.getSendBufferSize());
             }
+        } catch (SocketException e) {
+            System.err.println("Error setting socket options: " + e.getMessage());
         }
-        return null;
     }
 
     /**
-     * Finds a flag by its name.
+     * Opens the UDP channel for snapshots and starts reading it.
      *
-     * @param name The name of the flag to find.
-     * @return The {@code Flag} with same name, or {@code null} if it is not found.
+     * @param port The UDP port, or 0 for any free port.
+     * @return the channel.
+     * @throws IOException if the port cannot be bound.
      */
-    private Flag findFlagByName(String name) {
-        for (Flag f : flags) {
-            if (f.getName().equals(name)) {
-                return f;
-            }
-        }
-        return null;
+    UdpChannel openUdpChannel(int port) throws IOException {
+        UdpChannel channel = new UdpChannel(port);
+        channel.start();
+        udpChannel = channel;
+        return channel;
     }
 
     /**
-     * Checks if a team has won by capturing enough number of flags.
-     * Sends terminating message if above condition is fulfilled.
+     * Gets the UDP channel for snapshots.
+     *
+     * @return the channel, or {@code null} if there is none.
      */
-    private void checkWinCondition() {
-        if (redFlagCount >= 4) {
-            broadcast("gameOver red");
-        } else if (blueFlagCount >= 4) {
-            broadcast("gameOver blue");
-        }
+    UdpChannel getUdpChannel() {
+        return udpChannel;
     }
 
     /**
-     * Decides if a specific grid position is unoccupied by any player.
+     * Gets the timing wheel shared by the matches for their per-player timers.
      *
-     * @param x The x-co-ord of particular position
-     * @param y the y-co-ord of particular position
-     * @return {@code true} is particular position is empty, {@code false} otherwise.
-    */
-    private boolean isNoPlayerAtPosition(int x, int y) {
-        for (Player player : PLAYERS) {
-            if (player.getX() == x && player.getY() == y) {
-                return false;
-            }
-        }
-        return true;
+     * @return the timing wheel.
+     */
+    TimerWheel getTimers() {
+        return timers;
     }
 
-
     /**
-     * Handles communication with a single client in a separate thread;
-     * implemented as a Runnable to allow for multi-threading.
-     * Each client has corresponding {@code ClientHandler} instance.
+     * Creates the queue of messages waiting to be written to a new client.
+     *
+     * @return an empty queue with the configured limits.
      */
-    private class ClientHandler implements Runnable {
-        private final Socket socket;
-        private PrintWriter out;
-        private BufferedReader in;
-        private String playerName;
-
-        /**
-         * Constructs {@code ClientHandler} for particular client socket.
-         * @param socket The socket that is connected to client.
-         */
-        public ClientHandler(Socket socket) {
-            this.socket = socket;
-            try {
-                out = new PrintWriter(socket.getOutputStream(), true);
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            } catch (IOException e) {
-                System.err.println("Error setting up client handler: " + e.getMessage());
-            }
-        }
-
-        /**
-         * Sends a message to this specific client.
-         *
-         * @param message The message that needs to be sent.
-         */
-        public void sendMessage(String message) {
-            if (out != null) {
-                out.println(message);
-            }
-        }
-
-        /**
-         * Listens for messages from the client and sends them according to
-         * the type of message. e.g., team selection.
-         */
-        @Override
-        public void run() {
-            try {
-                String message;
-                while ((message = in.readLine()) != null) {
-                    System.out.println("Received: " + message);
-                    String[] parts = message.split(" ");
-                    String messageType = parts.length > 0 ? parts[0] : "";
-
-                    switch (messageType) {
-                        case "teamSelection":
-                            handleTeamSelection(parts);
-                            sendClientToAllPlayers(message);
-                            break;
-                        case "movePlayer":
-                            handleMovePlayer(parts);
-                            break;
-                        case "tellMeTheCurrentPlayers":
-                            handleCurrentPlayers();
-                            break;
-                        case "exitGame":
-                            handleExitGame(parts);
-                            break;
-                        case "flagCoordinates":
-                            handleFlagCoordinates(parts);
-                            break;
-                        case "resendPlayers":
-                            handleResendPlayers();
-                            break;
-                        case "gameOver":
-                            handleGameOver(parts);
-                            break;
-                        case "captureDuration":
-                            handleCaptureDuration(parts);
-                            break;
-                        default:
-                            System.out.println("i dont know what you mean. when you wanna say less but you wanna say no" + messageType);
-                            break;
-                    }
-                }
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Error in client handler: " + e.getMessage());
-            } finally {
-                handleDisconnect();
-            }
-        }
-
-        /**
-         * Respawn a player to their team's designated spawn point.
-         * Notifies all clients of the updated position.
-         *
-         * @param player The player to respawn.
-         */
-        private void respawnPlayer(Player player) {
-            int spawnX = 10, spawnY = 10;
-            if (player.getTeam().equals("red")) {
-                if(isNoPlayerAtPosition(2, 0)) {
-                    System.out.println("spawning at 0,2");
-                    spawnX = RED_1_X;
-                    spawnY = RED_1_Y;
-                } else if(isNoPlayerAtPosition(3, 0)){
-                    System.out.println("spawning at 0,3");
-                    spawnX = RED_2_X;
-                    spawnY = RED_2_Y;
-                }
-            } else {
-                if(isNoPlayerAtPosition(2, 19)) {
-                    System.out.println("spawning at 2,19");
-                    spawnX = BLUE_1_X;
-                    spawnY = BLUE_1_Y;
-                } else if(isNoPlayerAtPosition(3, 19)){
-                    System.out.println("spawning at 3,19");
-                    spawnX = BLUE_2_X;
-                    spawnY = BLUE_2_Y;
-                }
-            }
-
-            // Update player position
-            player.setX(spawnX);
-            player.setY(spawnY);
-
-            // Notify all clients about respawn
-            broadcast("respawnPlayer " + player.getName() + " " + spawnX + " " + spawnY);
-            broadcast("movePlayer " + player.getName() + " " + spawnX + " " + spawnY);
-
-            System.out.println("Respawning player " + player.getName() + " to " + spawnX + "," + spawnY);
-        }
-
-        /**
-         * Handles team selection message sent by the client.
-         * Adds the player to either the red or blue team and broadcasts their position.
-         * Makes sure game starts after player joins.
-         */
-        private void handleTeamSelection(String[] parts) {
-            if (parts.length >= 3) {
-                String team = parts[1];
-                String playerName = parts[2];
-                this.playerName = playerName;
-
-                int x, y;
-                if (team.equals("red")) {
-                    if(redTeamCount== 0){
-                        x = RED_1_X;
-                    }
-                    else{
-                        x = RED_2_X;
-                    }
-                    y = RED_1_Y;
-                    redTeamCount++;
-                } else {
-                    if(blueTeamCount == 0){
-                        x = BLUE_1_X;
-                    }
-                    else{
-                        x = BLUE_2_X;
-                    }
-                    y = BLUE_1_Y;
-                    blueTeamCount++;
-                }
-
-                Player player = new Player(team, x, y, playerName);
-
-                boolean playerExists = false;
-                for (Player p : PLAYERS) {
-                    if (p.getName().equals(playerName)) {
-                        playerExists = true;
-                        break;
-                    }
-                }
-
-                if (!playerExists) {
-                    PLAYERS.add(player);
-                    clientCount++;
-                }
-
-                broadcast("sendingPlayer " + player.getName() + " " + player.getTeam() + " " + player.getX() + " " + player.getY());
-                broadcast("updateCount " + clientCount);
-
-                checkGameStart();
-            }
-        }
-
-        /**
-         * Sends a message to all connected clients except the sender
-         * to notify them that a player has joined a team.
-         *
-         * @param message The message that came which has team and player name.
-         */
-        private void sendClientToAllPlayers(String message) {
-            for (ClientHandler client : clients) {
-                if (client != null && !client.equals(this)) {
-                    String team = message.split(" ")[1];
-                    String playerName = message.split(" ")[2];
-
-                    String info = "showPlayerJoined " + team + " " + playerName;
-                    client.sendMessage(info);
-                }
-            }
-        }
-
-        /**
-         * Handles move player message
-         * first we update the location of the player, and then we check if the player has captured a flag
-         * if then we broadcast the lock flag message to all the players.
-         *
-         * @param parts The message containing player name and new coordinates.
-         * @throws InterruptedException If thread sleep or it gets block.
-         */
-        private void handleMovePlayer(String[] parts) throws InterruptedException {
-
-            if (parts.length >= 4) {
-                String playerName = parts[1];
-                int x = Integer.parseInt(parts[2]);
-                int y = Integer.parseInt(parts[3]);
-
-                updatePlayerPosition(playerName, x, y);
-
-                //checkIfPlayerCapturedFlag(playerName, x, y);
+    OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(config.getOutboundQueueCapacity(), config.getCoalesceDepth(), outboundMetrics);
+    }
 
-                String moveMessage = "movePlayer " + playerName + " " + x + " " + y;
-                broadcast(moveMessage);
-            }
-        }
+    /**
+     * Gets the counters of the outbound queues of all clients.
+     *
+     * @return the outbound queue metrics.
+     */
+    OutboundMetrics getOutboundMetrics() {
+        return outboundMetrics;
+    }
 
-        /**
-         * Updates player position with new coordinates in the server's state
-         *
-         * @param name The name of the player.
-         * @param x The new x-co-ord.
-         * @param y The new y-co-ord.
-         */
-        private void updatePlayerPosition(String name, int x, int y) {
-            for (Player player : PLAYERS) {
-                if (player.getName().equals(name)) {
-                    player.setX(x);
-                    player.setY(y);
-                    break;
-                }
-            }
-        }
+    /**
+     * Gets the match with the given id.
+     *
+     * @param id The id of the match.
+     * @return the match, or {@code null} if there is no match with that id.
+     */
+    Match getMatch(String id) {
+        return matches.get(id);
+    }
 
-        /**
-         * Handles request from the client for current player count.
-         * Only used to get the size of the players and to set the number of players label in the UI
-         */
-        private void handleCurrentPlayers() {
-            sendMessage("sizeOfPlayersIs " + PLAYERS.size());
+    /**
+     * Puts a client that did not ask for a specific match into the match currently
+     * filling up, starting a new one when that match is full or already playing.
+     * The open match may also refuse the connection, because it ended since it was checked
+     * or clients that joined it by id took every connection, and a new one is started then too.
+     *
+     * @param client The client to place.
+     * @return the match the client joined.
+     */
+    synchronized Match assignMatch(ClientHandler client) {
+        while (openMatch == null || !openMatch.hasFreeSeat() || !openMatch.tryJoin()) {
+            Match match;
+            String id;
+            do {
+                id = String.valueOf(nextMatchId.getAndIncrement());
+                match = createMatch(id);
+            } while (matches.putIfAbsent(id, match) != null);
+            openMatch = match;
+            System.out.println("Created match " + id + " (" + matches.size() + " active)");
         }
+        openMatch.takeSeat();
+        openMatch.addClient(client);
+        return openMatch;
+    }
 
-        /**
-         * Handles a request from the client for the current number of plaeyers.
-         * Sends back the number of players currently connected.
-         */
-        private void handleExitGame(String[] parts) {
-            if (parts.length >= 2) {
-                String name = parts[1];
-
-                // Remove player from list
-                PLAYERS.removeIf(p -> p.getName().equals(name));
-
-                clientCount--;
-                if (clientCount < 0) {
-                    System.err.println("Client count is negative. Something went wrong.");
-                    return;
-                }
-
-                broadcast("playerLeft " + name);
-                broadcast("sizeOfPlayersIs " + PLAYERS.size());
-
-                endServer();
+    /**
+     * Puts a client into the match with the given id. A match that does not exist yet is opened,
+     * unless the id is a number, which only matchmaking hands out, or the server has reached
+     * {@code SERVER_MAX_MATCHES}. A match that has ended or is full cannot be joined.
+     *
+     * @param id The id of the match to join.
+     * @param client The client joining.
+     * @return the match the client joined, or {@code null} if it could not join.
+     */
+    synchronized Match joinMatch(String id, ClientHandler client) {
+        Match match = matches.get(id);
+        if (match == null) {
+            if (isNumbered(id)) {
+                System.out.println("Refused to open match " + id + ": numbered matches are opened by matchmaking");
+                return null;
             }
-        }
-
-        /**
-         * Handles flag coordinates message.
-         * Stores the coordinates of all flags sent from the client.
-         */
-        private void handleFlagCoordinates(String[] parts) {
-            //flagCoordinates <flag1.x> <flag1.y> <flag2.x> <flag2.y> <flag3.x> <flag3.y>
-            int NUM_FLAGS = 7;
-            if (parts.length >= NUM_FLAGS * 2 + 1) {
-                try {
-                    for (int i = 0; i < NUM_FLAGS; i++) {
-                        flags.add(new Flag(Integer.parseInt(parts[2 * i + 1]), Integer.parseInt(parts[2 * i + 2]), "flag" + (i + 1)));
-                    }
-                    System.out.println("Flag coordinates set");
-                } catch (Exception e) {
-                    System.err.println("Error parsing flag coordinates: " + e.getMessage());
-                }
+            if (matches.size() >= config.getMaxMatches()) {
+                System.out.println("Refused to open match " + id + ": " + matches.size() + " matches already active");
+                return null;
             }
+            match = createMatch(id);
+            matches.put(id, match);
+            System.out.println("Created match " + id + " (" + matches.size() + " active)");
         }
-
-        /**
-         * Handles resend all current players request and flag data to a client.
-         * Used to get the resend the players in case of an error to get the location of the players
-         */
-        private void handleResendPlayers() {
-            System.out.println("Resending all players to client");
-
-            sendMessage("sizeOfPlayersIs " + PLAYERS.size());
-
-            for (Player player : PLAYERS) {
-                sendMessage("sendingPlayer " + player.getName() + " " + player.getTeam() + " " + player.getX() + " " + player.getY());
-            }
-
-            for (Flag flag : flags) {
-                if (flag != null && flag.isCaptured()) {
-                    sendMessage("lockFlag " + flag.getName());
-                }
-            }
+        if (!match.tryJoin()) {
+            System.out.println("Refused to join match " + id + ": it is full or has ended");
+            return null;
         }
+        match.addClient(client);
+        return match;
+    }
 
-        /**
-         * Handles game over message.
-         * Determines winner based on flag counts and broadcasts the result.
-         */
-        private void handleGameOver(String[] parts) {
-            String winner = parts.length > 1 ? parts[1] : "";
-            if (winner.isEmpty()) {
-                // Determine winner based on flag count
-                if (redFlagCount > blueFlagCount) {
-                    winner = "red";
-                } else if (blueFlagCount > redFlagCount) {
-                    winner = "blue";
-                } else {
-                    winner = "tie";
-                }
-            }
-
-            broadcast("gameOver " + winner);
+    /**
+     * Checks whether an id is in the range matchmaking numbers its matches with.
+     */
+    private static boolean isNumbered(String id) {
+        if (id.isEmpty()) {
+            return false;
         }
-
-        /**
-         * Handles client disconnection
-         * Cleans the client from the server and from the game
-         */
-        private void handleDisconnect() {
-            try {
-                if (playerName != null) {
-                    PLAYERS.removeIf(p -> p.getName().equals(playerName));
-                    clientCount--;
-                    broadcast("playerLeft " + playerName);
-                    broadcast("sizeOfPlayersIs " + clientCount);
-                }
-
-                synchronized (clients) {
-                    clients.remove(this);
-                }
-
-                if (in != null) in.close();
-                if (out != null) out.close();
-                if (socket != null && !socket.isClosed()) socket.close();
-            } catch (IOException e) {
-                System.err.println("Error closing client connection: " + e.getMessage());
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) < '0' || id.charAt(i) > '9') {
+                return false;
             }
         }
+        return true;
+    }
 
-        /**
-         * Handle capture duration message from clients
-         * Checks if duration is within valid range (4.5-5.2 seconds)
-         * If valid, flag is captured and any other players on the flag are respawned
-         * If invalid, the attempting player is respawned.
-         */
-        private void handleCaptureDuration(String[] parts) {
-            // captureDuration <player name> <flag name> <time (sec)>
-            if (parts.length >= 4) {
-                String playerName = parts[1];
-                String flagName = parts[2];
-                double duration = Double.parseDouble(parts[3]);
-
-                Flag flagToCapture = findFlagByName(flagName);
-                Player attemptingPlayer = findPlayerByName(playerName);
-
-                if (flagToCapture != null && attemptingPlayer != null) {
-                    // Check if capture duration is within valid range
-                    double MIN_CAPTURE_DURATION = 3;
-                    double MAX_CAPTURE_DURATION = 4;
-                    if (duration >= MIN_CAPTURE_DURATION && duration <= MAX_CAPTURE_DURATION && !flagToCapture.isCaptured()) {
-                        // Successful capture
-                        flagToCapture.setCaptured(true);
-                        broadcast("flagCaptured " + playerName + " " + flagName);
-
-                        // Update team score
-                        if (attemptingPlayer.getTeam().equals("red")) {
-                            redFlagCount++;
-                        } else {
-                            blueFlagCount++;
-                        }
-
-                        // Check for other players on the same flag position and respawn them
-                        for (Player player : PLAYERS) {
-                            if (!player.getName().equals(playerName) &&
-                                    player.getX() == flagToCapture.getX() &&
-                                    player.getY() == flagToCapture.getY()) {
-
-                                respawnPlayer(player);
-                            }
-                        }
-
-                        // Check if this capture results in a win
-                        checkWinCondition();
-                    } else {
-                        // Failed capture - respawn the player
-                        respawnPlayer(attemptingPlayer);
-                    }
-                }
-            }
+    /**
+     * Creates a match and starts its tick when a tick rate is configured.
+     *
+     * @param id The id of the new match.
+     * @return the new match.
+     */
+    private Match createMatch(String id) {
+        Match match = new Match(id, this, matchExecutor);
+        if (ticker != null) {
+            match.startTicking(ticker, config.getTickRate());
         }
+        return match;
     }
 
     /**
-     * Ends the server if all clients are disconnected.
-     * This is a graceful shutdown trigger when client count drops to zero.
-    */
-    private void endServer() {
-        System.out.println("ending server");
-        if (clientCount == 0) {
-            exit(0);
-        }
+     * Forgets a match that has ended. The server keeps running for the other matches.
+     *
+     * @param match The match to remove.
+     */
+    void removeMatch(Match match) {
+        matches.remove(match.getId(), match);
+        System.out.println("Removed match " + match.getId() + " (" + matches.size() + " active)");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,326 @@
+package sfu.cmpt371.group7.game.server;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.util.function.Function;
+
+/**
+ * Runtime settings for the {@link Server}.
+ * <p>
+ * Settings are looked up by key, normally from a {@code .env} file or the environment,
+ * and every setting has a default so the server behaves as before when nothing is configured.
+ * <ul>
+ *     <li>{@code SERVER_PORT} - TCP port the server listens on (default: 65000, which the game client connects to)</li>
+ *     <li>{@code SERVER_TRANSPORT} - {@code blocking} (default), {@code virtual} or {@code nio}</li>
+ *     <li>{@code SERVER_IO_THREADS} - number of selector threads in NIO mode (default: available processors)</li>
+ *     <li>{@code SERVER_MATCH_THREADS} - number of threads running the match command loops (default: available processors)</li>
+ *     <li>{@code SERVER_TICK_RATE} - state updates sent per second, e.g. 20, 30 or 60; 0 (default) sends every move immediately</li>
+ *     <li>{@code SERVER_MAX_MATCHES} - matches from which clients can no longer open one by joining a new id (default: 1024)</li>
+ *     <li>{@code SERVER_LOG_MESSAGES} - {@code true} prints every message received and broadcast, for debugging (default: false)</li>
+ *     <li>{@code SERVER_OUTBOUND_QUEUE} - messages waiting to be written to one client before it is disconnected (default: 1024)</li>
+ *     <li>{@code SERVER_COALESCE_DEPTH} - waiting messages from which a client only gets the latest move of each player (default: 256)</li>
+ *     <li>{@code SERVER_METRICS_INTERVAL} - seconds between printed outbound queue metrics; 0 (default) prints none</li>
+ *     <li>{@code SERVER_TCP_NODELAY} - {@code false} turns Nagle's algorithm back on for client sockets (default: true)</li>
+ *     <li>{@code SERVER_SEND_BUFFER} - socket send buffer size in bytes for each client; 0 (default) keeps the OS default</li>
+ *     <li>{@code SERVER_VALIDATE_MOVES} - {@code false} accepts every move as sent, as before the server checked them (default: true)</li>
+ *     <li>{@code SERVER_MOVE_RATE} - moves each player may make per second, in bursts of as many; 0 for no limit (default: 30)</li>
+ *     <li>{@code SERVER_CAPTURE_TIME} - milliseconds a player holds a flag before the server captures it (default: 3000)</li>
+ *     <li>{@code SERVER_RESPAWN_DELAY} - milliseconds a player waits to respawn after a failed capture; 0 (default) respawns at once</li>
+ *     <li>{@code SERVER_IDLE_TIMEOUT} - seconds without moving or capturing after which a player's client is disconnected; 0 (default) never</li>
+ *     <li>{@code SERVER_INTEREST_RADIUS} - cells around its player within which a client is sent moves; 0 (default) sends every move to everyone</li>
+ *     <li>{@code SERVER_UDP_PORT} - UDP port on which clients may receive their snapshots; 0 (default) keeps everything on TCP</li>
+ * </ul>
+ */
+public class ServerConfig {
+
+    /** The port the server listens on. */
+    private final int port;
+
+    /** How client connections are accepted and served. */
+    private final TransportMode transportMode;
+
+    /** Number of selector threads used by the NIO transport. */
+    private final int ioThreads;
+
+    /** Number of threads shared by the command loops of all matches. */
+    private final int matchThreads;
+
+    /** Matches from which clients can no longer open new ones. */
+    private final int maxMatches;
+
+    /** Ticks per second at which batched moves are sent, or 0 to send each move immediately. */
+    private final int tickRate;
+
+    /** Whether every message received and broadcast is printed. */
+    private final boolean logMessages;
+
+    /** Messages a client's outbound queue holds before the client is disconnected. */
+    private final int outboundQueueCapacity;
+
+    /** Queued messages from which moves to a client are coalesced. */
+    private final int coalesceDepth;
+
+    /** Seconds between printed outbound queue metrics, or 0 to print none. */
+    private final int metricsInterval;
+
+    /** Whether client sockets send small writes without waiting, i.e. with Nagle's algorithm off. */
+    private final boolean tcpNoDelay;
+
+    /** Send buffer size of client sockets in bytes, or 0 for the OS default. */
+    private final int sendBufferSize;
+
+    /** Whether moves are checked against the maze and the other players before they are applied. */
+    private final boolean validateMoves;
+
+    /** Moves each player may make per second, or 0 for no limit. */
+    private final int moveRate;
+
+    /** Milliseconds a capture is held before the flag is captured. */
+    private final int captureTime;
+
+    /** Milliseconds before a player is respawned, or 0 to respawn at once. */
+    private final int respawnDelay;
+
+    /** Seconds a player may go without moving or capturing before its client is disconnected, or 0 for no limit. */
+    private final int idleTimeout;
+
+    /** UDP port snapshots may be sent from, or 0 for none. */
+    private final int udpPort;
+
+    /** Cells around a client's player within which it is sent moves, or 0 to send every move to every client. */
+    private final int interestRadius;
+
+    /**
+     * Constructs a configuration reading each setting from the given source.
+     *
+     * @param source Looks up a setting by key, returning {@code null} when it is not set.
+     */
+    public ServerConfig(Function<String, String> source) {
+        this.port = readInt(source, "SERVER_PORT", 65000);
+        this.transportMode = readTransportMode(source, "SERVER_TRANSPORT", TransportMode.BLOCKING);
+        this.ioThreads = Math.max(1, readInt(source, "SERVER_IO_THREADS", Runtime.getRuntime().availableProcessors()));
+        this.matchThreads = Math.max(1, readInt(source, "SERVER_MATCH_THREADS", Runtime.getRuntime().availableProcessors()));
+        this.tickRate = Math.max(0, readInt(source, "SERVER_TICK_RATE", 0));
+        this.maxMatches = Math.max(1, readInt(source, "SERVER_MAX_MATCHES", 1024));
+        String logMessages = source.apply("SERVER_LOG_MESSAGES");
+        this.logMessages = logMessages != null && Boolean.parseBoolean(logMessages.trim());
+        this.outboundQueueCapacity = Math.max(1, readInt(source, "SERVER_OUTBOUND_QUEUE", 1024));
+        this.coalesceDepth = Math.max(0, Math.min(outboundQueueCapacity, readInt(source, "SERVER_COALESCE_DEPTH", 256)));
+        this.metricsInterval = Math.max(0, readInt(source, "SERVER_METRICS_INTERVAL", 0));
+        String tcpNoDelay = source.apply("SERVER_TCP_NODELAY");
+        this.tcpNoDelay = tcpNoDelay == null || Boolean.parseBoolean(tcpNoDelay.trim());
+        this.sendBufferSize = Math.max(0, readInt(source, "SERVER_SEND_BUFFER", 0));
+        String validateMoves = source.apply("SERVER_VALIDATE_MOVES");
+        this.validateMoves = validateMoves == null || Boolean.parseBoolean(validateMoves.trim());
+        this.moveRate = Math.max(0, readInt(source, "SERVER_MOVE_RATE", 30));
+        this.captureTime = Math.max(0, readInt(source, "SERVER_CAPTURE_TIME", 3000));
+        this.respawnDelay = Math.max(0, readInt(source, "SERVER_RESPAWN_DELAY", 0));
+        this.idleTimeout = Math.max(0, readInt(source, "SERVER_IDLE_TIMEOUT", 0));
+        this.interestRadius = Math.max(0, readInt(source, "SERVER_INTEREST_RADIUS", 0));
+        this.udpPort = Math.max(0, readInt(source, "SERVER_UDP_PORT", 0));
+    }
+
+    /**
+     * Loads the configuration from a {@code .env} file if there is one, otherwise from the environment.
+     *
+     * @return the loaded configuration.
+     */
+    public static ServerConfig load() {
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        return new ServerConfig(dotenv::get);
+    }
+
+    /**
+     * Reads an integer setting.
+     *
+     * @param source The source to read from.
+     * @param key The key of the setting.
+     * @param defaultValue The value to use when the setting is missing or not a number.
+     * @return the value of the setting.
+     */
+    private static int readInt(Function<String, String> source, String key, int defaultValue) {
+        String value = source.apply(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a transport mode setting.
+     *
+     * @param source The source to read from.
+     * @param key The key of the setting.
+     * @param defaultValue The value to use when the setting is missing or not a transport mode.
+     * @return the value of the setting.
+     */
+    private static TransportMode readTransportMode(Function<String, String> source, String key, TransportMode defaultValue) {
+        String value = source.apply(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return TransportMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets the port to listen on.
+     * @return the TCP port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Gets the transport mode.
+     * @return how client connections are served
+     */
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    /**
+     * Gets the number of NIO selector threads.
+     * @return the number of I/O threads
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Gets the number of threads running match command loops.
+     * @return the number of match threads
+     */
+    public int getMatchThreads() {
+        return matchThreads;
+    }
+
+    /**
+     * Gets the server tick rate.
+     * @return ticks per second, or 0 when moves are sent immediately
+     */
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * Gets the number of matches from which clients can no longer open new ones.
+     * @return the number of matches
+     */
+    public int getMaxMatches() {
+        return maxMatches;
+    }
+
+    /**
+     * Checks whether every message received and broadcast is printed.
+     * @return true if messages are logged
+     */
+    public boolean isLogMessages() {
+        return logMessages;
+    }
+
+    /**
+     * Gets the number of messages waiting for one client before it is disconnected.
+     * @return the outbound queue capacity
+     */
+    public int getOutboundQueueCapacity() {
+        return outboundQueueCapacity;
+    }
+
+    /**
+     * Gets the number of messages waiting for one client from which its moves are coalesced.
+     * @return the coalescing depth
+     */
+    public int getCoalesceDepth() {
+        return coalesceDepth;
+    }
+
+    /**
+     * Gets the interval at which outbound queue metrics are printed.
+     * @return seconds between reports, or 0 when none are printed
+     */
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    /**
+     * Checks whether client sockets have Nagle's algorithm turned off.
+     * @return true if TCP_NODELAY is set on client sockets
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Gets the send buffer size of client sockets.
+     * @return the size in bytes, or 0 when the OS default is kept
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Checks whether moves are validated by the server.
+     * @return true if moves are checked against the maze and the other players
+     */
+    public boolean isValidateMoves() {
+        return validateMoves;
+    }
+
+    /**
+     * Gets the number of moves each player may make per second.
+     * @return the move rate, or 0 when moves are not limited
+     */
+    public int getMoveRate() {
+        return moveRate;
+    }
+
+    /**
+     * Gets how long a player holds a flag before capturing it.
+     * @return the capture time in milliseconds
+     */
+    public int getCaptureTime() {
+        return captureTime;
+    }
+
+    /**
+     * Gets how long a player waits to respawn.
+     * @return the respawn delay in milliseconds, or 0 to respawn at once
+     */
+    public int getRespawnDelay() {
+        return respawnDelay;
+    }
+
+    /**
+     * Gets how long a player may go without moving or capturing before its client is disconnected.
+     * @return the idle timeout in seconds, or 0 when idle clients are kept
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Gets how far around its player a client is sent moves.
+     * @return the radius in cells, or 0 when every client is sent every move
+     */
+    public int getInterestRadius() {
+        return interestRadius;
+    }
+
+    /**
+     * Gets the UDP port clients may receive their snapshots on.
+     * @return the port, or 0 when everything is sent over TCP
+     */
+    public int getUdpPort() {
+        return udpPort;
+    }
+}
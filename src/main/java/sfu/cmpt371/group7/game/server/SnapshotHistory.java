@@ -0,0 +1,172 @@
+package sfu.cmpt371.group7.game.server;
+
+import sfu.cmpt371.group7.game.model.Player;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * The snapshots of the game sent to one client, for a client that asked for snapshots instead of moves.
+ * <p>
+ * A snapshot is what the client sees: the position of each player, by the player's id, and which flags are
+ * captured. Each one is numbered, and is sent as the changes since the last snapshot the client acknowledged,
+ * so the same changes are sent again until one of the snapshots carrying them is acknowledged, and a client
+ * that misses a snapshot catches up with the next one:
+ * <pre>
+ * snapshot &lt;sequence&gt; &lt;base&gt; &lt;captured flags&gt; [&lt;id&gt; &lt;mask&gt; [&lt;name&gt; &lt;team&gt;] [&lt;x&gt;] [&lt;y&gt;] ...]
+ * </pre>
+ * The base is the acknowledged snapshot the changes apply to, or 0 for a full snapshot. The captured flags
+ * are a bit per flag, in the order the flags were listed. Each changed player has a mask of the fields that
+ * follow: {@link #X} and {@link #Y} for a new position, {@link #JOINED} for a player the base does not have,
+ * with its name and team and both co-ordinates, and {@link #LEFT} for a player the client no longer sees.
+ * <p>
+ * The last {@link #HISTORY} snapshots are kept. A client whose acknowledged snapshot is older than that,
+ * or that acknowledged none, is sent a full snapshot. A snapshot is only sent when the game changed since
+ * the last one, or when the last one is still not acknowledged after {@link #RESEND_PASSES} passes.
+ * <p>
+ * Only used by the match's command loop, so nothing is synchronized.
+ */
+class SnapshotHistory {
+    static final int X = 1;
+    static final int Y = 2;
+    static final int JOINED = 4;
+    static final int LEFT = 8;
+
+    /** Snapshots kept to send changes against. */
+    static final int HISTORY = 32;
+    /** Passes without changes after which an unacknowledged snapshot is sent again. */
+    static final int RESEND_PASSES = 8;
+
+    private final Snapshot[] ring = new Snapshot[HISTORY];
+    /** The number of the last snapshot sent, 0 before the first. */
+    private int sequence;
+    /** The number of the last snapshot acknowledged, 0 for none. */
+    private int acknowledged;
+    /** Passes since a snapshot was last sent. */
+    private int idlePasses;
+
+    /**
+     * What a client was sent in one snapshot: the players it saw, in id order, and the captured flags.
+     */
+    private static final class Snapshot {
+        private int sequence;
+        private int flags;
+        private int size;
+        private int[] ids = new int[16];
+        private int[] xs = new int[16];
+        private int[] ys = new int[16];
+
+        private void add(int id, int x, int y) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            ids[size] = id;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+
+        private boolean sameAs(Snapshot other) {
+            return flags == other.flags && size == other.size
+                    && Arrays.equals(ids, 0, size, other.ids, 0, size)
+                    && Arrays.equals(xs, 0, size, other.xs, 0, size)
+                    && Arrays.equals(ys, 0, size, other.ys, 0, size);
+        }
+    }
+
+    /**
+     * Records that the client applied a snapshot. Acknowledgements of snapshots older than the last one
+     * acknowledged, or never sent, are ignored.
+     *
+     * @param sequence The number of the snapshot.
+     */
+    void acknowledge(int sequence) {
+        if (sequence > acknowledged && sequence <= this.sequence) {
+            acknowledged = sequence;
+        }
+    }
+
+    /**
+     * Gets the number of the last snapshot the client acknowledged.
+     * @return the sequence number, or 0 for none
+     */
+    int getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * Takes the next snapshot of the game and encodes it as the changes since the acknowledged one.
+     *
+     * @param players The players of the match.
+     * @param sees Whether the client sees a player, by id.
+     * @param flags The captured flags, a bit per flag.
+     * @return the snapshot message, or {@code null} if the client does not need one.
+     */
+    String next(PlayerIndex players, IntPredicate sees, int flags) {
+        Snapshot current = slot(sequence + 1);
+        current.size = 0;
+        current.flags = flags;
+        for (int id = 0; id < players.idCount(); id++) {
+            Player player = players.get(id);
+            if (player != null && sees.test(id)) {
+                current.add(id, player.getX(), player.getY());
+            }
+        }
+        if (sequence > 0 && current.sameAs(slot(sequence))
+                && (acknowledged == sequence || ++idlePasses < RESEND_PASSES)) {
+            return null;
+        }
+
+        sequence++;
+        current.sequence = sequence;
+        idlePasses = 0;
+        // The base must still be kept, and not be the slot just written
+        Snapshot base = acknowledged > 0 && sequence - acknowledged < HISTORY ? slot(acknowledged) : null;
+        StringBuilder message = new StringBuilder("snapshot ")
+                .append(sequence).append(' ')
+                .append(base != null ? base.sequence : 0).append(' ')
+                .append(flags);
+        int b = 0;
+        for (int c = 0; c < current.size; c++) {
+            int id = current.ids[c];
+            while (base != null && b < base.size && base.ids[b] < id) {
+                message.append(' ').append(base.ids[b++]).append(' ').append(LEFT);
+            }
+            if (base != null && b < base.size && base.ids[b] == id) {
+                int mask = (current.xs[c] != base.xs[b] ? X : 0) | (current.ys[c] != base.ys[b] ? Y : 0);
+                b++;
+                if (mask == 0) {
+                    continue;
+                }
+                message.append(' ').append(id).append(' ').append(mask);
+                if ((mask & X) != 0) {
+                    message.append(' ').append(current.xs[c]);
+                }
+                if ((mask & Y) != 0) {
+                    message.append(' ').append(current.ys[c]);
+                }
+            } else {
+                Player player = players.get(id);
+                message.append(' ').append(id).append(' ').append(JOINED | X | Y)
+                        .append(' ').append(player.getName())
+                        .append(' ').append(player.getTeam())
+                        .append(' ').append(current.xs[c])
+                        .append(' ').append(current.ys[c]);
+            }
+        }
+        while (base != null && b < base.size) {
+            message.append(' ').append(base.ids[b++]).append(' ').append(LEFT);
+        }
+        return message.toString();
+    }
+
+    private Snapshot slot(int sequence) {
+        int index = sequence % HISTORY;
+        if (ring[index] == null) {
+            ring[index] = new Snapshot();
+        }
+        return ring[index];
+    }
+}
@@ -0,0 +1,117 @@
+package sfu.cmpt371.group7.game.server;
+
+import sfu.cmpt371.group7.game.protocol.MessageStream;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ClientConnection} over a blocking {@link Socket}, which also reads the
+ * client's messages for the thread serving it.
+ * <p>
+ * Sent messages are put on an {@link OutboundQueue} and written by a writer thread of the
+ * connection's own, so a client that stops reading only holds up its own writer.
+ * A client whose queue fills up is disconnected.
+ */
+class SocketConnection implements ClientConnection {
+    private final MessageStream stream;
+    private final OutboundQueue queue;
+    private final OutboundMetrics metrics;
+    /** Held while a message is taken from the queue and written, so the protocol switch never falls in between. */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Constructs a connection over the given socket and starts its writer.
+     *
+     * @param socket The socket that is connected to the client.
+     * @param queue The queue of messages waiting to be written.
+     * @param metrics The counters to record writes in.
+     * @param virtual Whether the writer runs on a virtual thread rather than a platform thread.
+     * @throws IOException If the streams of the socket cannot be opened.
+     */
+    SocketConnection(Socket socket, OutboundQueue queue, OutboundMetrics metrics, boolean virtual) throws IOException {
+        this.stream = new MessageStream(socket);
+        this.queue = queue;
+        this.metrics = metrics;
+        Thread.Builder writer = virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+        writer.name("writer-" + socket.getPort()).start(this::writeMessages);
+    }
+
+    @Override
+    public void send(String message) {
+        if (!queue.offer(message)) {
+            System.out.println("Disconnecting a client that fell too far behind");
+            close();
+        }
+    }
+
+    @Override
+    public void flush() {
+        queue.flush();
+    }
+
+    /**
+     * Writes queued messages until the connection is closed. On every flush, all messages
+     * queued by then are buffered and written to the socket together.
+     */
+    private void writeMessages() {
+        try {
+            while (queue.awaitFlush()) {
+                writeLock.lock();
+                try {
+                    int count = 0;
+                    String message;
+                    while ((message = queue.poll()) != null) {
+                        stream.write(message);
+                        count++;
+                    }
+                    if (count > 0) {
+                        stream.flush();
+                        metrics.written(count);
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the messages still queued as text, then switches both directions to binary.
+     * Called by the thread reading this client, so the next message is already read as binary.
+     */
+    @Override
+    public void useBinaryProtocol() {
+        writeLock.lock();
+        try {
+            String message;
+            while ((message = queue.poll()) != null) {
+                stream.write(message);
+            }
+            stream.flush();
+            stream.useBinaryProtocol();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the next message from the client arrives.
+     * Only called from the thread serving this client.
+     *
+     * @return the message, or {@code null} once the client has closed the connection.
+     * @throws IOException If reading from the socket fails.
+     */
+    String readMessage() throws IOException {
+        return stream.readMessage();
+    }
+
+    @Override
+    public void close() {
+        queue.close();
+        stream.close();
+    }
+}
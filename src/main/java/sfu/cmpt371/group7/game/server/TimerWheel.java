@@ -0,0 +1,242 @@
+package sfu.cmpt371.group7.game.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks after a delay, for the timers every match keeps per player: capture holds,
+ * respawn delays and idle timeouts. One wheel is shared by all matches of a server.
+ * <p>
+ * This is a hashed timing wheel: a ring of buckets, one per tick, turned by a single thread.
+ * A timer goes into the bucket of the tick it expires on, with the number of turns of the wheel
+ * still to wait, so scheduling and cancelling take constant time however many timers are pending,
+ * and no thread waits per timer. Timers expire on the first tick at or after their deadline,
+ * so they are late by up to one tick.
+ * <p>
+ * Any thread may schedule and cancel timers. New timers are queued and put in their buckets by
+ * the wheel's thread, which also runs the tasks, so a task should only hand work on, such as
+ * submitting it to a match's command loop. A timer cancelled after its task was handed on still
+ * runs, so the work has to check that it is still wanted.
+ */
+class TimerWheel {
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    /** When the wheel was created; deadlines count from here. */
+    private final long startTime = System.nanoTime();
+    /** Timers scheduled since the last tick, not in a bucket yet. */
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    /** Timers cancelled since the last tick, to take out of their buckets. */
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final String name;
+    private volatile boolean stopped;
+    /** The tick being expired next; only used by the wheel's thread. */
+    private long tick;
+
+    /**
+     * A scheduled task, which can be cancelled until it runs.
+     */
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private final Runnable task;
+        /** Nanoseconds from the start of the wheel. */
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        /** Turns of the wheel left before the timer expires; only used by the wheel's thread. */
+        private long rounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout previous;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Stops the task from running, unless it already ran.
+         *
+         * @return false if the task already ran or was already cancelled.
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Checks whether the timer was cancelled.
+         * @return true once {@link #cancel()} succeeded
+         */
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Checks whether the task ran.
+         * @return true once the timer expired
+         */
+        boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /**
+     * The timers expiring on one tick of each turn, as a doubly linked list so a cancelled timer
+     * is taken out in constant time.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.next = null;
+            timeout.previous = null;
+        }
+    }
+
+    /**
+     * Constructs a wheel. Its thread is started when the first timer is scheduled.
+     *
+     * @param name The name of the wheel's thread.
+     * @param tick How long each tick lasts, which is also how late a timer may expire.
+     * @param unit The unit of the tick.
+     * @param buckets The number of ticks in a turn of the wheel, rounded up to a power of two.
+     *                Timers further ahead than a turn wait for more turns.
+     */
+    TimerWheel(String name, long tick, TimeUnit unit, int buckets) {
+        this.name = name;
+        this.tickNanos = Math.max(1, unit.toNanos(tick));
+        int size = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedules a task to run once after a delay, on the wheel's thread.
+     *
+     * @param task The task, which should return quickly.
+     * @param delay How long to wait.
+     * @param unit The unit of the delay.
+     * @return the timer, to cancel the task with.
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (started.compareAndSet(false, true)) {
+            Thread.ofPlatform().name(name).daemon().start(this::run);
+        }
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay)));
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel's thread. Pending tasks never run.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Turns the wheel one tick at a time until it is stopped, sleeping until each tick has passed.
+     */
+    private void run() {
+        tick = (System.nanoTime() - startTime) / tickNanos;
+        while (!stopped) {
+            long tickEnd = (tick + 1) * tickNanos;
+            long wait = tickEnd - (System.nanoTime() - startTime);
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            addTimeouts();
+            removeCancelled();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    /**
+     * Puts the timers scheduled since the last tick in the buckets of their deadlines.
+     * A timer whose deadline has passed goes in the current bucket.
+     */
+    private void addTimeouts() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            long expiresOn = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.rounds = (expiresOn - tick) / wheel.length;
+            wheel[(int) (expiresOn & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks of a bucket's timers that expire on this turn, and counts down the others.
+     */
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds <= 0) {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Error in timer task: " + e.getMessage());
+                    }
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+}
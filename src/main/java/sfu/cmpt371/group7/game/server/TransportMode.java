@@ -0,0 +1,16 @@
+package sfu.cmpt371.group7.game.server;
+
+/**
+ * The ways the {@link Server} can accept and serve client connections.
+ */
+public enum TransportMode {
+
+    /** One platform thread per client, each blocking on {@code readLine()}. */
+    BLOCKING,
+
+    /** One virtual thread per client, each blocking on {@code readLine()}. */
+    VIRTUAL,
+
+    /** A {@code Selector} based event loop that multiplexes all clients on a few I/O threads. */
+    NIO
+}
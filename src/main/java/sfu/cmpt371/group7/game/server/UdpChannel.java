@@ -0,0 +1,174 @@
+package sfu.cmpt371.group7.game.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Carries snapshots over UDP next to the TCP connections, so a late TCP segment does not hold up
+ * the positions sent after it.
+ * <p>
+ * Only snapshots and their acknowledgements travel here. Each snapshot is numbered and carries the
+ * changes since the last one the client acknowledged, so a lost or late datagram needs no resending:
+ * the next snapshot replaces it. Every other message, such as team selection, captures, players leaving
+ * and the game over, stays on the client's TCP connection.
+ * <p>
+ * A client asks for the channel over TCP with {@code udpRequest}, and is answered {@code udpOffer <port> <token>}.
+ * It then sends {@code udpBind <token>} from its UDP socket until the bind is echoed back; from then on
+ * its snapshots are sent to that address, and its {@code snapshotAck} datagrams are handled like the same
+ * messages over TCP. A snapshot too large for one datagram is sent over TCP instead.
+ * <p>
+ * One thread reads every datagram. Any thread may send, since a {@link DatagramChannel} can be written
+ * by several threads at once.
+ */
+class UdpChannel {
+    /** The largest datagram sent, small enough not to be fragmented on most networks. */
+    static final int MAX_DATAGRAM = 1200;
+
+    private final DatagramChannel channel;
+    private final SecureRandom random = new SecureRandom();
+    /** Clients offered the channel, by the token they bind with. */
+    private final Map<Long, ClientHandler> offers = new ConcurrentHashMap<>();
+    /** Bound clients, by the address their datagrams come from. */
+    private final Map<SocketAddress, ClientHandler> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the channel. Datagrams are only read once it is started.
+     *
+     * @param port The UDP port to listen on, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    UdpChannel(int port) throws IOException {
+        this.channel = DatagramChannel.open().bind(new InetSocketAddress(port));
+    }
+
+    /**
+     * Gets the port the channel listens on.
+     * @return the local UDP port
+     */
+    int getPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Starts reading datagrams on a thread of its own.
+     */
+    void start() {
+        Thread.ofPlatform().name("udp").daemon().start(this::run);
+    }
+
+    /**
+     * Offers the channel to a client.
+     *
+     * @param client The client, which asked over TCP.
+     * @return the token the client binds its UDP socket with.
+     */
+    long offer(ClientHandler client) {
+        long token = random.nextLong();
+        offers.put(token, client);
+        return token;
+    }
+
+    /**
+     * Sends a message to a bound client in one datagram.
+     *
+     * @param address The address the client bound from.
+     * @param message The message in the text protocol.
+     * @return false if the message is too large for a datagram or could not be sent.
+     */
+    boolean send(SocketAddress address, String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_DATAGRAM) {
+            return false;
+        }
+        try {
+            channel.send(ByteBuffer.wrap(bytes), address);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Forgets a client that disconnected.
+     *
+     * @param client The client.
+     */
+    void forget(ClientHandler client) {
+        offers.values().remove(client);
+        SocketAddress address = client.getDatagramAddress();
+        if (address != null) {
+            clients.remove(address, client);
+        }
+    }
+
+    /**
+     * Stops the channel.
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing UDP channel: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads datagrams until the channel is closed.
+     */
+    private void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress from = channel.receive(buffer);
+                buffer.flip();
+                handleDatagram(from, StandardCharsets.UTF_8.decode(buffer).toString());
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error in UDP channel: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Handles one datagram: a bind, or a message from a bound client.
+     */
+    private void handleDatagram(SocketAddress from, String message) {
+        if (message.startsWith("udpBind ")) {
+            // udpBind <token>
+            long token;
+            try {
+                token = Long.parseLong(message.substring("udpBind ".length()).trim());
+            } catch (NumberFormatException e) {
+                return;
+            }
+            ClientHandler client = offers.remove(token);
+            if (client != null) {
+                client.setDatagramAddress(from);
+                clients.put(from, client);
+            }
+            if (clients.containsKey(from)) {
+                // Echoed so the client stops sending it, also when an earlier echo was lost
+                send(from, message);
+            }
+            return;
+        }
+        ClientHandler client = clients.get(from);
+        if (client != null && message.startsWith("snapshotAck ")) {
+            client.handleDatagram(message);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package sfu.cmpt371.group7.game.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Percentiles read from a {@link LatencyHistogram}, which must be within a bucket of the exact ones.
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void smallLatenciesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 50; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        assertEquals(50, histogram.count());
+        assertEquals(25, histogram.percentile(0.5));
+        assertEquals(50, histogram.percentile(0.99));
+    }
+
+    @Test
+    void largeLatenciesAreWithinTheBucketWidth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 100_000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        assertWithin(50_000, histogram.percentile(0.5));
+        assertWithin(99_000, histogram.percentile(0.99));
+        assertWithin(99_900, histogram.percentile(0.999));
+        assertWithin(100_000, histogram.percentile(1.0));
+    }
+
+    @Test
+    void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.99));
+    }
+
+    /**
+     * Checks that a percentile is at least the exact value and at most one bucket, 1/32 of it, above.
+     */
+    private static void assertWithin(long exact, long actual) {
+        assertTrue(actual >= exact && actual <= exact + exact / 32, "expected about " + exact + " but was " + actual);
+    }
+}
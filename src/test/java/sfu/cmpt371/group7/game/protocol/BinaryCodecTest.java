@@ -0,0 +1,220 @@
+package sfu.cmpt371.group7.game.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of messages through {@link BinaryCodec}, and the frames it refuses.
+ */
+class BinaryCodecTest {
+
+    private final BinaryCodec.Encoder encoder = new BinaryCodec.Encoder();
+    private final BinaryCodec.Decoder decoder = new BinaryCodec.Decoder();
+
+    private String roundTrip(String message) throws IOException {
+        return decoder.read(new ByteArrayInputStream(encoder.encode(message)));
+    }
+
+    @Test
+    void messagesSurviveARoundTrip() throws IOException {
+        String[] messages = {
+                "movePlayer alice 3 17",
+                "movePlayer alice 3 17 42",
+                "flagCaptured alice flag1 red",
+                "startGame",
+                "gameOver ",
+                "sendingPlayer zoë red 0 0",
+                "notAMessageType with fields 1 2",
+                "teamSelection  red",
+        };
+        for (String message : messages) {
+            assertEquals(message, roundTrip(message));
+        }
+    }
+
+    @Test
+    void integersSurviveAtVarintBoundaries() throws IOException {
+        int[] values = {0, 1, -1, 63, -64, 64, -65, 8191, -8192, 8192, -8193,
+                1048575, -1048576, 1048576, 999_999_999, -999_999_999};
+        for (int value : values) {
+            assertEquals("updateCount " + value, roundTrip("updateCount " + value));
+        }
+    }
+
+    @Test
+    void zigZagVarintsGrowAByteAtEachBoundary() {
+        // opcode, tag and the varint; a zig-zag varint holds -64..63 in one byte and -8192..8191 in two
+        assertEquals(3, bodyLength("updateCount 63"));
+        assertEquals(3, bodyLength("updateCount -64"));
+        assertEquals(4, bodyLength("updateCount 64"));
+        assertEquals(4, bodyLength("updateCount -65"));
+        assertEquals(4, bodyLength("updateCount 8191"));
+        assertEquals(5, bodyLength("updateCount 8192"));
+        assertEquals(7, bodyLength("updateCount 999999999"));
+    }
+
+    @Test
+    void frameLengthPrefixGrowsPast127Bytes() throws IOException {
+        // opcode 0, then the unknown type as a string with a one byte length
+        String shortest = "x".repeat(125);
+        byte[] frame = encoder.encode(shortest);
+        assertEquals(127, frame[0]);
+        assertEquals(128, frame.length);
+
+        String longer = "x".repeat(126);
+        frame = encoder.encode(longer);
+        assertEquals(2, frame.length - 128);
+        assertEquals(longer, decoder.read(new ByteArrayInputStream(frame)));
+    }
+
+    @Test
+    void fieldsThatAreNotCanonicalIntegersStayStrings() throws IOException {
+        String[] values = {"07", "-0", "+5", "-", "1234567890", "2147483648", "-2147483649", "12a"};
+        for (String value : values) {
+            assertEquals("updateCount " + value, roundTrip("updateCount " + value));
+        }
+    }
+
+    @Test
+    void repeatedStringsAreSentAsIds() throws IOException {
+        byte[] first = encoder.encode("movePlayer alice 1 2");
+        byte[] second = encoder.encode("movePlayer alice 1 3");
+        // "alice" is defined once, then referred to by a one byte id
+        assertEquals(first.length - "alice".length(), second.length);
+        assertEquals(BinaryCodec.REF, second[2]);
+
+        assertEquals("movePlayer alice 1 2", decoder.read(new ByteArrayInputStream(first)));
+        assertEquals("movePlayer alice 1 3", decoder.read(new ByteArrayInputStream(second)));
+    }
+
+    @Test
+    void framesWrittenToAStreamMatchTheEncodedArrays() throws IOException {
+        BinaryCodec.Encoder streaming = new BinaryCodec.Encoder();
+        String[] messages = {"movePlayer alice 1 2", "movePlayer alice 1 3", "x".repeat(300), "flagCaptured alice flag1 red"};
+        for (String message : messages) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            streaming.encode(message, out);
+            assertArrayEquals(encoder.encode(message), out.toByteArray());
+        }
+    }
+
+    @Test
+    void stringsPastTheLimitAreSentRawAndIdsStayInStep() throws IOException {
+        for (int i = 0; i < BinaryCodec.MAX_STRINGS + 10; i++) {
+            String message = "playerLeft player" + i;
+            assertEquals(message, roundTrip(message));
+        }
+        // Remembered strings are still referred to, and the rest are sent in full each time
+        assertEquals("playerLeft player0", roundTrip("playerLeft player0"));
+        assertEquals("playerLeft player" + BinaryCodec.MAX_STRINGS, roundTrip("playerLeft player" + BinaryCodec.MAX_STRINGS));
+        byte[] raw = encoder.encode("playerLeft player" + (BinaryCodec.MAX_STRINGS + 1));
+        assertEquals(BinaryCodec.RAW, raw[2]);
+    }
+
+    @Test
+    void framesSplitAcrossBuffersAreDecodedWhenComplete() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String[] messages = {"movePlayer bob 4 5 1", "movePlayer bob 4 6 2", "x".repeat(300)};
+        for (String message : messages) {
+            bytes.writeBytes(encoder.encode(message));
+        }
+        byte[] all = bytes.toByteArray();
+
+        int next = 0;
+        for (byte b : all) {
+            String message = decoder.decode(ByteBuffer.wrap(new byte[]{b}));
+            if (message != null) {
+                assertEquals(messages[next++], message);
+            }
+        }
+        assertEquals(messages.length, next);
+    }
+
+    @Test
+    void severalFramesInOneBufferAreDecodedOneByOne() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(encoder.encode("startGame"));
+        bytes.writeBytes(encoder.encode("updateCount 3"));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+        assertEquals("startGame", decoder.decode(buffer));
+        assertEquals("updateCount 3", decoder.decode(buffer));
+        assertNull(decoder.decode(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void streamEndingBetweenFramesEndsCleanly() throws IOException {
+        assertNull(decoder.read(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void streamEndingInsideAFrameIsAnError() {
+        byte[] frame = encoder.encode("movePlayer alice 1 2");
+        byte[] truncated = Arrays.copyOf(frame, frame.length - 1);
+        assertThrows(EOFException.class, () -> decoder.read(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    void streamEndingInsideAFrameLengthIsAnError() {
+        byte[] frame = encoder.encode("x".repeat(200));
+        assertThrows(EOFException.class, () -> decoder.read(new ByteArrayInputStream(new byte[]{frame[0]})));
+    }
+
+    @Test
+    void fieldsRunningPastTheEndOfTheFrameAreErrors() {
+        // A frame whose length prefix cuts a field short
+        byte[] varint = encoder.encode("updateCount 8192");
+        byte[] cutVarint = Arrays.copyOf(varint, varint.length - 1);
+        cutVarint[0]--;
+        assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(cutVarint)));
+
+        byte[] string = encoder.encode("playerLeft carol");
+        byte[] cutString = Arrays.copyOf(string, string.length - 1);
+        cutString[0]--;
+        assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(cutString)));
+    }
+
+    @Test
+    void malformedFramesAreErrors() {
+        // Empty frame
+        assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(new byte[]{0})));
+        // Unknown opcode
+        assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(new byte[]{1, (byte) 0xFF})));
+        // Reference to a string never defined
+        assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(new byte[]{3, 1, BinaryCodec.REF, 5})));
+        // Unknown field tag
+        assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(new byte[]{3, 1, 9, 0})));
+        // Length over the limit
+        assertThrows(IOException.class, () -> decoder.decode(ByteBuffer.wrap(new byte[]{(byte) 0x81, (byte) 0x80, 0x08})));
+        // Length prefix that never ends
+        assertThrows(IOException.class, () -> decoder.read(new ByteArrayInputStream(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1})));
+    }
+
+    @Test
+    void encodingIsTheSameForTheSameHistory() {
+        BinaryCodec.Encoder other = new BinaryCodec.Encoder();
+        for (String message : new String[]{"movePlayer alice 1 2", "movePlayer alice 1 3", "gameOver red"}) {
+            assertArrayEquals(encoder.encode(message), other.encode(message));
+        }
+    }
+
+    private int bodyLength(String message) {
+        byte[] frame = new BinaryCodec.Encoder().encode(message);
+        assertTrue(frame[0] > 0 && frame[0] < 128);
+        return frame[0];
+    }
+}
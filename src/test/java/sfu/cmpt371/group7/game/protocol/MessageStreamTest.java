@@ -0,0 +1,132 @@
+package sfu.cmpt371.group7.game.protocol;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Messages sent between two {@link MessageStream}s over a loopback connection, in text and binary.
+ */
+class MessageStreamTest {
+
+    private ServerSocket listener;
+    private Socket serverSocket;
+    private MessageStream client;
+    private MessageStream server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new MessageStream(new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort()));
+        serverSocket = listener.accept();
+        server = new MessageStream(serverSocket);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.close();
+        listener.close();
+    }
+
+    @Test
+    void textMessagesSurviveARoundTrip() throws IOException {
+        client.send("teamSelection red zoë");
+        client.send("movePlayer zoë 2 1 1");
+        client.send("movePlayer zoë 3 1 2");
+
+        assertEquals("teamSelection red zoë", server.readMessage());
+        assertEquals("movePlayer zoë 2 1 1", server.readMessage());
+        assertEquals("movePlayer zoë 3 1 2", server.readMessage());
+    }
+
+    @Test
+    void carriageReturnsAreDroppedFromTextLines() throws IOException {
+        OutputStream raw = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort()).getOutputStream();
+        MessageStream other = new MessageStream(listener.accept());
+        raw.write("startGame\r\nupdateCount 2".getBytes(StandardCharsets.UTF_8));
+        raw.close();
+
+        assertEquals("startGame", other.readMessage());
+        // A last line without a terminator is still read
+        assertEquals("updateCount 2", other.readMessage());
+        assertNull(other.readMessage());
+        other.close();
+    }
+
+    @Test
+    void linesLongerThanTheInputBufferAreReadWhole() throws IOException {
+        String coordinates = "1 2 ".repeat(5000);
+        client.write("flagCoordinates " + coordinates);
+        client.write("startGame");
+        client.flush();
+
+        assertEquals("flagCoordinates " + coordinates, server.readMessage());
+        assertEquals("startGame", server.readMessage());
+    }
+
+    @Test
+    void handshakeSwitchesBothDirectionsToBinary() throws Exception {
+        Thread answer = Thread.ofPlatform().start(() -> {
+            try {
+                assertEquals("protocol binary", server.readMessage());
+                server.send("protocol binary");
+                server.useBinaryProtocol();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(client.requestBinaryProtocol());
+        answer.join();
+
+        // Sent straight after the switch, so nothing of the first frame may be lost to the text reader
+        for (int i = 0; i < 3; i++) {
+            client.send("movePlayer alice " + i + " " + (i * 100) + " " + (8190 + i));
+        }
+        server.send("flagCaptured alice flag1 red");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("movePlayer alice " + i + " " + (i * 100) + " " + (8190 + i), server.readMessage());
+        }
+        assertEquals("flagCaptured alice flag1 red", client.readMessage());
+    }
+
+    @Test
+    void binaryStreamEndsCleanlyBetweenFrames() throws IOException {
+        client.useBinaryProtocol();
+        server.useBinaryProtocol();
+        client.send("gameOver red");
+        client.close();
+
+        assertEquals("gameOver red", server.readMessage());
+        assertNull(server.readMessage());
+    }
+
+    @Test
+    void binaryStreamEndingInsideAFrameIsAnError() throws IOException {
+        server.useBinaryProtocol();
+        byte[] frame = new BinaryCodec.Encoder().encode("movePlayer alice 1 2");
+        Socket raw = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort());
+        MessageStream other = new MessageStream(listener.accept());
+        other.useBinaryProtocol();
+        raw.getOutputStream().write(Arrays.copyOf(frame, frame.length - 2));
+        raw.close();
+
+        assertThrows(EOFException.class, other::readMessage);
+        other.close();
+    }
+}
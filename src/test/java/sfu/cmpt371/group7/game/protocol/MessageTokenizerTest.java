@@ -0,0 +1,125 @@
+package sfu.cmpt371.group7.game.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fields read in place by {@link MessageTokenizer}, and the fields it refuses.
+ */
+class MessageTokenizerTest {
+
+    private final MessageTokenizer tokens = new MessageTokenizer();
+
+    @Test
+    void fieldsAreReadInOrder() {
+        tokens.reset("movePlayer alice 3 17");
+        assertEquals(4, tokens.remaining());
+        assertEquals(MessageType.MOVE_PLAYER, tokens.nextType());
+        assertEquals(3, tokens.remaining());
+        assertEquals("alice", tokens.nextString());
+        assertEquals(3, tokens.nextInt());
+        assertEquals(17, tokens.nextInt());
+        assertEquals(0, tokens.remaining());
+        assertFalse(tokens.next());
+    }
+
+    @Test
+    void integersMayBeNegative() {
+        tokens.reset("updateCount -1 -2147483648 0 2147483647");
+        tokens.next();
+        assertEquals(-1, tokens.nextInt());
+        assertEquals(Integer.MIN_VALUE, tokens.nextInt());
+        assertEquals(0, tokens.nextInt());
+        assertEquals(Integer.MAX_VALUE, tokens.nextInt());
+    }
+
+    @Test
+    void nonNumericAndMissingFieldsAreRefused() {
+        tokens.reset("movePlayer alice x 2147483648");
+        tokens.next();
+        assertThrows(NumberFormatException.class, tokens::nextInt);
+        assertThrows(NumberFormatException.class, tokens::nextInt);
+        assertThrows(NumberFormatException.class, tokens::nextInt);
+        // Nothing left
+        assertThrows(NumberFormatException.class, tokens::nextInt);
+        assertThrows(IllegalStateException.class, tokens::nextString);
+    }
+
+    @Test
+    void unknownAndMissingTypesAreNull() {
+        assertNull(tokens.reset("notAMessageType 1 2").nextType());
+        assertNull(tokens.reset("").nextType());
+        assertNull(tokens.reset("   ").nextType());
+        assertEquals(MessageType.START_GAME, tokens.reset("startGame").nextType());
+    }
+
+    @Test
+    void fieldsAreComparedInPlace() {
+        tokens.reset("teamSelection red alice");
+        tokens.next();
+        tokens.next();
+        assertTrue(tokens.tokenEquals("red"));
+        assertFalse(tokens.tokenEquals("blue"));
+        assertFalse(tokens.tokenEquals("re"));
+        assertFalse(tokens.tokenEquals("redd"));
+        tokens.next();
+        assertTrue(tokens.tokenEquals("alice"));
+        assertEquals("alice", tokens.tokenString());
+    }
+
+    @Test
+    void hashAgreesWithStringHashCode() {
+        String[] names = {"alice", "zoë", "Aa", "BB", "a_much_longer_player_name_than_usual", "-42"};
+        for (String name : names) {
+            tokens.reset("movePlayer " + name + " 1 2");
+            tokens.next();
+            tokens.next();
+            assertEquals(name.hashCode(), tokens.tokenHash(), name);
+        }
+        // An empty message has an empty field, hashed like the empty string
+        tokens.reset("");
+        assertEquals("".hashCode(), tokens.tokenHash());
+    }
+
+    @Test
+    void runsOfSpacesSeparateOneField() {
+        tokens.reset("  teamSelection   red  alice ");
+        assertEquals(3, tokens.remaining());
+        assertEquals(MessageType.TEAM_SELECTION, tokens.nextType());
+        assertEquals("red", tokens.nextString());
+        assertEquals("alice", tokens.nextString());
+        assertEquals(0, tokens.remaining());
+        assertFalse(tokens.next());
+    }
+
+    @Test
+    void trailingSpaceAddsNoField() {
+        // The client ends flagCoordinates with a space after the last co-ordinate
+        tokens.reset("flagCoordinates 5 5 5 10 ");
+        tokens.next();
+        assertEquals(4, tokens.remaining());
+        int sum = 0;
+        while (tokens.remaining() > 0) {
+            sum += tokens.nextInt();
+        }
+        assertEquals(25, sum);
+        assertFalse(tokens.next());
+        assertThrows(NumberFormatException.class, tokens::nextInt);
+    }
+
+    @Test
+    void resetStartsOver() {
+        tokens.reset("movePlayer alice 3 17");
+        tokens.nextType();
+        tokens.nextString();
+        tokens.reset("exitGame bob");
+        assertEquals(2, tokens.remaining());
+        assertEquals(MessageType.EXIT_GAME, tokens.nextType());
+        assertEquals("bob", tokens.nextString());
+    }
+}
@@ -0,0 +1,103 @@
+package sfu.cmpt371.group7.game.server;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays datagrams between one client and a server over loopback, dropping some of them and
+ * delaying the rest by a random time, so datagrams also arrive out of order.
+ * <p>
+ * The client sends to {@link #getAddress()}, and the server sees the datagrams come from the
+ * proxy. Loss and delay are drawn from a seeded {@link Random}, in both directions.
+ */
+class LossyDatagramProxy implements AutoCloseable {
+    private final SocketAddress server;
+    private final double loss;
+    private final int maxDelayMillis;
+    private final Random random;
+    /** Faces the client. */
+    private final DatagramSocket outside;
+    /** Faces the server. */
+    private final DatagramSocket inside;
+    private final ScheduledExecutorService delays = Executors.newSingleThreadScheduledExecutor();
+    /** Where the client last sent from, {@code null} until it sent something. */
+    private volatile SocketAddress client;
+
+    /**
+     * Opens a proxy on free loopback ports and starts relaying.
+     *
+     * @param server The server's UDP address.
+     * @param loss The fraction of datagrams dropped, from 0 to 1.
+     * @param maxDelayMillis The longest a datagram is held before it is passed on.
+     * @param seed The seed for the losses and delays.
+     * @throws IOException if the sockets cannot be opened.
+     */
+    LossyDatagramProxy(SocketAddress server, double loss, int maxDelayMillis, long seed) throws IOException {
+        this.server = server;
+        this.loss = loss;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = new Random(seed);
+        this.outside = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        this.inside = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        Thread.ofPlatform().name("proxy-out").daemon().start(() -> relay(outside, inside, true));
+        Thread.ofPlatform().name("proxy-in").daemon().start(() -> relay(inside, outside, false));
+    }
+
+    /**
+     * Gets the address the client sends to.
+     * @return the proxy's loopback address facing the client
+     */
+    SocketAddress getAddress() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), outside.getLocalPort());
+    }
+
+    @Override
+    public void close() {
+        outside.close();
+        inside.close();
+        delays.shutdownNow();
+    }
+
+    /**
+     * Passes on the datagrams read from one socket through the other until the sockets are closed.
+     */
+    private void relay(DatagramSocket from, DatagramSocket to, boolean fromClient) {
+        byte[] buffer = new byte[UdpChannel.MAX_DATAGRAM];
+        while (!from.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                from.receive(packet);
+            } catch (IOException e) {
+                return;
+            }
+            if (fromClient) {
+                client = packet.getSocketAddress();
+            }
+            SocketAddress target = fromClient ? server : client;
+            byte[] data = Arrays.copyOf(packet.getData(), packet.getLength());
+            long delay;
+            synchronized (random) {
+                if (random.nextDouble() < loss) {
+                    continue;
+                }
+                delay = random.nextInt(maxDelayMillis + 1);
+            }
+            delays.schedule(() -> {
+                try {
+                    to.send(new DatagramPacket(data, data.length, target));
+                } catch (IOException e) {
+                    // Closed, or lost like any other datagram
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
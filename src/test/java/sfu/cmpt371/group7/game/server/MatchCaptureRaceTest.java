@@ -0,0 +1,135 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Races captures of one flag from several threads, in the style of a jcstress test: every round
+ * runs in a fresh match, the racing messages are released together, and the outcomes are counted.
+ * Whatever the interleaving, a flag may only be captured once and only counted once for its team.
+ * <p>
+ * The red players after the first spawn at 17,0, two steps away from flag5 at 16,2.
+ */
+class MatchCaptureRaceTest {
+
+    private static final int ROUNDS = 100;
+    private static final String[] RACERS = {"carol", "dave", "erin"};
+
+    /**
+     * Walks a red player spawned at 17,0 onto flag5.
+     */
+    private void walkToTheFlag(TestClient client) {
+        client.send("movePlayer " + client.name + " 17 1");
+        client.send("movePlayer " + client.name + " 17 2");
+        client.send("movePlayer " + client.name + " 16 2");
+    }
+
+    /**
+     * Runs a task on each of several threads, all released at once, and waits for them.
+     */
+    private void race(Runnable... tasks) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            Runnable task = tasks[i];
+            threads[i] = Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.run();
+            });
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Reads the red team's score on the match's command loop.
+     */
+    private int redScore(Server server, String room) throws InterruptedException {
+        Match match = server.getMatch(room);
+        AtomicInteger score = new AtomicInteger();
+        CountDownLatch read = new CountDownLatch(1);
+        match.submit(() -> {
+            score.set(match.getFlagCount("red"));
+            read.countDown();
+        });
+        assertTrue(read.await(10, TimeUnit.SECONDS), "match did not answer");
+        return score.get();
+    }
+
+    @Test
+    void exactlyOneOfTheRacingHoldsCapturesTheFlag() throws InterruptedException {
+        // Holds complete on the next tick of the timing wheel, so they all complete together
+        Server server = new Server(new ServerConfig(Map.of("SERVER_CAPTURE_TIME", "0")::get));
+        Map<String, Integer> outcomes = new TreeMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            String room = "race" + round;
+            TestClient alice = TestClient.join(server, room, "red", "alice");
+            TestClient[] racers = new TestClient[RACERS.length];
+            Runnable[] begins = new Runnable[RACERS.length];
+            for (int i = 0; i < RACERS.length; i++) {
+                TestClient racer = TestClient.join(server, room, "red", RACERS[i]);
+                racers[i] = racer;
+                begins[i] = () -> racer.send("captureBegin " + racer.name + " flag5");
+            }
+            alice.send(TestClient.FLAGS);
+            for (TestClient racer : racers) {
+                walkToTheFlag(racer);
+            }
+
+            race(begins);
+            alice.await("flagCaptured");
+            // Let every hold's timer expire before counting
+            Thread.sleep(30);
+            alice.drain();
+
+            assertEquals(1, alice.connection.count("flagCaptured"), alice.connection.messages().toString());
+            assertEquals(RACERS.length - 1, alice.connection.count("respawnPlayer"), alice.connection.messages().toString());
+            assertEquals(1, redScore(server, room));
+            outcomes.merge(alice.connection.messages().stream()
+                    .filter(message -> message.startsWith("flagCaptured"))
+                    .findFirst().orElseThrow(), 1, Integer::sum);
+        }
+        System.out.println("Capture race outcomes: " + outcomes);
+    }
+
+    @Test
+    void holdThatIsGivenUpAsItCompletesEitherCapturesOrRespawns() throws InterruptedException {
+        Server server = new Server(new ServerConfig(Map.of("SERVER_CAPTURE_TIME", "10")::get));
+        Map<String, Integer> outcomes = new TreeMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            String room = "giveup" + round;
+            TestClient alice = TestClient.join(server, room, "red", "alice");
+            TestClient carol = TestClient.join(server, room, "red", "carol");
+            alice.send(TestClient.FLAGS);
+            walkToTheFlag(carol);
+            carol.send("captureBegin carol flag5");
+
+            // Let go at a different time around the hold's completion every round
+            Thread.sleep(round % 25);
+            carol.send("captureDuration carol flag5 0.01");
+            Thread.sleep(40);
+            alice.drain();
+
+            long captured = alice.connection.count("flagCaptured carol flag5");
+            long respawned = alice.connection.count("respawnPlayer carol");
+            assertEquals(1, captured + respawned, alice.connection.messages().toString());
+            assertEquals(captured, redScore(server, room));
+            outcomes.merge(captured == 1 ? "captured" : "respawned", 1, Integer::sum);
+        }
+        System.out.println("Give up race outcomes: " + outcomes);
+    }
+}
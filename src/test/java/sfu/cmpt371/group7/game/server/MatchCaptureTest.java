@@ -0,0 +1,129 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Captures timed by the server. carol is the second red player, spawned at 17,0,
+ * two steps away from flag5 at 16,2.
+ */
+class MatchCaptureTest {
+
+    /** A capture time short enough for tests. */
+    private static final int CAPTURE_TIME = 100;
+
+    /**
+     * Starts a match on a server with the given settings and walks carol onto flag5.
+     * alice only watches.
+     */
+    private TestClient[] carolOnTheFlag(Map<String, String> settings) {
+        Server server = new Server(new ServerConfig(settings::get));
+        TestClient alice = TestClient.join(server, "flags", "red", "alice");
+        TestClient carol = TestClient.join(server, "flags", "red", "carol");
+        alice.send(TestClient.FLAGS);
+        carol.send("movePlayer carol 17 1");
+        carol.send("movePlayer carol 17 2");
+        carol.send("movePlayer carol 16 2");
+        return new TestClient[] {alice, carol};
+    }
+
+    @Test
+    void flagIsCapturedOnceTheHoldLastsTheCaptureTime() {
+        TestClient[] clients = carolOnTheFlag(Map.of("SERVER_CAPTURE_TIME", String.valueOf(CAPTURE_TIME)));
+        TestClient alice = clients[0];
+        TestClient carol = clients[1];
+
+        long start = System.nanoTime();
+        carol.send("captureBegin carol flag5");
+        alice.await("flagCaptured carol flag5");
+
+        assertTrue(System.nanoTime() - start >= CAPTURE_TIME * 1_000_000L);
+        // Letting go afterwards changes nothing
+        carol.send("captureDuration carol flag5 0.2");
+        carol.drain();
+        assertEquals(0, carol.connection.count("respawnPlayer"));
+    }
+
+    @Test
+    void movingOffTheFlagCancelsTheHold() throws InterruptedException {
+        TestClient[] clients = carolOnTheFlag(Map.of("SERVER_CAPTURE_TIME", String.valueOf(CAPTURE_TIME)));
+        TestClient alice = clients[0];
+        TestClient carol = clients[1];
+
+        carol.send("captureBegin carol flag5");
+        carol.send("movePlayer carol 17 2");
+        Thread.sleep(CAPTURE_TIME * 3);
+        alice.drain();
+
+        assertEquals(0, alice.connection.count("flagCaptured"), alice.connection.messages().toString());
+        assertEquals(0, alice.connection.count("respawnPlayer"));
+    }
+
+    @Test
+    void holdStartedOffTheFlagIsIgnored() throws InterruptedException {
+        TestClient[] clients = carolOnTheFlag(Map.of("SERVER_CAPTURE_TIME", String.valueOf(CAPTURE_TIME)));
+        TestClient alice = clients[0];
+
+        clients[1].send("captureBegin carol flag1");
+        Thread.sleep(CAPTURE_TIME * 3);
+        alice.drain();
+
+        assertEquals(0, alice.connection.count("flagCaptured"), alice.connection.messages().toString());
+    }
+
+    @Test
+    void givingUpTheHoldRespawnsThePlayer() throws InterruptedException {
+        TestClient[] clients = carolOnTheFlag(Map.of("SERVER_CAPTURE_TIME", String.valueOf(CAPTURE_TIME)));
+        TestClient alice = clients[0];
+        TestClient carol = clients[1];
+
+        carol.send("captureBegin carol flag5");
+        // The duration the client measured does not count
+        carol.send("captureDuration carol flag5 3.5");
+        Thread.sleep(CAPTURE_TIME * 3);
+        alice.drain();
+
+        assertEquals(1, alice.connection.count("respawnPlayer carol 17 0"), alice.connection.messages().toString());
+        assertEquals(0, alice.connection.count("flagCaptured"));
+    }
+
+    @Test
+    void respawnWaitsForTheDelayAndFreezesThePlayer() {
+        TestClient[] clients = carolOnTheFlag(Map.of("SERVER_RESPAWN_DELAY", "200"));
+        TestClient alice = clients[0];
+        TestClient carol = clients[1];
+
+        carol.send("captureDuration carol flag5 0.0");
+        carol.send("movePlayer carol 17 2 1");
+        carol.drain();
+        assertEquals(0, carol.connection.count("respawnPlayer"));
+        assertEquals(1, carol.connection.count("moveAck 1 16 2"), carol.connection.messages().toString());
+
+        alice.await("respawnPlayer carol 17 0");
+    }
+
+    @Test
+    void idlePlayerIsDisconnected() throws InterruptedException {
+        Server server = new Server(new ServerConfig(Map.of("SERVER_IDLE_TIMEOUT", "1")::get));
+        TestClient[] clients = new TestClient[Match.NUM_PLAYERS];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = TestClient.join(server, "idle", i % 2 == 0 ? "red" : "blue", "p" + i);
+        }
+        TestClient active = clients[0];
+
+        // p0 walks back and forth between 2,1 and 2,2 while the others do nothing
+        long end = System.nanoTime() + 1_500_000_000L;
+        for (int step = 0; System.nanoTime() < end; step++) {
+            active.send("movePlayer p0 2 " + (step % 2 == 0 ? 1 : 2));
+            Thread.sleep(100);
+        }
+        active.await("playerLeft p3");
+
+        assertEquals(1, active.connection.count("playerLeft p1"), active.connection.messages().toString());
+        assertEquals(0, active.connection.count("playerLeft p0"));
+    }
+}
@@ -0,0 +1,137 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a match's command loop applies commands submitted from many threads
+ * one at a time, all of them, and in the order each thread submitted them.
+ */
+class MatchCommandLoopTest {
+
+    private static final int SUBMITTERS = 8;
+    private static final int COMMANDS_PER_SUBMITTER = 20_000;
+
+    private final ExecutorService loopThreads = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        loopThreads.shutdownNow();
+    }
+
+    @Test
+    void eachRunFlushesEveryClientOnceAfterItsMessages() {
+        Server server = new Server(new ServerConfig(Map.<String, String>of()::get));
+        // Runs are only started by the test, so several commands pile up for one run
+        ArrayDeque<Runnable> runs = new ArrayDeque<>();
+        Match match = new Match("flush", server, runs::add);
+        RecordingConnection first = new RecordingConnection();
+        RecordingConnection second = new RecordingConnection();
+        match.addClient(server.register(first));
+        match.addClient(server.register(second));
+        match.submit(() -> match.broadcast("updateCount 1"));
+        match.submit(() -> match.broadcast("updateCount 2"));
+
+        assertEquals(0, first.flushes());
+        runs.poll().run();
+
+        assertEquals(List.of("joinedRoom flush", "updateCount 1", "updateCount 2"), first.messages());
+        assertEquals(1, first.flushes());
+        assertEquals(1, second.flushes());
+        assertTrue(runs.isEmpty());
+    }
+
+    @Test
+    void commandsSubmittedWhileTheRingIsFullKeepTheirOrder() {
+        Server server = new Server(new ServerConfig(Map.<String, String>of()::get));
+        ArrayDeque<Runnable> runs = new ArrayDeque<>();
+        Match match = new Match("overflow", server, runs::add);
+        RecordingConnection connection = new RecordingConnection();
+        match.addClient(server.register(connection));
+        // Nothing runs until the test starts the runs, so most of these wait in the overflow queue
+        for (int i = 0; i < 3000; i++) {
+            int count = i;
+            match.submit(() -> match.broadcast("updateCount " + count));
+        }
+
+        runs.poll().run();
+        // The first run freed slots in the ring, but a command submitted now still goes behind the ones waiting
+        match.submit(() -> match.broadcast("updateCount 3000"));
+        while (!runs.isEmpty()) {
+            runs.poll().run();
+        }
+
+        List<String> messages = connection.messages();
+        assertEquals(3002, messages.size());
+        for (int i = 0; i <= 3000; i++) {
+            assertEquals("updateCount " + i, messages.get(i + 1));
+        }
+    }
+
+    @Test
+    void commandsFromManyThreadsRunOneAtATimeInSubmissionOrder() throws InterruptedException {
+        Server server = new Server(new ServerConfig(Map.<String, String>of()::get));
+        // Several pool threads, so only the loop itself keeps the commands apart
+        Match match = new Match("loop", server, loopThreads);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        // Only touched by commands, so plain fields are enough if the loop is single-writer
+        int[] lastSeen = new int[SUBMITTERS];
+        int[] applied = new int[1];
+        Arrays.fill(lastSeen, -1);
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] submitters = new Thread[SUBMITTERS];
+        for (int t = 0; t < SUBMITTERS; t++) {
+            int submitter = t;
+            submitters[t] = Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < COMMANDS_PER_SUBMITTER; i++) {
+                    int sequence = i;
+                    match.submit(() -> {
+                        if (running.incrementAndGet() != 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        if (lastSeen[submitter] != sequence - 1) {
+                            outOfOrder.incrementAndGet();
+                        }
+                        lastSeen[submitter] = sequence;
+                        applied[0]++;
+                        running.decrementAndGet();
+                    });
+                }
+            });
+        }
+        start.countDown();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        CountDownLatch drained = new CountDownLatch(1);
+        match.submit(drained::countDown);
+        assertTrue(drained.await(10, TimeUnit.SECONDS), "command loop did not drain");
+
+        assertEquals(0, overlaps.get(), "commands overlapped");
+        assertEquals(0, outOfOrder.get(), "commands of one thread ran out of order");
+        assertEquals(SUBMITTERS * COMMANDS_PER_SUBMITTER, applied[0]);
+    }
+}
@@ -0,0 +1,116 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Moves players in a match with an interest radius of 5 cells and checks who is told.
+ * alice spawns at 2,0 and carol at 17,0 on the red team, bob at 2,19 and dave at 17,19 on the blue team,
+ * so every player starts out of range of the others. Moves are not validated, so players can jump.
+ */
+class MatchInterestTest {
+
+    private Server server;
+
+    /**
+     * Starts a match on a server with an interest radius and the given extra settings, with all four players in it.
+     */
+    private TestClient[] fourPlayers(String room, Map<String, String> settings) {
+        Map<String, String> all = new HashMap<>(settings);
+        all.put("SERVER_INTEREST_RADIUS", "5");
+        all.put("SERVER_VALIDATE_MOVES", "false");
+        server = new Server(new ServerConfig(all::get));
+        String[][] players = {{"red", "alice"}, {"red", "carol"}, {"blue", "bob"}, {"blue", "dave"}};
+        TestClient[] clients = new TestClient[players.length];
+        for (int i = 0; i < players.length; i++) {
+            clients[i] = TestClient.join(server, room, players[i][0], players[i][1]);
+        }
+        return clients;
+    }
+
+    @Test
+    void movesOfPlayersOutOfRangeAreNotSent() {
+        TestClient[] clients = fourPlayers("far", Map.of());
+        TestClient alice = clients[0];
+        TestClient carol = clients[1];
+
+        alice.send("movePlayer alice 2 1");
+        alice.drain();
+        carol.drain();
+
+        assertEquals(1, alice.connection.count("movePlayer alice 2 1"), alice.connection.messages().toString());
+        assertEquals(0, carol.connection.count("movePlayer alice"), carol.connection.messages().toString());
+        // Players that joined out of range were hidden again right after they were sent
+        assertEquals(1, alice.connection.count("hidePlayer dave"));
+    }
+
+    @Test
+    void playersComingIntoAndGoingOutOfRangeAreShownAndHidden() {
+        TestClient[] clients = fourPlayers("range", Map.of());
+        TestClient alice = clients[0];
+        TestClient carol = clients[1];
+        TestClient bob = clients[2];
+
+        carol.send("movePlayer carol 6 0");
+        carol.send("movePlayer carol 7 0");
+        carol.send("movePlayer carol 17 0");
+        alice.drain();
+        bob.drain();
+
+        assertEquals(1, alice.connection.count("sendingPlayer carol red 6 0"), alice.connection.messages().toString());
+        assertEquals(1, alice.connection.count("movePlayer carol 7 0"));
+        assertEquals(2, alice.connection.count("hidePlayer carol"));
+        assertEquals(0, alice.connection.count("movePlayer carol 17 0"));
+        // The mover sees the players around it come and go too
+        assertEquals(1, carol.connection.count("sendingPlayer alice red 2 0"), carol.connection.messages().toString());
+        assertEquals(1, carol.connection.count("hidePlayer alice"));
+        assertEquals(0, bob.connection.count("movePlayer carol"), bob.connection.messages().toString());
+    }
+
+    @Test
+    void clientWithoutAPlayerIsSentEverythingAndGameWindowOnlyItsArea() {
+        TestClient[] clients = fourPlayers("window", Map.of());
+        TestClient alice = clients[0];
+        TestClient carol = clients[1];
+        // A client that never says which player it plays, then alice's game window
+        TestClient spectator = new TestClient(server, "spectator");
+        spectator.send("joinRoom window");
+        TestClient window = new TestClient(server, "alice");
+        window.send("joinRoom window");
+        window.send("resendPlayers alice");
+
+        carol.send("movePlayer carol 17 1");
+        carol.send("gameOver red");
+        spectator.drain();
+        window.drain();
+
+        assertEquals(1, spectator.connection.count("movePlayer carol 17 1"), spectator.connection.messages().toString());
+        assertEquals(1, window.connection.count("sendingPlayer alice red 2 0"), window.connection.messages().toString());
+        assertEquals(1, window.connection.count("hidePlayer carol"));
+        assertEquals(0, window.connection.count("movePlayer carol"));
+        // Game events still go to every client
+        assertEquals(1, window.connection.count("gameOver red"));
+        assertEquals(1, alice.connection.count("gameOver red"));
+    }
+
+    @Test
+    void tickOnlyCarriesTheMovesAClientSees() {
+        TestClient[] clients = fourPlayers("tick", Map.of("SERVER_TICK_RATE", "100"));
+        TestClient alice = clients[0];
+        TestClient carol = clients[1];
+
+        alice.send("movePlayer alice 2 1");
+        carol.send("movePlayer carol 16 0");
+        alice.await("movePlayers");
+        carol.await("movePlayers");
+        alice.drain();
+
+        assertEquals(0, alice.connection.count("movePlayers carol"), alice.connection.messages().toString());
+        assertEquals(1, alice.connection.count("movePlayers alice 2 1"));
+        assertEquals(0, carol.connection.count("movePlayers alice"), carol.connection.messages().toString());
+    }
+}
@@ -0,0 +1,96 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Moves players around a match and checks what the movers and the other clients are told.
+ * The first red player spawns at 2,0, the later ones at 17,0, and the first blue player at 2,19.
+ */
+class MatchMovementTest {
+
+    private final Server server = new Server(new ServerConfig(Map.<String, String>of()::get));
+
+    @Test
+    void numberedMoveIsAcknowledgedToTheMoverOnly() {
+        TestClient alice = TestClient.join(server, "ack", "red", "alice");
+        TestClient bob = TestClient.join(server, "ack", "blue", "bob");
+
+        alice.send("movePlayer alice 2 1 7");
+        alice.send("movePlayer alice 2 2");
+        alice.drain();
+        bob.drain();
+
+        assertEquals(1, alice.connection.count("moveAck 7 2 1"), alice.connection.messages().toString());
+        assertEquals(1, alice.connection.count("moveAck"));
+        assertEquals(0, bob.connection.count("moveAck"));
+        assertEquals(1, bob.connection.count("movePlayer alice 2 1"));
+        assertEquals(1, bob.connection.count("movePlayer alice 2 2"));
+    }
+
+    @Test
+    void movesThroughWallsJumpsAndHomesAreRefusedAndNotBroadcast() {
+        TestClient alice = TestClient.join(server, "walls", "red", "alice");
+        TestClient bob = TestClient.join(server, "walls", "blue", "bob");
+
+        // Two cells at once, then into the wall above the home
+        alice.send("movePlayer alice 2 2 1");
+        alice.send("movePlayer alice 1 0 2");
+        alice.send("movePlayer alice 2 1 3");
+        // Back into the home, without a sequence number
+        alice.send("movePlayer alice 2 0");
+        alice.drain();
+        bob.drain();
+
+        assertEquals(1, alice.connection.count("moveAck 1 2 0"), alice.connection.messages().toString());
+        assertEquals(1, alice.connection.count("moveAck 2 2 0"));
+        assertEquals(1, alice.connection.count("moveAck 3 2 1"));
+        // The broadcast of the accepted move, and the position sent back for the refused one
+        assertEquals(2, alice.connection.count("movePlayer alice 2 1"));
+        assertEquals(1, bob.connection.count("movePlayer alice"), bob.connection.messages().toString());
+        assertEquals(0, bob.connection.count("movePlayer alice 2 0"));
+    }
+
+    @Test
+    void playersOnlyShareFlags() {
+        TestClient alice = TestClient.join(server, "share", "red", "alice");
+        TestClient carol = TestClient.join(server, "share", "red", "carol");
+        TestClient dave = TestClient.join(server, "share", "red", "dave");
+
+        // carol and dave both spawn at 17,0; the flag at 16,2 is two steps away
+        carol.send("movePlayer carol 17 1 1");
+        dave.send("movePlayer dave 17 1 1");
+        carol.send("movePlayer carol 17 2 2");
+        carol.send("movePlayer carol 16 2 3");
+        dave.send("movePlayer dave 17 1 2");
+        dave.send("movePlayer dave 17 2 3");
+        dave.send("movePlayer dave 16 2 4");
+        carol.drain();
+        dave.drain();
+        alice.drain();
+
+        assertEquals(1, carol.connection.count("moveAck 3 16 2"), carol.connection.messages().toString());
+        assertEquals(1, dave.connection.count("moveAck 1 17 0"), dave.connection.messages().toString());
+        assertEquals(1, dave.connection.count("moveAck 4 16 2"));
+        assertEquals(1, alice.connection.count("movePlayer dave 17 1"), alice.connection.messages().toString());
+    }
+
+    @Test
+    void movesFasterThanTheRateAreRefused() {
+        Server limited = new Server(new ServerConfig(Map.of("SERVER_MOVE_RATE", "2")::get));
+        TestClient alice = TestClient.join(limited, "rate", "red", "alice");
+
+        // A burst of two is allowed, the third move right after is not
+        alice.send("movePlayer alice 2 1 1");
+        alice.send("movePlayer alice 2 2 2");
+        alice.send("movePlayer alice 2 3 3");
+        alice.drain();
+
+        assertEquals(1, alice.connection.count("moveAck 2 2 2"), alice.connection.messages().toString());
+        assertEquals(1, alice.connection.count("moveAck 3 2 2"));
+        assertEquals(0, alice.connection.count("movePlayer alice 2 3"));
+    }
+}
@@ -0,0 +1,87 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Snapshots sent to a client that acknowledges them. alice, player 0, spawns at 2,0 and bob, player 1, at 2,19.
+ * alice asks for snapshots and bob moves; moves are not validated, so bob can step anywhere.
+ * Without a tick rate a snapshot is sent at the end of the command loop run that changed something.
+ */
+class MatchSnapshotTest {
+
+    private final Server server = new Server(new ServerConfig(Map.of("SERVER_VALIDATE_MOVES", "false")::get));
+
+    /**
+     * Waits until every command loop run started so far has ended, snapshots included:
+     * the second answer comes from a run that started after the first answer was sent.
+     */
+    private void settle(TestClient client) {
+        client.drain();
+        client.drain();
+    }
+
+    @Test
+    void firstSnapshotIsFullAndLaterOnesOnlyCarryChanges() {
+        TestClient alice = TestClient.join(server, "delta", "red", "alice");
+        TestClient bob = TestClient.join(server, "delta", "blue", "bob");
+
+        alice.send("snapshotAck 0");
+        alice.await("snapshot 1 ");
+        assertEquals(1, alice.connection.count("snapshot 1 0 0 0 7 alice red 2 0 1 7 bob blue 2 19"), alice.connection.messages().toString());
+
+        alice.send("snapshotAck 1");
+        bob.send("movePlayer bob 2 18");
+        alice.await("snapshot 2 ");
+        settle(alice);
+
+        assertEquals(1, alice.connection.count("snapshot 2 1 0 1 2 18"), alice.connection.messages().toString());
+        assertEquals(0, alice.connection.count("movePlayer bob"));
+        assertEquals(1, bob.connection.count("movePlayer bob 2 18"));
+        // Nothing changed since, and snapshot 2 is not acknowledged yet, but it is not due again
+        assertEquals(0, alice.connection.count("snapshot 3 "));
+    }
+
+    @Test
+    void changesAreSentAgainUntilAcknowledged() {
+        TestClient alice = TestClient.join(server, "resend", "red", "alice");
+        TestClient bob = TestClient.join(server, "resend", "blue", "bob");
+        alice.send("snapshotAck 0");
+        alice.await("snapshot 1 ");
+        alice.send("snapshotAck 1");
+
+        bob.send("movePlayer bob 3 19");
+        alice.await("snapshot 2 ");
+        bob.send("movePlayer bob 3 18");
+        alice.await("snapshot 3 ");
+        bob.send("exitGame bob");
+        alice.await("snapshot 4 ");
+
+        assertEquals(1, alice.connection.count("snapshot 2 1 0 1 1 3"), alice.connection.messages().toString());
+        // Both co-ordinates changed since snapshot 1, which is still the last one acknowledged
+        assertEquals(1, alice.connection.count("snapshot 3 1 0 1 3 3 18"));
+        assertEquals(1, alice.connection.count("snapshot 4 1 0 1 8"));
+    }
+
+    @Test
+    void clientTooFarBehindGetsAFullSnapshot() {
+        TestClient alice = TestClient.join(server, "behind", "red", "alice");
+        TestClient bob = TestClient.join(server, "behind", "blue", "bob");
+        alice.send("snapshotAck 0");
+        alice.await("snapshot 1 ");
+        alice.send("snapshotAck 1");
+
+        int last = 1;
+        for (int i = 0; i < SnapshotHistory.HISTORY; i++) {
+            bob.send("movePlayer bob 2 " + (i % 2 == 0 ? 18 : 19));
+            last++;
+            alice.await("snapshot " + last + " ");
+        }
+
+        assertEquals(1, alice.connection.count("snapshot " + (last - 1) + " 1 "), alice.connection.messages().toString());
+        assertEquals(1, alice.connection.count("snapshot " + last + " 0 0 0 7 alice red 2 0 1 7 bob blue 2 19"));
+    }
+}
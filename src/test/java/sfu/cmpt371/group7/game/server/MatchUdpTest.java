@@ -0,0 +1,199 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Snapshots sent over UDP through a proxy that drops a fifth of the datagrams and delays the rest.
+ * alice, player 0, asks for snapshots over UDP and bob, player 1, moves; moves are not validated,
+ * so bob can step anywhere. The match ticks, so a snapshot that is not acknowledged is sent again.
+ */
+class MatchUdpTest {
+
+    private final Server server = new Server(new ServerConfig(Map.of(
+            "SERVER_VALIDATE_MOVES", "false",
+            "SERVER_TICK_RATE", "100")::get));
+
+    /** bob's position in each snapshot applied, by sequence; {@code null} when the snapshot does not have bob. */
+    private final Map<Integer, int[]> bobIn = new HashMap<>();
+    private int shown;
+
+    @Test
+    void snapshotsOverLossyUdpConvergeAndEventsStayOnTcp() throws IOException {
+        UdpChannel udp = server.openUdpChannel(0);
+        TestClient alice = TestClient.join(server, "udp", "red", "alice");
+        TestClient bob = TestClient.join(server, "udp", "blue", "bob");
+
+        alice.send("snapshotAck 0");
+        alice.send("udpRequest");
+        alice.await("udpOffer ");
+        String offer = alice.connection.messages().stream().filter(m -> m.startsWith("udpOffer ")).findFirst().orElseThrow();
+        String[] fields = offer.split(" ");
+        assertEquals(udp.getPort(), Integer.parseInt(fields[1]));
+
+        try (LossyDatagramProxy proxy = new LossyDatagramProxy(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), udp.getPort()), 0.2, 30, 7);
+             DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            socket.setSoTimeout(20);
+            String bind = "udpBind " + fields[2];
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            boolean bound = false;
+            while (!bound) {
+                if (System.nanoTime() > deadline) {
+                    fail("bind was not echoed");
+                }
+                send(socket, proxy, bind);
+                String datagram = receive(socket);
+                bound = bind.equals(datagram);
+                apply(socket, proxy, datagram);
+            }
+            long overTcp = alice.connection.count("snapshot ");
+
+            for (int i = 1; i <= 40; i++) {
+                bob.send("movePlayer bob " + (i % 20) + " " + (19 - i % 7));
+            }
+            awaitBob(socket, proxy, new int[] {0, 14});
+            // Moves are replaced by snapshots, and the snapshots go over UDP
+            assertEquals(0, alice.connection.count("movePlayer"));
+            assertEquals(overTcp, alice.connection.count("snapshot "));
+
+            bob.send("exitGame bob");
+            alice.await("playerLeft bob");
+            awaitBob(socket, proxy, null);
+            assertEquals(overTcp, alice.connection.count("snapshot "));
+        } finally {
+            udp.close();
+        }
+    }
+
+    @Test
+    void offerWithoutUdpChannelHasPortZero() {
+        TestClient alice = TestClient.join(server, "tcp", "red", "alice");
+        alice.send("udpRequest");
+        alice.await("udpOffer ");
+        assertEquals(1, alice.connection.count("udpOffer 0 0"));
+    }
+
+    @Test
+    void idleClientIsForgotten() throws IOException, InterruptedException {
+        Server idle = new Server(new ServerConfig(Map.of("SERVER_IDLE_TIMEOUT", "1")::get));
+        UdpChannel udp = idle.openUdpChannel(0);
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            // Idle players are only watched once the game has started, with every player in
+            TestClient[] clients = new TestClient[Match.NUM_PLAYERS];
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = TestClient.join(idle, "idle", i % 2 == 0 ? "red" : "blue", "p" + i);
+            }
+            TestClient active = clients[0];
+            clients[1].send("udpRequest");
+            clients[1].await("udpOffer ");
+            String offer = clients[1].connection.messages().stream().filter(m -> m.startsWith("udpOffer ")).findFirst().orElseThrow();
+
+            // p0 walks back and forth between 2,1 and 2,2 until the match drops p1 for doing nothing
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            for (int step = 0; active.connection.count("playerLeft p1") == 0; step++) {
+                assertTrue(System.nanoTime() < deadline, "p1 was not dropped");
+                active.send("movePlayer p0 2 " + (step % 2 == 0 ? 1 : 2));
+                Thread.sleep(100);
+            }
+
+            // The offer went when the match closed p1's connection, so binding with it is not echoed
+            socket.setSoTimeout(500);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), udp.getPort()));
+            byte[] bind = ("udpBind " + offer.split(" ")[2]).getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(bind, bind.length));
+            assertNull(receive(socket));
+        } finally {
+            udp.close();
+        }
+    }
+
+    /**
+     * Receives and applies snapshots until bob is at a position, or is gone when it is {@code null}.
+     */
+    private void awaitBob(DatagramSocket socket, LossyDatagramProxy proxy, int[] position) throws IOException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (true) {
+            int[] bob = bobIn.get(shown);
+            if (shown > 0 && (position == null ? bob == null : bob != null && bob[0] == position[0] && bob[1] == position[1])) {
+                return;
+            }
+            assertTrue(System.nanoTime() < deadline, "bob did not reach " + (position == null ? "gone" : position[0] + "," + position[1]));
+            apply(socket, proxy, receive(socket));
+        }
+    }
+
+    /**
+     * Applies a snapshot datagram the way the game window does, keeping only bob, and acknowledges it over UDP.
+     */
+    private void apply(DatagramSocket socket, LossyDatagramProxy proxy, String datagram) throws IOException {
+        if (datagram == null || !datagram.startsWith("snapshot ")) {
+            return;
+        }
+        // snapshot <sequence> <base> <captured flags> [<id> <mask> [<name> <team>] [<x>] [<y>] ...]
+        String[] fields = datagram.split(" ");
+        int sequence = Integer.parseInt(fields[1]);
+        int base = Integer.parseInt(fields[2]);
+        if (sequence <= shown || (base != 0 && !bobIn.containsKey(base))) {
+            return;
+        }
+        int[] bob = base == 0 || bobIn.get(base) == null ? null : bobIn.get(base).clone();
+        for (int i = 4; i < fields.length; ) {
+            int id = Integer.parseInt(fields[i++]);
+            int mask = Integer.parseInt(fields[i++]);
+            if ((mask & SnapshotHistory.LEFT) != 0) {
+                bob = id == 1 ? null : bob;
+                continue;
+            }
+            if ((mask & SnapshotHistory.JOINED) != 0) {
+                i += 2;
+                if (id == 1) {
+                    bob = new int[2];
+                }
+            }
+            int[] target = id == 1 ? bob : new int[2];
+            if ((mask & SnapshotHistory.X) != 0) {
+                target[0] = Integer.parseInt(fields[i++]);
+            }
+            if ((mask & SnapshotHistory.Y) != 0) {
+                target[1] = Integer.parseInt(fields[i++]);
+            }
+        }
+        bobIn.put(sequence, bob);
+        shown = sequence;
+        send(socket, proxy, "snapshotAck " + sequence);
+    }
+
+    private static void send(DatagramSocket socket, LossyDatagramProxy proxy, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(bytes, bytes.length, proxy.getAddress()));
+    }
+
+    /**
+     * Receives one datagram, or returns {@code null} if none came within the socket's timeout.
+     */
+    private static String receive(DatagramSocket socket) throws IOException {
+        byte[] buffer = new byte[UdpChannel.MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+            socket.receive(packet);
+        } catch (SocketTimeoutException e) {
+            return null;
+        }
+        return new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+    }
+}
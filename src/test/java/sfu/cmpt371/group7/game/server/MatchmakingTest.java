@@ -0,0 +1,72 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Places clients into matches, by id and by matchmaking, and checks that no match takes
+ * more connections than it has room for.
+ */
+class MatchmakingTest {
+
+    private final Server server = new Server(new ServerConfig(Map.<String, String>of()::get));
+
+    @Test
+    void matchmakingOpensANewMatchWhenClientsJoiningByIdFilledTheOpenOne() {
+        TestClient first = new TestClient(server, "first");
+        first.send("tellMeTheCurrentPlayers");
+        first.drain();
+        assertEquals(1, first.connection.count("joinedRoom 1"), first.connection.messages().toString());
+
+        // The open match still has seats, but clients joining it by id take every connection
+        for (int i = 1; i < Match.MAX_CLIENTS; i++) {
+            TestClient joining = new TestClient(server, "joining" + i);
+            joining.send("joinRoom 1");
+            joining.drain();
+            assertEquals(1, joining.connection.count("joinedRoom 1"), joining.connection.messages().toString());
+        }
+        TestClient refused = new TestClient(server, "refused");
+        refused.send("joinRoom 1");
+        assertEquals(1, refused.connection.count("joinRefused 1"));
+
+        TestClient placed = new TestClient(server, "placed");
+        placed.send("tellMeTheCurrentPlayers");
+        placed.drain();
+        assertEquals(1, placed.connection.count("joinedRoom 2"), placed.connection.messages().toString());
+    }
+
+    @Test
+    void clientJoiningAsTheLastOneLeavesIsAddedToTheMatch() {
+        // Runs are only started by the test, so the join can be made to land in the middle of one
+        ArrayDeque<Runnable> runs = new ArrayDeque<>();
+        Server server = new Server(new ServerConfig(Map.<String, String>of()::get), runs::add);
+        TestClient alice = new TestClient(server, "alice");
+        TestClient bob = new TestClient(server, "bob");
+        alice.send("joinRoom race");
+        runAll(runs);
+        Match match = server.getMatch("race");
+
+        // bob joins on the command loop, after alice's disconnect was queued but before it runs
+        match.submit(() -> bob.send("joinRoom race"));
+        alice.disconnect();
+        runAll(runs);
+        bob.send("tellMeTheCurrentPlayers");
+        runAll(runs);
+
+        assertSame(match, server.getMatch("race"));
+        assertEquals(1, bob.connection.count("joinedRoom race"), bob.connection.messages().toString());
+        assertEquals(1, bob.connection.count("sizeOfPlayersIs"));
+    }
+
+    private static void runAll(ArrayDeque<Runnable> runs) {
+        Runnable run;
+        while ((run = runs.poll()) != null) {
+            run.run();
+        }
+    }
+}
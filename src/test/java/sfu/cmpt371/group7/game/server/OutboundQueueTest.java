@@ -0,0 +1,122 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The policy of an {@link OutboundQueue} for a client that falls behind:
+ * moves are coalesced past the coalescing depth, and a full queue refuses the message.
+ */
+class OutboundQueueTest {
+
+    private final OutboundMetrics metrics = new OutboundMetrics();
+
+    @Test
+    void movesAreKeptWhileTheQueueIsShallow() {
+        OutboundQueue queue = new OutboundQueue(16, 4, metrics);
+        assertTrue(queue.offer("movePlayer a 1 1"));
+        assertTrue(queue.offer("movePlayer a 1 2"));
+        assertEquals(List.of("movePlayer a 1 1", "movePlayer a 1 2"), drain(queue));
+        assertEquals(0, metrics.getCoalescedMessages());
+    }
+
+    @Test
+    void deepQueueKeepsOnlyTheLatestMoveOfEachPlayer() {
+        OutboundQueue queue = new OutboundQueue(16, 2, metrics);
+        queue.offer("movePlayer a 1 1");
+        queue.offer("movePlayer ab 5 5");
+        queue.offer("flagCaptured a flag1");
+        queue.offer("movePlayer a 1 2");
+        queue.offer("movePlayer a 1 3");
+
+        assertEquals(List.of("movePlayer ab 5 5", "flagCaptured a flag1", "movePlayer a 1 3"), drain(queue));
+        assertEquals(2, metrics.getCoalescedMessages());
+        assertEquals(0, metrics.getQueuedMessages());
+    }
+
+    @Test
+    void deepQueueDropsBatchesANewerBatchCovers() {
+        OutboundQueue queue = new OutboundQueue(16, 2, metrics);
+        queue.offer("movePlayers a 1 1 ab 5 5");
+        queue.offer("movePlayers a 1 2");
+        queue.offer("movePlayers b 7 7 a 1 3");
+        queue.offer("flagCaptured a flag1");
+        // Has ab and a, but not b
+        queue.offer("movePlayers ab 5 6 a 1 4");
+
+        assertEquals(List.of("movePlayers b 7 7 a 1 3", "flagCaptured a flag1", "movePlayers ab 5 6 a 1 4"), drain(queue));
+        assertEquals(2, metrics.getCoalescedMessages());
+        assertEquals(0, metrics.getQueuedMessages());
+    }
+
+    @Test
+    void batchesOfTheSamePlayersStayWithinTheCoalescingDepth() {
+        // As sent once per tick to a client that stopped reading while the same players keep moving
+        OutboundQueue queue = new OutboundQueue(8, 4, metrics);
+        for (int tick = 0; tick < 1000; tick++) {
+            assertTrue(queue.offer("movePlayers a " + tick % 20 + " 1 b 2 " + tick % 20));
+        }
+        assertTrue(queue.size() <= 4);
+        assertEquals(0, metrics.getEvictedClients());
+        List<String> queued = drain(queue);
+        assertEquals("movePlayers a 19 1 b 2 19", queued.get(queued.size() - 1));
+    }
+
+    @Test
+    void fullQueueRefusesAndCloses() {
+        OutboundQueue queue = new OutboundQueue(3, 3, metrics);
+        assertTrue(queue.offer("updateCount 1"));
+        assertTrue(queue.offer("updateCount 2"));
+        assertTrue(queue.offer("updateCount 3"));
+        assertFalse(queue.offer("updateCount 4"));
+
+        assertEquals(1, metrics.getEvictedClients());
+        assertEquals(0, metrics.getQueuedMessages());
+        assertNull(queue.poll());
+        // Later messages of the evicted client are dropped without counting it again
+        assertTrue(queue.offer("updateCount 5"));
+        assertEquals(1, metrics.getEvictedClients());
+    }
+
+    @Test
+    void writerWaitsForAFlush() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(16, 16, metrics);
+        assertFalse(queue.flush());
+        queue.offer("updateCount 1");
+        queue.offer("updateCount 2");
+        assertTrue(queue.flush());
+
+        // Returns at once, and the writer takes everything queued so far
+        assertTrue(queue.awaitFlush());
+        assertEquals(List.of("updateCount 1", "updateCount 2"), drain(queue));
+        queue.close();
+        assertFalse(queue.awaitFlush());
+    }
+
+    @Test
+    void metricsReportTheDeepestQueue() {
+        OutboundQueue queue = new OutboundQueue(16, 16, metrics);
+        for (int i = 0; i < 5; i++) {
+            queue.offer("updateCount " + i);
+        }
+        drain(queue);
+        assertEquals(5, metrics.takeDeepestQueue());
+        assertEquals(0, metrics.takeDeepestQueue());
+    }
+
+    private static List<String> drain(OutboundQueue queue) {
+        List<String> messages = new ArrayList<>();
+        String message;
+        while ((message = queue.poll()) != null) {
+            messages.add(message);
+        }
+        return messages;
+    }
+}
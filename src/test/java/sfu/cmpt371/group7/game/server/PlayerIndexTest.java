@@ -0,0 +1,100 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+import sfu.cmpt371.group7.game.model.Player;
+import sfu.cmpt371.group7.game.protocol.MessageTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a {@link PlayerIndex} finds the same players by name and by position
+ * as a scan of every player would, as players join, move and leave.
+ */
+class PlayerIndexTest {
+
+    private final PlayerIndex index = new PlayerIndex(20, 20);
+
+    @Test
+    void namesAreFoundAndDuplicatesRefused() {
+        Player red = new Player("red", 2, 0, "red1");
+        int id = index.add(red);
+        assertEquals(PlayerIndex.NONE, index.add(new Player("blue", 2, 19, "red1")));
+
+        assertSame(red, index.get("red1"));
+        assertSame(red, index.get(id));
+        MessageTokenizer tokens = new MessageTokenizer().reset("movePlayer red1 3 0");
+        tokens.nextType();
+        tokens.next();
+        assertEquals(id, index.find(tokens));
+        assertNull(index.get("red"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void gridFollowsMovesInsideAndOutsideTheMaze() {
+        int first = index.add(new Player("red", 2, 0, "a"));
+        index.add(new Player("red", 2, 0, "b"));
+        assertFalse(index.isFree(2, 0));
+        assertEquals(2, index.playersAt(2, 0).size());
+
+        index.move(first, 5, 5);
+        assertEquals(List.of("b"), names(index.playersAt(2, 0)));
+        assertEquals(List.of("a"), names(index.playersAt(5, 5)));
+
+        // Positions outside the maze are still told apart
+        index.move(first, -3, 40);
+        assertTrue(index.isFree(5, 5));
+        assertFalse(index.isFree(-3, 40));
+        assertTrue(index.isFree(40, -3));
+
+        index.remove("b");
+        assertTrue(index.isFree(2, 0));
+        assertNull(index.get("b"));
+    }
+
+    @Test
+    void manyPlayersSurviveGrowingAndRemoval() {
+        int players = 5000;
+        for (int i = 0; i < players; i++) {
+            index.add(new Player("red", i % 20, (i / 20) % 20, "p" + i));
+        }
+        // Remove every third player, which shifts probe runs of the name table around
+        for (int i = 0; i < players; i += 3) {
+            assertEquals("p" + i, index.remove("p" + i).getName());
+        }
+        int left = 0;
+        for (int i = 0; i < players; i++) {
+            Player player = index.get("p" + i);
+            if (i % 3 == 0) {
+                assertNull(player);
+            } else {
+                assertEquals("p" + i, player.getName());
+                assertTrue(index.playersAt(player.getX(), player.getY()).contains(player));
+                left++;
+            }
+        }
+        assertEquals(left, index.size());
+
+        // Iteration keeps the order the players joined in
+        List<String> joined = names(index);
+        assertEquals(left, joined.size());
+        assertEquals("p1", joined.get(0));
+        assertEquals("p2", joined.get(1));
+        assertEquals("p4", joined.get(2));
+    }
+
+    private static List<String> names(Iterable<Player> players) {
+        List<String> names = new ArrayList<>();
+        for (Player player : players) {
+            names.add(player.getName());
+        }
+        return names;
+    }
+}
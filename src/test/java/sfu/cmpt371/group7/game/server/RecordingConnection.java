@@ -0,0 +1,56 @@
+package sfu.cmpt371.group7.game.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A connection that keeps the messages sent to it instead of writing them, for tests.
+ */
+class RecordingConnection implements ClientConnection {
+    private final List<String> messages = new ArrayList<>();
+    private int flushes;
+
+    @Override
+    public synchronized void send(String message) {
+        messages.add(message);
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushes++;
+    }
+
+    @Override
+    public void useBinaryProtocol() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Gets the messages sent so far.
+     * @return a copy of the messages, oldest first
+     */
+    synchronized List<String> messages() {
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * Gets the number of flushes so far.
+     * @return the number of calls to {@link #flush()}
+     */
+    synchronized int flushes() {
+        return flushes;
+    }
+
+    /**
+     * Counts the messages sent so far that start with a prefix.
+     *
+     * @param prefix The start of the messages to count.
+     * @return the number of matching messages.
+     */
+    synchronized long count(String prefix) {
+        return messages.stream().filter(message -> message.startsWith(prefix)).count();
+    }
+}
@@ -0,0 +1,185 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * A client that stops reading must not hold up the other clients of its match.
+ * On each transport, one client of a match never reads while another keeps sending moves and reading
+ * them back. The reading client must see every move, and the stalled one must be disconnected.
+ * With a tick rate, the moves of one player are sent as a {@code movePlayers} batch per tick instead;
+ * each batch supersedes the ones queued before it, so the stalled client keeps its connection.
+ */
+class SlowConsumerTest {
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BATCH = 1000;
+    private static final int BATCHES = 400;
+    private static final int TICKS = 300;
+
+    @Test
+    void blockingTransportEvictsStalledClient() throws Exception {
+        runStalledClient("blocking");
+    }
+
+    @Test
+    void virtualThreadTransportEvictsStalledClient() throws Exception {
+        runStalledClient("virtual");
+    }
+
+    @Test
+    void nioTransportEvictsStalledClient() throws Exception {
+        runStalledClient("nio");
+    }
+
+    @Test
+    void tickingTransportCoalescesBatchesForStalledClient() throws Exception {
+        int port = freePort();
+        Server server = new Server(new ServerConfig(Map.of(
+                "SERVER_PORT", String.valueOf(port),
+                "SERVER_TRANSPORT", "nio",
+                "SERVER_TICK_RATE", "100",
+                "SERVER_OUTBOUND_QUEUE", "32",
+                "SERVER_COALESCE_DEPTH", "8",
+                "SERVER_VALIDATE_MOVES", "false")::get));
+        Thread.ofPlatform().name("server-ticking").daemon().start(server::start);
+        waitUntilListening(port);
+        // A long name makes each batch tens of kilobytes, so the stalled client's socket buffers fill up quickly
+        String name = "p".repeat(32_000);
+
+        try (Socket stalled = new Socket(); Socket active = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            new PrintWriter(stalled.getOutputStream(), true).println("joinRoom slow-ticking");
+
+            PrintWriter out = new PrintWriter(active.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(active.getInputStream()));
+            out.println("joinRoom slow-ticking");
+            out.println("teamSelection red " + name);
+
+            // One move per tick: wait for each to come back as a batch before sending the next
+            String batch = null;
+            for (int tick = 1; tick <= TICKS; tick++) {
+                out.println("movePlayer " + name + " " + tick % 20 + " " + tick / 20);
+                batch = "movePlayers " + name + " " + tick % 20 + " " + tick / 20;
+                String line;
+                while ((line = in.readLine()) != null && !line.equals(batch)) {
+                    // skip the earlier messages
+                }
+                assertEquals(batch, line, "active client stopped receiving batches at tick " + tick);
+            }
+
+            assertEquals(0, server.getOutboundMetrics().getEvictedClients());
+            assertTrue(server.getOutboundMetrics().getCoalescedMessages() > 0);
+            // Once it reads again, the stalled client catches up to the latest position
+            stalled.setSoTimeout(10_000);
+            BufferedReader caughtUp = new BufferedReader(new InputStreamReader(stalled.getInputStream()));
+            String line;
+            while ((line = caughtUp.readLine()) != null && !line.equals(batch)) {
+                // skip the older batches that were already written
+            }
+            assertEquals(batch, line);
+        }
+    }
+
+    private static void runStalledClient(String transport) throws Exception {
+        int port = freePort();
+        Server server = new Server(new ServerConfig(Map.of(
+                "SERVER_PORT", String.valueOf(port),
+                "SERVER_TRANSPORT", transport,
+                "SERVER_OUTBOUND_QUEUE", String.valueOf(QUEUE_CAPACITY),
+                "SERVER_COALESCE_DEPTH", String.valueOf(QUEUE_CAPACITY),
+                // The moves only exercise broadcasting, and name players that never joined
+                "SERVER_VALIDATE_MOVES", "false")::get));
+        Thread.ofPlatform().name("server-" + transport).daemon().start(server::start);
+        waitUntilListening(port);
+
+        try (Socket stalled = new Socket(); Socket active = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            // A small window, so the server's queue fills up rather than the socket buffers
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            new PrintWriter(stalled.getOutputStream(), true).println("joinRoom slow-" + transport);
+
+            PrintWriter out = new PrintWriter(active.getOutputStream(), true);
+            Semaphore moves = new Semaphore(0);
+            BufferedReader in = new BufferedReader(new InputStreamReader(active.getInputStream()));
+            Thread.ofVirtual().start(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (line.startsWith("movePlayer ")) {
+                            moves.release();
+                        }
+                    }
+                } catch (IOException e) {
+                    // closed at the end of the test
+                }
+            });
+            out.println("joinRoom slow-" + transport);
+
+            // Every move names another player, so none of them can be coalesced
+            for (int batch = 0; batch < BATCHES; batch++) {
+                for (int i = 0; i < BATCH; i++) {
+                    out.println("movePlayer p" + (batch * BATCH + i) + " 1 1");
+                }
+                assertTrue(moves.tryAcquire(BATCH, 30, TimeUnit.SECONDS), "active client stopped receiving moves in batch " + batch);
+            }
+
+            assertEquals(1, server.getOutboundMetrics().getEvictedClients());
+            assertClosedByServer(stalled);
+        }
+    }
+
+    /**
+     * Reads what the server wrote before it closed the connection, until the end of the stream.
+     */
+    private static void assertClosedByServer(Socket socket) throws IOException {
+        socket.setSoTimeout(10_000);
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[65536];
+        try {
+            while (in.read(buffer) >= 0) {
+                // discard
+            }
+        } catch (SocketTimeoutException e) {
+            fail("stalled client was not disconnected");
+        } catch (IOException e) {
+            // a reset also means the server closed it
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitUntilListening(int port) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            try (Socket ignored = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("server did not listen on port " + port);
+    }
+}
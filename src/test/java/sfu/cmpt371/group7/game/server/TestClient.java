@@ -0,0 +1,90 @@
+package sfu.cmpt371.group7.game.server;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * A client of a match in tests, fed messages as if they came from its connection,
+ * with the messages sent to it recorded.
+ */
+class TestClient {
+    /** The flags of the game window's maze, as the first client in a match sends them */
+    static final String FLAGS = "flagCoordinates 1 8 5 11 8 14 9 6 16 2 17 15 18 7";
+
+    final String name;
+    final RecordingConnection connection = new RecordingConnection();
+    private final ClientHandler handler;
+
+    /**
+     * Constructs a client that is not in a match yet.
+     *
+     * @param server The server the client connects to.
+     * @param name The name of the client's player.
+     */
+    TestClient(Server server, String name) {
+        this.name = name;
+        this.handler = new ClientHandler(server, connection);
+    }
+
+    /**
+     * Puts a new client in a match and selects a team for its player.
+     *
+     * @param server The server the client connects to.
+     * @param room The id of the match to join.
+     * @param team The team, red or blue.
+     * @param name The name of the client's player.
+     * @return the client.
+     */
+    static TestClient join(Server server, String room, String team, String name) {
+        TestClient client = new TestClient(server, name);
+        client.send("joinRoom " + room);
+        client.send("teamSelection " + team + " " + name);
+        return client;
+    }
+
+    /**
+     * Handles a message as if the client had sent it.
+     *
+     * @param message The message.
+     */
+    void send(String message) {
+        handler.handleMessage(message);
+    }
+
+    /**
+     * Handles the client's connection closing, as if the client had gone away.
+     */
+    void disconnect() {
+        handler.handleDisconnect();
+    }
+
+    /**
+     * Waits until the match has handled every message sent so far by any client,
+     * by asking for the player count and waiting for the answer.
+     */
+    void drain() {
+        long before = connection.count("sizeOfPlayersIs");
+        send("tellMeTheCurrentPlayers");
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (connection.count("sizeOfPlayersIs") <= before) {
+            if (System.nanoTime() > deadline) {
+                fail("match did not answer " + name);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Waits until the client was sent a message starting with a prefix, such as one sent when a timer expired.
+     *
+     * @param prefix The start of the message.
+     */
+    void await(String prefix) {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (connection.count(prefix) == 0) {
+            if (System.nanoTime() > deadline) {
+                fail(name + " was not sent " + prefix + ": " + connection.messages());
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
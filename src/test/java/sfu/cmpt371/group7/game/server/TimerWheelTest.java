@@ -0,0 +1,67 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Timers on a {@link TimerWheel} with 1 ms ticks and a turn of 8 ticks, so timers further
+ * ahead than 8 ms wait for more turns of the wheel.
+ */
+class TimerWheelTest {
+
+    private final TimerWheel wheel = new TimerWheel("test-timers", 1, TimeUnit.MILLISECONDS, 8);
+
+    @AfterEach
+    void stopWheel() {
+        wheel.stop();
+    }
+
+    @Test
+    void timersRunInDeadlineOrderAfterTheirDelay() throws InterruptedException {
+        List<Integer> ran = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        wheel.schedule(() -> { ran.add(30); done.countDown(); }, 30, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { ran.add(3); done.countDown(); }, 3, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { ran.add(12); done.countDown(); }, 12, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(3, 12, 30), ran);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    void cancelledTimerNeverRuns() throws InterruptedException {
+        CountDownLatch cancelledRan = new CountDownLatch(1);
+        CountDownLatch laterRan = new CountDownLatch(1);
+        TimerWheel.Timeout cancelled = wheel.schedule(cancelledRan::countDown, 5, TimeUnit.MILLISECONDS);
+        TimerWheel.Timeout later = wheel.schedule(laterRan::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(laterRan.await(10, TimeUnit.SECONDS));
+        assertEquals(1, cancelledRan.getCount());
+        assertTrue(cancelled.isCancelled());
+        assertTrue(later.isExpired());
+        assertFalse(later.cancel());
+    }
+
+    @Test
+    void manyTimersAllRun() throws InterruptedException {
+        int timers = 10_000;
+        CountDownLatch done = new CountDownLatch(timers);
+        for (int i = 0; i < timers; i++) {
+            wheel.schedule(done::countDown, i % 50, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,172 @@
+package sfu.cmpt371.group7.game.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Opens thousands of connections at once to a server on each transport. Most of them stay idle,
+ * while one connection in each of a few groups sends moves. Every group joins a match of its own.
+ * Every connection must be accepted and kept until the end, and every member of a group must see all
+ * the moves of its active connection and none of the other groups'.
+ */
+class TransportLoadTest {
+
+    private static final int CONNECTIONS = 2000;
+    private static final int GROUP_SIZE = 4;
+    private static final int ACTIVE_GROUPS = 10;
+    private static final int MOVES = 10;
+
+    @Test
+    void blockingTransportServesThousandsOfConnections() throws Exception {
+        runLoad("blocking");
+    }
+
+    @Test
+    void virtualThreadTransportServesThousandsOfConnections() throws Exception {
+        runLoad("virtual");
+    }
+
+    @Test
+    void nioTransportServesThousandsOfConnections() throws Exception {
+        runLoad("nio");
+    }
+
+    private static void runLoad(String transport) throws Exception {
+        int port = freePort();
+        Server server = new Server(new ServerConfig(Map.of(
+                "SERVER_PORT", String.valueOf(port),
+                "SERVER_TRANSPORT", transport,
+                // The moves only exercise broadcasting, and name players that never joined
+                "SERVER_VALIDATE_MOVES", "false")::get));
+        Thread.ofPlatform().name("server-" + transport).daemon().start(server::start);
+        waitUntilListening(port);
+
+        List<LoadClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < CONNECTIONS; i++) {
+                LoadClient client = new LoadClient(port, "a" + (i / GROUP_SIZE));
+                clients.add(client);
+                client.send("joinRoom load-" + (i / GROUP_SIZE));
+            }
+            // Each connection is answered in order, so once this comes back its join has been handled.
+            assertAllAnswered(clients);
+
+            for (int group = 0; group < ACTIVE_GROUPS; group++) {
+                LoadClient active = clients.get(group * GROUP_SIZE);
+                for (int k = 1; k <= MOVES; k++) {
+                    active.send("movePlayer " + active.groupPlayer + " 1 " + k);
+                }
+            }
+            for (int i = 0; i < ACTIVE_GROUPS * GROUP_SIZE; i++) {
+                LoadClient client = clients.get(i);
+                assertTrue(client.moves.tryAcquire(MOVES, 30, TimeUnit.SECONDS),
+                        "connection " + i + " saw " + client.moves.availablePermits() + " of " + MOVES + " moves");
+            }
+
+            assertAllAnswered(clients);
+            for (LoadClient client : clients) {
+                assertEquals(0, client.otherMoves.get(), "moves of another match reached " + client.groupPlayer);
+            }
+        } finally {
+            for (LoadClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Asks every connection for the player count and waits until each one has been answered.
+     *
+     * @param clients The connections to ask.
+     */
+    private static void assertAllAnswered(List<LoadClient> clients) throws InterruptedException {
+        for (LoadClient client : clients) {
+            client.answered = new CountDownLatch(1);
+            client.send("tellMeTheCurrentPlayers");
+        }
+        for (int i = 0; i < clients.size(); i++) {
+            assertTrue(clients.get(i).answered.await(30, TimeUnit.SECONDS), "connection " + i + " was not answered");
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitUntilListening(int port) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            try (Socket ignored = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("server did not listen on port " + port);
+    }
+
+    /**
+     * One connection to the server, read on its own virtual thread.
+     */
+    private static final class LoadClient {
+        private final Socket socket;
+        private final PrintWriter out;
+        private final String groupPlayer;
+        private final Semaphore moves = new Semaphore(0);
+        private final AtomicInteger otherMoves = new AtomicInteger();
+        private volatile CountDownLatch answered = new CountDownLatch(1);
+
+        LoadClient(int port, String groupPlayer) throws IOException {
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            this.out = new PrintWriter(socket.getOutputStream(), true);
+            this.groupPlayer = groupPlayer;
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            Thread.ofVirtual().start(() -> read(in));
+        }
+
+        void send(String message) {
+            out.println(message);
+        }
+
+        private void read(BufferedReader in) {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("sizeOfPlayersIs ")) {
+                        answered.countDown();
+                    } else if (line.startsWith("movePlayer " + groupPlayer + " ")) {
+                        moves.release();
+                    } else if (line.startsWith("movePlayer ")) {
+                        otherMoves.incrementAndGet();
+                    }
+                }
+            } catch (IOException e) {
+                // closed at the end of the test
+            }
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+}